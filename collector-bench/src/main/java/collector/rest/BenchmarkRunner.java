@@ -0,0 +1,35 @@
+package collector.rest;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of {@code benchmarks.jar}, writing results as JSON unless the format is specified.
+ * <p>Without {@code -rf}, results are written to {@code jmh-result-<yyyyMMdd-HHmmss>.json},
+ * so that runs can be compared over time.
+ * All the other arguments are passed to JMH as they are.</p>
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		if (!arguments.contains("-rf")) {
+			arguments.add("-rf");
+			arguments.add("json");
+			if (!arguments.contains("-rff")) {
+				arguments.add("-rff");
+				arguments.add("jmh-result-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+			}
+		}
+		Main.main(arguments.toArray(new String[arguments.size()]));
+	}
+
+}
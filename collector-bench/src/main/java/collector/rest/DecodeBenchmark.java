@@ -0,0 +1,133 @@
+package collector.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import collector.rest.stat.AttributeDecoder;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+import collector.rest.stat.StatEntry;
+import collector.rest.stat.StatValue;
+
+/**
+ * Benchmarks of decoding a response of RESTConnector.
+ * <p>{@code decode} is the steady state of a poll, whose layout is verified and values are decoded into a row.
+ * {@code decodeFirst} learns the layout from the first payload, and {@code bindStatEntries} is the baseline
+ * binding the payload to {@link StatEntry} objects, as reading the entity as a list of them does.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	int attributes;
+
+	private byte[][] payloads;
+
+	private AttributeDecoder decoder;
+
+	private Row row;
+
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		payloads = new byte[][] { Payloads.of(attributes, 0), Payloads.of(attributes, 1) };
+		decoder = new AttributeDecoder();
+		row = new Row();
+		decoder.decode(new ByteArrayInputStream(payloads[0]), row);
+	}
+
+	@Benchmark
+	public Row decode() throws IOException {
+		next ^= 1;
+		decoder.decode(new ByteArrayInputStream(payloads[next]), row);
+		return row;
+	}
+
+	@Benchmark
+	public Layout decodeFirst() throws IOException {
+		AttributeDecoder first = new AttributeDecoder();
+		first.decode(new ByteArrayInputStream(payloads[0]), new Row());
+		return first.getLayout();
+	}
+
+	@Benchmark
+	public List<StatEntry> bindStatEntries() {
+		return bind(new ByteArrayInputStream(payloads[0]));
+	}
+
+	/**
+	 * Bind a payload to {@link StatEntry} objects with JSON-P.
+	 * @param in stream of the payload
+	 * @return bound entries
+	 */
+	private static List<StatEntry> bind(InputStream in) {
+		List<StatEntry> entries = new ArrayList<>();
+		try (JsonParser parser = Json.createParser(in)) {
+			// depth 1 is an entry, and depth 2 is its value
+			int depth = 0;
+			StatEntry entry = null;
+			String key = null;
+			while (parser.hasNext()) {
+				Event event = parser.next();
+				switch (event) {
+				case START_OBJECT:
+					depth++;
+					if (depth == 1) {
+						entry = new StatEntry();
+					} else if (depth == 2) {
+						entry.setValue(new StatValue());
+					}
+					break;
+				case END_OBJECT:
+					if (depth == 1) {
+						entries.add(entry);
+					}
+					depth--;
+					break;
+				case KEY_NAME:
+					key = parser.getString();
+					break;
+				case VALUE_STRING:
+					if (depth == 1 && "name".equals(key)) {
+						entry.setName(parser.getString());
+					} else if (depth == 2 && "value".equals(key)) {
+						entry.getValue().setValue(parser.getString());
+					} else if (depth == 2 && "type".equals(key)) {
+						entry.getValue().setType(parser.getString());
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		}
+		return entries;
+	}
+
+}
@@ -0,0 +1,85 @@
+package collector.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import collector.rest.stat.AttributeDecoder;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+import collector.rest.stream.Format;
+
+/**
+ * Benchmarks of rendering a sample in the formats of live streams.
+ * <p>{@code sample} renders a sample as every poll does, and {@code sampleWithHeader} also renders
+ * the layout as the first sample of a stream or a change of attributes does.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	int attributes;
+
+	@Param({ "CSV", "NDJSON", "EVENT_STREAM" })
+	String format;
+
+	private Format chosen;
+
+	private Layout layout;
+
+	private Row row;
+
+	private final StringBuilder out = new StringBuilder(1024);
+
+	@Setup
+	public void setUp() throws IOException {
+		switch (format) {
+		case "NDJSON":
+			chosen = Format.NDJSON;
+			break;
+		case "EVENT_STREAM":
+			chosen = Format.EVENT_STREAM;
+			break;
+		default:
+			chosen = Format.CSV;
+			break;
+		}
+		AttributeDecoder decoder = new AttributeDecoder();
+		row = new Row();
+		decoder.decode(new ByteArrayInputStream(Payloads.of(attributes, 0)), row);
+		layout = decoder.getLayout();
+	}
+
+	@Benchmark
+	public int sample() {
+		out.setLength(0);
+		chosen.appendSample(out, 1700000000123L, row);
+		return out.length();
+	}
+
+	@Benchmark
+	public int sampleWithHeader() {
+		out.setLength(0);
+		chosen.appendLayout(out, layout);
+		chosen.appendSample(out, 1700000000123L, row);
+		return out.length();
+	}
+
+}
@@ -0,0 +1,139 @@
+package collector.rest;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the list of reserved statistics.
+ * <p>{@code sort} orders the reservations on a first-come, first-served basis, {@code render} renders
+ * the HTML of the reservations, and {@code list} does both as {@code GET requests/} did before paging.
+ * {@code page} renders the first page of {@value #PAGE_SIZE} reservations from {@link ReservationIndex}
+ * as {@code GET requests/} does. A quarter of the reservations are started.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListBenchmark {
+
+	/** Default number of statistics in a page of the list. */
+	static final int PAGE_SIZE = 100;
+
+	@Param({ "10", "100", "1000", "10000" })
+	int reservations;
+
+	private List<StatisticsRequest> reserved;
+
+	private ReservationIndex index;
+
+	private CountingWriter counter;
+
+	private PrintWriter out;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		// reservations arrive over an hour in random order of the map holding them
+		Field requested = StatisticsRequest.class.getDeclaredField("requested");
+		requested.setAccessible(true);
+		Random random = new Random(1);
+		reserved = new ArrayList<>(reservations);
+		for (int i = 0; i < reservations; i++) {
+			StatisticsRequest work = new StatisticsRequest();
+			work.setLocation("https://localhost:9443/IBMJMXConnectorREST/mbeans/");
+			work.setQuery("WebSphere:type=ThreadPoolStats,name=Executor " + i + "/attributes");
+			work.setStatus(i % 4 == 0 ? StatisticsRequest.STARTED : StatisticsRequest.STARTABLE);
+			if (i % 4 == 0) {
+				work.setInterval(new AdaptiveInterval(30000, 8));
+			}
+			requested.setLong(work, 1700000000000L + random.nextInt(3600000));
+			reserved.add(work);
+		}
+		Collections.shuffle(reserved, random);
+		index = new ReservationIndex();
+		reserved.forEach(work -> index.put(work.getId(), work));
+		counter = new CountingWriter();
+		out = new PrintWriter(counter);
+	}
+
+	@Benchmark
+	public List<StatisticsRequest> sort() {
+		List<StatisticsRequest> available = new ArrayList<>(reserved);
+		available.sort(RequestList.FIRST_COME);
+		return available;
+	}
+
+	@Benchmark
+	public long render() {
+		for (StatisticsRequest work : reserved) {
+			RequestList.render(out, work);
+		}
+		out.flush();
+		return counter.count;
+	}
+
+	@Benchmark
+	public long list() {
+		for (StatisticsRequest work : sort()) {
+			RequestList.render(out, work);
+		}
+		out.flush();
+		return counter.count;
+	}
+
+	@Benchmark
+	public long page() {
+		for (StatisticsRequest work : index.page(null, work -> true, PAGE_SIZE).getItems()) {
+			RequestList.render(out, work);
+		}
+		out.flush();
+		return counter.count;
+	}
+
+	/**
+	 * Writer discarding characters after counting them.
+	 */
+	private static class CountingWriter extends Writer {
+
+		long count;
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			count += length;
+		}
+
+		@Override
+		public void write(String text, int offset, int length) {
+			count += length;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -0,0 +1,330 @@
+package collector.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+
+import collector.rest.series.RingSeries;
+import collector.rest.stat.AttributeDecoder;
+import collector.rest.stat.Row;
+import collector.rest.stub.Dynamics;
+import collector.rest.stub.RestConnectorStub;
+
+/**
+ * Load driver polling MBeans with the polling path of the collector in-process.
+ * <p>{@link PollingScheduler}, {@link PollingEngine} and {@link DiscoveryCache} are created
+ * outside the container, injected with each other and a plain thread factory.
+ * All MBeans of PMI listed by the location are reserved, and each of them is polled by a {@link PollingTask}
+ * decoding the responses into a {@link RingSeries}, as a started statistics without subscribers.
+ * The location is an embedded {@link RestConnectorStub} unless {@code load.location} is specified.</p>
+ * <p>After the warm-up, the driver measures the rate of polls, the CPU time of the collector per poll,
+ * excluding the threads of the stub, the platform threads of the collector, and the heap retained
+ * per monitored statistics. The CPU time of virtual threads is counted on their carrier threads.
+ * Settings of the collector such as {@code COLLECTOR_MAX_IN_FLIGHT} and {@code COLLECTOR_VIRTUAL_THREADS}
+ * are read from environment variables.</p>
+ * <p>Available system properties</p>
+ * <dl>
+ * <dt>{@code load.location}, {@code load.user}, {@code load.password}</dt>
+ * <dd>location and credentials of RESTConnector polled instead of the stub</dd>
+ * <dt>{@code load.period}</dt>
+ * <dd>interval between polls in seconds (default: 5)</dd>
+ * <dt>{@code load.warmup}</dt>
+ * <dd>time in seconds before measuring (default: 30)</dd>
+ * <dt>{@code load.duration}</dt>
+ * <dd>time in seconds of measuring (default: 60)</dd>
+ * <dt>{@code stub.mbeans}, {@code stub.attributes}, {@code stub.textLength}, {@code stub.dynamics},
+ * {@code stub.threads}</dt>
+ * <dd>MBeans of the stub (default: 1000, 20, 16, {@code COUNTING}, 64)</dd>
+ * <dt>{@code stub.latency}, {@code stub.jitter}</dt>
+ * <dd>latency of the stub in milliseconds (default: 0, 0)</dd>
+ * <dt>{@code stub.errors}, {@code stub.resets}</dt>
+ * <dd>rates of HTTP 500 and connections closed without a response (default: 0, 0)</dd>
+ * </dl>
+ */
+public final class LoadDriver {
+
+	/** Names of MBeans reserved by default, the same as reserving a location without a query. */
+	private static final Pattern PMI_PATTERN = Pattern.compile("^WebSphere:.*type=(\\w+Stats|perf)(|,.*)$");
+
+	/** Name of the thread of {@code HttpServer} accepting connections of the stub. */
+	private static final String DISPATCHER_THREAD = "HTTP-Dispatcher";
+
+	private final LongAdder polls = new LongAdder();
+
+	private final LongAdder gaps = new LongAdder();
+
+	private final LongAdder columns = new LongAdder();
+
+	private LoadDriver() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		new LoadDriver().run();
+	}
+
+	private void run() throws Exception {
+		long period = TimeUnit.SECONDS.toMillis(Long.getLong("load.period", 5));
+		long warmup = TimeUnit.SECONDS.toMillis(Long.getLong("load.warmup", 30));
+		long duration = TimeUnit.SECONDS.toMillis(Long.getLong("load.duration", 60));
+
+		RestConnectorStub stub = null;
+		String location = System.getProperty("load.location");
+		if (location == null) {
+			stub = new RestConnectorStub();
+			stub.setMBeans(Integer.getInteger("stub.mbeans", 1000));
+			stub.setAttributes(Integer.getInteger("stub.attributes", 20));
+			stub.setTextLength(Integer.getInteger("stub.textLength", 16));
+			stub.setDynamics(Dynamics.valueOf(System.getProperty("stub.dynamics", Dynamics.COUNTING.name())));
+			stub.setLatency(Long.getLong("stub.latency", 0), Long.getLong("stub.jitter", 0));
+			stub.setErrorRate(Double.parseDouble(System.getProperty("stub.errors", "0")));
+			stub.setResetRate(Double.parseDouble(System.getProperty("stub.resets", "0")));
+			stub.setThreads(Integer.getInteger("stub.threads", 64));
+			stub.start();
+			location = stub.getLocation();
+		}
+
+		AtomicInteger created = new AtomicInteger();
+		ManagedThreadFactory factory = task -> {
+			Thread thread = new Thread(task, "collector-" + created.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		PollingScheduler scheduler = create(PollingScheduler.class, factory);
+		PollingEngine engine = create(PollingEngine.class, factory, scheduler);
+		DiscoveryCache discovery = create(DiscoveryCache.class, engine);
+
+		long baseline = usedHeap();
+		List<PollingTask> tasks = new ArrayList<>();
+		try {
+			StatisticsRequest base = new StatisticsRequest();
+			base.setLocation(location);
+			base.setQuery("/");
+			base.setUser(System.getProperty("load.user", "user"));
+			base.setPassword(System.getProperty("load.password", "password"));
+
+			long first = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(1);
+			for (String name : discovery.discover(base).getNames()) {
+				if (PMI_PATTERN.matcher(name).matches()) {
+					StatisticsRequest work = new StatisticsRequest();
+					work.setLocation(base.getLocation());
+					work.setQuery(name.concat("/attributes"));
+					work.setUser(base.getUser());
+					work.setPassword(base.getPassword());
+					work.setStatus(StatisticsRequest.STARTED);
+					tasks.add(start(scheduler, engine, work, period, first));
+				}
+			}
+			System.out.printf("Polling %d statistics at %s every %d s with %s on Java %s%n",
+					tasks.size(), location, TimeUnit.MILLISECONDS.toSeconds(period),
+					engine.isVirtual() ? "virtual threads" : "asynchronous invoker", System.getProperty("java.version"));
+
+			TimeUnit.MILLISECONDS.sleep(warmup);
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			threads.resetPeakThreadCount();
+			long heap = usedHeap() - baseline;
+			long startPolls = polls.sum();
+			long startGaps = gaps.sum();
+			long startCpu = collectorCpuTime();
+			long startProcessCpu = processCpuTime();
+			long start = System.nanoTime();
+
+			TimeUnit.MILLISECONDS.sleep(duration);
+			long elapsed = System.nanoTime() - start;
+			long measured = polls.sum() - startPolls;
+			long cpu = collectorCpuTime() - startCpu;
+			long processCpu = processCpuTime() - startProcessCpu;
+
+			int statistics = Math.max(tasks.size(), 1);
+			long attributes = Math.max(columns.sum() / Math.max(polls.sum(), 1), 1);
+			System.out.printf("statistics                 %d%n", tasks.size());
+			System.out.printf("attributes per statistics  %d%n", attributes);
+			System.out.printf("polls/sec                  %.1f (expected %.1f)%n",
+					measured * 1e9 / elapsed, tasks.size() * 1000.0 / period);
+			System.out.printf("gaps/sec                   %.1f%n", (gaps.sum() - startGaps) * 1e9 / elapsed);
+			System.out.printf("CPU per poll               %.1f us (collector threads)%n",
+					measured == 0 ? 0.0 : cpu / 1e3 / measured);
+			if (processCpu >= 0) {
+				System.out.printf("CPU per poll               %.1f us (process including the stub and GC)%n",
+						measured == 0 ? 0.0 : processCpu / 1e3 / measured);
+			}
+			System.out.printf("CPU utilization            %.1f %% of a core (collector threads)%n",
+					cpu * 100.0 / elapsed);
+			System.out.printf("platform threads           %d live, %d peak (collector %d live)%n",
+					threads.getThreadCount(), threads.getPeakThreadCount(), collectorThreads());
+			System.out.printf("heap per statistics        %d bytes after warm-up%n", heap / statistics);
+			System.out.printf("heap per statistics        %d bytes after measuring%n",
+					(usedHeap() - baseline) / statistics);
+			for (Transport transport : engine.getTransports()) {
+				long requests = Math.max(transport.getLatency().getCount(), 1);
+				System.out.printf("latency                    %.2f ms mean, %d requests, %d retried, %d waited%n",
+						transport.getLatency().getSum() * 1e3 / requests, transport.getRequests(),
+						transport.getRetried(), transport.getWaited());
+			}
+			System.out.printf("scheduler lag              %.2f ms mean%n",
+					scheduler.getLag().getSum() * 1e3 / Math.max(scheduler.getLag().getCount(), 1));
+			if (stub != null) {
+				System.out.printf("stub                       %d requests, %d errors, %d resets, %d bytes sent%n",
+						stub.getRequests(), stub.getErrors(), stub.getResets(), stub.getSent());
+			}
+		} finally {
+			tasks.forEach(task -> task.cancel(true));
+			invoke(engine, PreDestroy.class);
+			invoke(scheduler, PreDestroy.class);
+			if (stub != null) {
+				stub.close();
+			}
+		}
+	}
+
+	/**
+	 * Start polling a statistics as a started statistics without subscribers does.
+	 */
+	private PollingTask start(PollingScheduler scheduler, PollingEngine engine, StatisticsRequest work,
+			long period, long first) {
+		AttributeDecoder decoder = new AttributeDecoder();
+		Row row = new Row();
+		RingSeries series = new RingSeries(Settings.getInt(SeriesStore.ENV_SERIES_CAPACITY, 2880),
+				Settings.getBoolean(SeriesStore.ENV_SERIES_DIRECT, false));
+		AdaptiveInterval interval = new AdaptiveInterval(period, 1);
+		work.setInterval(interval);
+
+		PollingTask task = new PollingTask(scheduler, work.getId(), work.getLocation() + ' ' + period, period,
+				first, Integer.MAX_VALUE, interval, (next, remains) -> {
+			CompletableFuture<Void> poll = engine.poll(work, () -> engine.request(work), obtained -> {
+				if (obtained.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL
+						|| !obtained.hasEntity()) {
+					gaps.increment();
+					return;
+				}
+				try (InputStream in = obtained.readEntity(InputStream.class)) {
+					decoder.decode(in, row);
+					series.accept(next, decoder.getLayout(), row);
+					polls.increment();
+					columns.add(row.size());
+				} catch (ProcessingException | IOException e) {
+					gaps.increment();
+				}
+			});
+			poll.whenComplete((nothing, e) -> {
+				if (e != null && !poll.isCancelled()) {
+					gaps.increment();
+				}
+			});
+			return poll;
+		}, () -> { });
+		task.start();
+		return task;
+	}
+
+	/**
+	 * Create a bean outside the container, injecting the dependencies assignable to its fields.
+	 * @param type class of the bean
+	 * @param dependencies objects injected to the fields annotated with {@code Inject} or {@code Resource}
+	 * @return bean initialized by its {@code PostConstruct} method
+	 */
+	private static <T> T create(Class<T> type, Object... dependencies) throws ReflectiveOperationException {
+		T bean = type.getDeclaredConstructor().newInstance();
+		for (Field field : type.getDeclaredFields()) {
+			if (field.isAnnotationPresent(Inject.class) || field.isAnnotationPresent(Resource.class)) {
+				for (Object dependency : dependencies) {
+					if (field.getType().isInstance(dependency)) {
+						field.setAccessible(true);
+						field.set(bean, dependency);
+					}
+				}
+			}
+		}
+		invoke(bean, PostConstruct.class);
+		return bean;
+	}
+
+	private static void invoke(Object bean, Class<? extends Annotation> annotation)
+			throws ReflectiveOperationException {
+		for (Method method : bean.getClass().getDeclaredMethods()) {
+			if (method.isAnnotationPresent(annotation)) {
+				method.setAccessible(true);
+				method.invoke(bean);
+			}
+		}
+	}
+
+	/**
+	 * Get the heap used after collecting garbage.
+	 * @return number of bytes
+	 */
+	private static long usedHeap() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Get the CPU time of the live threads except those of the stub and the driver.
+	 * @return time in nanoseconds
+	 */
+	private static long collectorCpuTime() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+			if (isCollector(info)) {
+				total += Math.max(threads.getThreadCpuTime(info.getThreadId()), 0);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Get the number of live platform threads except those of the stub and the driver.
+	 * @return number of threads, including the threads of the JVM
+	 */
+	private static int collectorThreads() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int count = 0;
+		for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+			if (isCollector(info)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static boolean isCollector(ThreadInfo info) {
+		return info != null && info.getThreadId() != Thread.currentThread().getId()
+				&& !info.getThreadName().startsWith(RestConnectorStub.THREAD_PREFIX)
+				&& !info.getThreadName().startsWith(DISPATCHER_THREAD);
+	}
+
+	/**
+	 * Get the CPU time of the process.
+	 * @return time in nanoseconds, -1 if it is not available
+	 */
+	private static long processCpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		return os instanceof com.sun.management.OperatingSystemMXBean
+				? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1;
+	}
+
+}
@@ -0,0 +1,92 @@
+package collector.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Payloads of attributes in the shape returned by RESTConnector.
+ * {@code
+   [{"name":"Heap","value":{"value":"103350272","type":"java.lang.Long"}}, ...]
+ * }
+ * <p>If the system property {@value #PAYLOADS_PROPERTY} specifies a directory,
+ * payloads recorded from RESTConnector are read from {@code attributes-<n>-<variant>.json} in it.
+ * Otherwise, payloads are generated with the mix of types of PMI statistics:
+ * counters and gauges in {@code java.lang.Long} and {@code java.lang.Integer},
+ * times in {@code java.lang.Double} and a few descriptions in {@code java.lang.String}.</p>
+ */
+final class Payloads {
+
+	/** Name of system property specifying the directory of recorded payloads. */
+	static final String PAYLOADS_PROPERTY = "collector.payloads";
+
+	private Payloads() {
+	}
+
+	/**
+	 * Get a payload.
+	 * @param attributes number of attributes
+	 * @param variant variant of values, the payloads of the same number of attributes share the names and types
+	 * @return bytes of the payload
+	 */
+	static byte[] of(int attributes, int variant) {
+		String directory = System.getProperty(PAYLOADS_PROPERTY);
+		if (directory != null) {
+			Path recorded = Paths.get(directory, "attributes-" + attributes + "-" + variant + ".json");
+			if (Files.exists(recorded)) {
+				try {
+					return Files.readAllBytes(recorded);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+		return generate(attributes, variant);
+	}
+
+	private static byte[] generate(int attributes, int variant) {
+		StringBuilder out = new StringBuilder(attributes * 80).append('[');
+		for (int i = 0; i < attributes; i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			out.append("{\"name\":\"");
+			String type;
+			String value;
+			switch (i % 8) {
+			case 0:
+			case 1:
+			case 2:
+				type = "java.lang.Long";
+				out.append("Request").append(i).append("Count");
+				value = String.valueOf(1000000L * (i + 1) + variant * 37L * (i + 1));
+				break;
+			case 3:
+			case 4:
+				type = "java.lang.Integer";
+				out.append("ActiveThreads").append(i);
+				value = String.valueOf((i * 7 + variant * 3) % 200);
+				break;
+			case 5:
+			case 6:
+				type = "java.lang.Double";
+				out.append("ResponseTime").append(i);
+				value = String.valueOf(12.5 * (i % 17) + variant * 0.125);
+				break;
+			default:
+				type = "java.lang.String";
+				out.append("Description").append(i);
+				value = "Default Executor \\\"" + i + "\\\"";
+				break;
+			}
+			out.append("\",\"value\":{\"value\":\"").append(value)
+					.append("\",\"type\":\"").append(type).append("\"}}");
+		}
+		return out.append(']').toString().getBytes(UTF_8);
+	}
+
+}
@@ -0,0 +1,17 @@
+package collector.rest.stub;
+
+/**
+ * Dynamics of the values of synthetic MBeans, advanced on every request of their attributes.
+ */
+public enum Dynamics {
+
+	/** Values never change, as the statistics of an idle server. */
+	CONSTANT,
+
+	/** Counters grow, gauges and times walk randomly, as the statistics of a busy server. */
+	COUNTING,
+
+	/** Every value is random on every request, the worst case for comparing samples. */
+	RANDOM
+
+}
@@ -0,0 +1,336 @@
+package collector.rest.stub;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embeddable stub of RESTConnector serving synthetic MBeans of PMI for load and scale testing of the collector.
+ * <p>The listing of MBeans ({@code GET /IBMJMXConnectorREST/mbeans/}) is returned in the shape of
+ * {@code List<ManagedObject>} with an {@code ETag}, and the attributes of an MBean
+ * ({@code GET /IBMJMXConnectorREST/mbeans/<object name>/attributes}) in the shape of
+ * {@code List<StatEntry>}, projected by {@code attribute} parameters if any. Any credentials are accepted.</p>
+ * <p>The number of MBeans, the number of attributes and the length of descriptions determine the size
+ * of payloads, and the values change on every request according to the {@link Dynamics}.
+ * Each request is delayed by the latency with a uniform jitter, and then fails with HTTP 500
+ * at the rate of errors, or loses its connection without a response at the rate of resets.</p>
+ * <p>Properties are configured before {@link #start()}. Requests are served by threads named
+ * {@value #THREAD_PREFIX}{@code <n>}, so that a load driver in the same process can tell
+ * the CPU time of the stub from that of the collector.</p>
+ */
+public class RestConnectorStub implements AutoCloseable {
+
+	/** Path of RESTConnector under which MBeans are served. */
+	public static final String CONTEXT = "/IBMJMXConnectorREST/mbeans";
+
+	/** Prefix of names of threads serving requests. */
+	public static final String THREAD_PREFIX = "stub-";
+
+	private static final String ATTRIBUTES = "/attributes";
+
+	private int mbeans = 1000;
+
+	private int attributes = 20;
+
+	private int textLength = 16;
+
+	private Dynamics dynamics = Dynamics.COUNTING;
+
+	private long latency;
+
+	private long jitter;
+
+	private double errorRate;
+
+	private double resetRate;
+
+	private int threads = 64;
+
+	private int port;
+
+	/** Map associating the object name with the MBean. */
+	private final Map<String, SyntheticMBean> beans = new LinkedHashMap<>();
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder resets = new LongAdder();
+
+	private final LongAdder sent = new LongAdder();
+
+	private byte[] listing;
+
+	private String entityTag;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	/**
+	 * Create the MBeans and start serving them.
+	 * @throws IOException fail to bind the port
+	 */
+	public void start() throws IOException {
+		StringBuilder out = new StringBuilder(mbeans * 160).append('[');
+		for (int i = 0; i < mbeans; i++) {
+			SyntheticMBean bean = new SyntheticMBean(i, attributes, textLength);
+			beans.put(bean.getObjectName(), bean);
+			if (i > 0) {
+				out.append(',');
+			}
+			bean.appendManagedObject(out, CONTEXT + '/' + URLEncoder.encode(bean.getObjectName(), UTF_8.name()));
+		}
+		listing = out.append(']').toString().getBytes(UTF_8);
+		entityTag = "\"" + mbeans + '-' + attributes + "\"";
+
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, THREAD_PREFIX + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.createContext(CONTEXT, this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stop serving immediately.
+	 */
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * Get the location to be specified to the collector.
+	 * @return URL such as {@code http://127.0.0.1:9080/IBMJMXConnectorREST/mbeans/}
+	 */
+	public String getLocation() {
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getAddress().getHostAddress() + ':' + address.getPort() + CONTEXT + '/';
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.increment();
+		try {
+			delay();
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			if (resetRate > 0 && random.nextDouble() < resetRate) {
+				resets.increment();
+				return;
+			}
+			if (errorRate > 0 && random.nextDouble() < errorRate) {
+				errors.increment();
+				respond(exchange, 500, "{\"error\":\"synthetic failure\"}".getBytes(UTF_8));
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+			if (!path.endsWith(ATTRIBUTES)) {
+				if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.getResponseHeaders().set("ETag", entityTag);
+					exchange.sendResponseHeaders(304, -1);
+					return;
+				}
+				exchange.getResponseHeaders().set("ETag", entityTag);
+				respond(exchange, 200, listing);
+				return;
+			}
+
+			int start = 0;
+			while (start < path.length() && path.charAt(start) == '/') {
+				start++;
+			}
+			SyntheticMBean bean = beans.get(path.substring(start, path.length() - ATTRIBUTES.length()));
+			if (bean == null) {
+				respond(exchange, 404, "{\"error\":\"instance not found\"}".getBytes(UTF_8));
+				return;
+			}
+			StringBuilder out = new StringBuilder(attributes * 80);
+			bean.appendAttributes(out, dynamics, projectionOf(exchange.getRequestURI().getRawQuery()));
+			respond(exchange, 200, out.toString().getBytes(UTF_8));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+		sent.add(body.length);
+	}
+
+	private void delay() {
+		long time = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+		if (time > 0) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(time);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Get the names of attributes requested by {@code attribute} parameters.
+	 * @param query raw query string of the request
+	 * @return names of attributes, empty if all attributes are requested
+	 */
+	private static Set<String> projectionOf(String query) throws UnsupportedEncodingException {
+		if (query == null || query.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Set<String> names = new HashSet<>();
+		for (String parameter : query.split("&")) {
+			if (parameter.startsWith("attribute=")) {
+				names.add(URLDecoder.decode(parameter.substring("attribute=".length()), UTF_8.name()));
+			}
+		}
+		return names;
+	}
+
+	public int getMBeans() {
+		return mbeans;
+	}
+
+	/**
+	 * Set the number of MBeans.
+	 * @param mbeans number of MBeans (default: 1000)
+	 */
+	public void setMBeans(int mbeans) {
+		this.mbeans = mbeans;
+	}
+
+	public int getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Set the number of attributes per MBean, which mostly determines the size of payloads.
+	 * @param attributes number of attributes (default: 20)
+	 */
+	public void setAttributes(int attributes) {
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Set the length of the values of descriptions, one in eight attributes.
+	 * @param textLength number of characters (default: 16)
+	 */
+	public void setTextLength(int textLength) {
+		this.textLength = textLength;
+	}
+
+	/**
+	 * Set the dynamics of values.
+	 * @param dynamics dynamics of values (default: {@link Dynamics#COUNTING})
+	 */
+	public void setDynamics(Dynamics dynamics) {
+		this.dynamics = dynamics;
+	}
+
+	/**
+	 * Set the latency of responses.
+	 * @param latency mean time in milliseconds before responding (default: 0)
+	 * @param jitter maximum deviation in milliseconds from {@code latency} (default: 0)
+	 */
+	public void setLatency(long latency, long jitter) {
+		this.latency = Math.max(latency, 0);
+		this.jitter = Math.max(Math.min(jitter, this.latency), 0);
+	}
+
+	/**
+	 * Set the rate of requests failing with HTTP 500.
+	 * @param errorRate ratio between 0 and 1 (default: 0)
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Set the rate of requests whose connections are closed without a response.
+	 * @param resetRate ratio between 0 and 1 (default: 0)
+	 */
+	public void setResetRate(double resetRate) {
+		this.resetRate = resetRate;
+	}
+
+	/**
+	 * Set the number of threads serving requests, which bounds the requests delayed at once.
+	 * @param threads number of threads (default: 64)
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Set the port listened on the loopback address.
+	 * @param port port number, 0 for an ephemeral port (default: 0)
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Get the number of requests received.
+	 * @return number of requests
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Get the number of requests failed with HTTP 500.
+	 * @return number of errors
+	 */
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * Get the number of connections closed without a response.
+	 * @return number of resets
+	 */
+	public long getResets() {
+		return resets.sum();
+	}
+
+	/**
+	 * Get the number of bytes of response bodies sent.
+	 * @return number of bytes
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+}
@@ -0,0 +1,168 @@
+package collector.rest.stub;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * MBean of PMI statistics with synthetic attributes.
+ * <p>Attributes are mixed as the statistics of Liberty: counters in {@code java.lang.Long},
+ * gauges in {@code java.lang.Integer}, times in {@code java.lang.Double} and a few descriptions
+ * in {@code java.lang.String}.</p>
+ */
+final class SyntheticMBean {
+
+	/** Types of MBeans, all of which are listed as statistics of PMI. */
+	private static final String[] TYPES = {
+			"ThreadPoolStats", "ConnectionPoolStats", "ServletStats", "SessionStats", "RequestTimingStats" };
+
+	private static final int LONG = 0;
+
+	private static final int INTEGER = 1;
+
+	private static final int DOUBLE = 2;
+
+	private static final int STRING = 3;
+
+	private static final String[] TYPE_NAMES = {
+			"java.lang.Long", "java.lang.Integer", "java.lang.Double", "java.lang.String" };
+
+	private final String objectName;
+
+	private final String className;
+
+	private final String[] names;
+
+	private final int[] kinds;
+
+	/** Values of counters and gauges, guarded by {@code this}. */
+	private final long[] integers;
+
+	/** Values of times, guarded by {@code this}. */
+	private final double[] decimals;
+
+	private final String text;
+
+	/**
+	 * Constructor.
+	 * @param index index of the MBean, which determines its type and name
+	 * @param attributes number of attributes
+	 * @param textLength length of the values of descriptions
+	 */
+	SyntheticMBean(int index, int attributes, int textLength) {
+		String type = TYPES[index % TYPES.length];
+		this.objectName = "WebSphere:type=" + type + ",name=synthetic-" + index;
+		this.className = "collector.rest.stub." + type;
+		this.names = new String[attributes];
+		this.kinds = new int[attributes];
+		this.integers = new long[attributes];
+		this.decimals = new double[attributes];
+
+		for (int i = 0; i < attributes; i++) {
+			switch (i % 8) {
+			case 0:
+			case 1:
+			case 2:
+				kinds[i] = LONG;
+				names[i] = "Request" + i + "Count";
+				integers[i] = 1000L * (index + i);
+				break;
+			case 3:
+			case 4:
+				kinds[i] = INTEGER;
+				names[i] = "ActiveThreads" + i;
+				integers[i] = (index + i) % 200;
+				break;
+			case 5:
+			case 6:
+				kinds[i] = DOUBLE;
+				names[i] = "ResponseTime" + i;
+				decimals[i] = 12.5 * ((index + i) % 17);
+				break;
+			default:
+				kinds[i] = STRING;
+				names[i] = "Description" + i;
+				break;
+			}
+		}
+
+		StringBuilder description = new StringBuilder(textLength).append("synthetic-").append(index);
+		while (description.length() < textLength) {
+			description.append(' ');
+		}
+		this.text = description.toString();
+	}
+
+	String getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * Append the element of the listing of MBeans in the shape of {@code ManagedObject}.
+	 * @param out destination of the JSON object
+	 * @param url URL of the MBean
+	 */
+	void appendManagedObject(StringBuilder out, String url) {
+		out.append("{\"objectName\":\"").append(objectName)
+				.append("\",\"className\":\"").append(className)
+				.append("\",\"URL\":\"").append(url).append("\"}");
+	}
+
+	/**
+	 * Advance the values and append them in the shape of {@code List<StatEntry>}.
+	 * @param out destination of the JSON array
+	 * @param dynamics dynamics of the values
+	 * @param projection names of attributes requested, all attributes if it is empty
+	 */
+	synchronized void appendAttributes(StringBuilder out, Dynamics dynamics, Set<String> projection) {
+		advance(dynamics);
+		out.append('[');
+		boolean first = true;
+		for (int i = 0; i < names.length; i++) {
+			if (!projection.isEmpty() && !projection.contains(names[i])) {
+				continue;
+			}
+			if (!first) {
+				out.append(',');
+			}
+			first = false;
+			out.append("{\"name\":\"").append(names[i]).append("\",\"value\":{\"value\":\"");
+			switch (kinds[i]) {
+			case DOUBLE:
+				out.append(decimals[i]);
+				break;
+			case STRING:
+				out.append(text);
+				break;
+			default:
+				out.append(integers[i]);
+				break;
+			}
+			out.append("\",\"type\":\"").append(TYPE_NAMES[kinds[i]]).append("\"}}");
+		}
+		out.append(']');
+	}
+
+	private void advance(Dynamics dynamics) {
+		if (dynamics == Dynamics.CONSTANT) {
+			return;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		boolean counting = dynamics == Dynamics.COUNTING;
+		for (int i = 0; i < names.length; i++) {
+			switch (kinds[i]) {
+			case LONG:
+				integers[i] = counting ? integers[i] + random.nextInt(100) : random.nextLong(1000000000L);
+				break;
+			case INTEGER:
+				integers[i] = counting ? Math.max(integers[i] + random.nextInt(-3, 4), 0) : random.nextInt(200);
+				break;
+			case DOUBLE:
+				decimals[i] = counting ? Math.max(decimals[i] + random.nextDouble(-1, 1), 0) : random.nextDouble(1000);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+}
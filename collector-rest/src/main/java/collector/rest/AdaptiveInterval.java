@@ -0,0 +1,135 @@
+package collector.rest;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Interval between polls of a statistics adapting to its values and the latency of responses.
+ * <p>The interval is a multiple of the period, called stride, so that polls stay on the ticks
+ * shared by the group. The stride is doubled up to the maximum while values have not changed
+ * for {@value #UNCHANGED_POLLS} polls or the latency rises over twice its baseline,
+ * and it returns to 1 as soon as values change.</p>
+ */
+public class AdaptiveInterval {
+
+	/** Number of polls without change before backing off. */
+	static final int UNCHANGED_POLLS = 3;
+
+	/** Ratio of the latency to its baseline regarded as rising. */
+	private static final double RISING = 2.0;
+
+	/** Weight of the latest latency in the baseline. */
+	private static final double WEIGHT = 0.2;
+
+	private final long period;
+
+	private final int maxStride;
+
+	private volatile int stride = 1;
+
+	private volatile String reason;
+
+	/** Fingerprint of the values of the last sample, guarded by {@code this}. */
+	private long fingerprint;
+
+	private boolean sampled;
+
+	private int unchanged;
+
+	/** Moving average of latencies in milliseconds, negative until the first response. */
+	private double baseline = -1;
+
+	/**
+	 * Constructor.
+	 * @param period interval between ticks in milliseconds
+	 * @param maxStride maximum multiple of the period, 1 for polling at every tick
+	 */
+	public AdaptiveInterval(long period, int maxStride) {
+		this.period = period;
+		this.maxStride = Math.max(maxStride, 1);
+		this.reason = this.maxStride > 1 ? "adaptive" : "fixed";
+	}
+
+	/**
+	 * Observe a sample, adapting the stride.
+	 * @param row values of the sample
+	 * @param latency time in milliseconds from issuing the poll until the response
+	 */
+	public synchronized void observe(Row row, long latency) {
+		long current = fingerprintOf(row);
+		boolean changed = !sampled || current != fingerprint;
+		sampled = true;
+		fingerprint = current;
+		boolean rising = baseline > 0 && latency > baseline * RISING;
+		baseline = baseline < 0 ? latency : baseline * (1 - WEIGHT) + latency * WEIGHT;
+		if (maxStride == 1) {
+			return;
+		}
+
+		if (rising) {
+			unchanged = 0;
+			backOff("latency " + latency + " ms rising over " + Math.round(baseline) + " ms");
+		} else if (changed) {
+			unchanged = 0;
+			if (stride > 1) {
+				stride = 1;
+				reason = "values changed";
+			}
+		} else if (++unchanged >= UNCHANGED_POLLS) {
+			unchanged = 0;
+			backOff("unchanged for " + UNCHANGED_POLLS * stride + " periods");
+		}
+	}
+
+	private void backOff(String cause) {
+		if (stride < maxStride) {
+			stride = Math.min(stride * 2, maxStride);
+			reason = cause;
+		}
+	}
+
+	/**
+	 * Get the multiple of the period between polls.
+	 * @return the stride, 1 for polling at every tick
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Get the effective interval between polls.
+	 * @return interval in milliseconds
+	 */
+	public long getInterval() {
+		return period * stride;
+	}
+
+	/**
+	 * Get the reason of the last change of the stride.
+	 * @return short description of the reason
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	private static long fingerprintOf(Row row) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < row.size(); i++) {
+			long value;
+			switch (row.getKind(i)) {
+			case Layout.INTEGER:
+				value = row.getInteger(i);
+				break;
+			case Layout.DECIMAL:
+				value = Double.doubleToLongBits(row.getDecimal(i));
+				break;
+			default:
+				value = String.valueOf(row.getText(i)).hashCode();
+				break;
+			}
+			hash = (hash ^ value) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,149 @@
+package collector.rest;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Circuit breaker shared by all the statistics polled from a location.
+ * <p>The circuit opens after consecutive failures reach the threshold, and polls fail fast
+ * without reaching the location while it is open. After the backoff, a single poll is let through
+ * as a probe in the half-open state; its success closes the circuit,
+ * and its failure opens the circuit again with the backoff doubled up to the maximum.</p>
+ */
+public class CircuitBreaker {
+
+	/**
+	 * State of a circuit.
+	 */
+	public enum State {
+		/** Polls reach the location. */
+		CLOSED,
+		/** Polls fail fast. */
+		OPEN,
+		/** A probe is reaching the location. */
+		HALF_OPEN
+	}
+
+	/**
+	 * Exception representing a poll rejected by an open circuit.
+	 */
+	public static class OpenException extends ProcessingException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor.
+		 * @param location location whose circuit is open
+		 */
+		public OpenException(String location) {
+			super("Circuit is open: ".concat(location));
+		}
+
+	}
+
+	private final int threshold;
+
+	private final long backoff;
+
+	private final long maxBackoff;
+
+	/** State of the circuit, guarded by {@code this}. */
+	private State state = State.CLOSED;
+
+	/** Number of consecutive failures, guarded by {@code this}. */
+	private int failures;
+
+	/** Backoff in milliseconds applied when the circuit opens next, guarded by {@code this}. */
+	private long current;
+
+	/** Time in milliseconds until which the circuit stays open or the probe is awaited, guarded by {@code this}. */
+	private long openUntil;
+
+	/** Number of times the circuit has opened, guarded by {@code this}. */
+	private long opened;
+
+	/**
+	 * Constructor.
+	 * @param threshold number of consecutive failures opening the circuit
+	 * @param backoff time in milliseconds for which the circuit stays open first
+	 * @param maxBackoff maximum time in milliseconds for which the circuit stays open
+	 */
+	public CircuitBreaker(int threshold, long backoff, long maxBackoff) {
+		this.threshold = Math.max(threshold, 1);
+		this.backoff = Math.max(backoff, 0);
+		this.maxBackoff = Math.max(maxBackoff, this.backoff);
+		this.current = this.backoff;
+	}
+
+	/**
+	 * Determine whether a poll may reach the location, turning to half-open after the backoff.
+	 * @return {@code false} if the poll should fail fast
+	 */
+	public synchronized boolean allow() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		// only one probe at a time, unless the probe has been abandoned
+		long now = System.currentTimeMillis();
+		if (now < openUntil) {
+			return false;
+		}
+		state = State.HALF_OPEN;
+		openUntil = now + current;
+		return true;
+	}
+
+	/**
+	 * Record a successful poll.
+	 * @return {@code true} if the circuit has been closed by this poll
+	 */
+	public synchronized boolean succeeded() {
+		failures = 0;
+		current = backoff;
+		if (state == State.CLOSED) {
+			return false;
+		}
+		state = State.CLOSED;
+		return true;
+	}
+
+	/**
+	 * Record a failed poll.
+	 * @return {@code true} if the circuit has been opened by this poll
+	 */
+	public synchronized boolean failed() {
+		failures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= threshold)) {
+			state = State.OPEN;
+			openUntil = System.currentTimeMillis() + current;
+			current = Math.min(current * 2, maxBackoff);
+			opened++;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Get the time until which the circuit stays open.
+	 * @return time in milliseconds, meaningful only while the circuit is open
+	 */
+	public synchronized long getOpenUntil() {
+		return openUntil;
+	}
+
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Get the number of times the circuit has opened.
+	 * @return number of times
+	 */
+	public synchronized long getOpened() {
+		return opened;
+	}
+
+}
@@ -0,0 +1,365 @@
+package collector.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import collector.rest.cluster.HashRing;
+
+/**
+ * Membership of collectors sharing statistics by consistent hashing on their IDs.
+ * <p>Members are listed in a file, one base URL of {@code requests} per line,
+ * which is shared by the collectors, such as several Liberty servers on a host
+ * or replicas mounting the same volume.
+ * A collector adds itself to the file on start and removes itself on stop,
+ * and every collector reads the file periodically to rebalance the statistics it owns
+ * when the members have changed.</p>
+ * <p>Each reading also writes the time of the reading after the base URL of this collector as a heartbeat,
+ * and removes the members whose heartbeats have expired, so that a collector which has crashed
+ * leaves the members. A line without the time, such as one written by hand, never expires.
+ * Without the file, the collector owns all statistics by itself.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_MEMBERS}</dt>
+ * <dd>path of the file listing members (default: none)</dd>
+ * <dt>{@value #ENV_SELF}</dt>
+ * <dd>base URL of {@code requests} of this collector, such as
+ * {@code http://localhost:9080/collector-rest/requests} (default: none)</dd>
+ * <dt>{@value #ENV_MEMBERS_REFRESH}</dt>
+ * <dd>interval in seconds for reading the file (default: 5)</dd>
+ * <dt>{@value #ENV_MEMBERS_EXPIRY}</dt>
+ * <dd>time in seconds after which a member without heartbeat is removed
+ * (default and minimum: 3 times the interval)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class ClusterMembership {
+
+	/**
+	 * Name of environment variable specifying the path of the file listing members.
+	 * @see ClusterMembership
+	 */
+	public static final String ENV_MEMBERS = "COLLECTOR_MEMBERS";
+
+	/**
+	 * Name of environment variable specifying the base URL of this collector.
+	 * @see ClusterMembership
+	 */
+	public static final String ENV_SELF = "COLLECTOR_SELF";
+
+	/**
+	 * Name of environment variable specifying the interval for reading the file listing members.
+	 * @see ClusterMembership
+	 */
+	public static final String ENV_MEMBERS_REFRESH = "COLLECTOR_MEMBERS_REFRESH";
+
+	/**
+	 * Name of environment variable specifying the time after which a member without heartbeat is removed.
+	 * @see ClusterMembership
+	 */
+	public static final String ENV_MEMBERS_EXPIRY = "COLLECTOR_MEMBERS_EXPIRY";
+
+	/** Number of virtual points per member on the hash ring. */
+	private static final int VIRTUAL_POINTS = 128;
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	/** Actions performed after every reading of the file, accepting whether the members have changed. */
+	private final List<Consumer<Boolean>> listeners = new CopyOnWriteArrayList<>();
+
+	@Inject
+	private PollingScheduler scheduler;
+
+	@Resource(lookup = "java:comp/DefaultManagedExecutorService")
+	private ManagedExecutorService executor;
+
+	private Path file;
+
+	private String self;
+
+	private long refresh = TimeUnit.SECONDS.toMillis(5);
+
+	private long expiry = TimeUnit.SECONDS.toMillis(15);
+
+	private volatile HashRing ring = HashRing.EMPTY;
+
+	private Client client;
+
+	/** Deadline of reading the file. */
+	private volatile ScheduledFuture<?> deadline;
+
+	/**
+	 * Determine whether statistics are shared by members.
+	 * @return {@code true} if both the file and the base URL of this collector are specified
+	 */
+	public boolean isEnabled() {
+		return file != null && self != null;
+	}
+
+	public String getSelf() {
+		return self;
+	}
+
+	/**
+	 * Get the members read from the file last.
+	 * @return base URLs of members
+	 */
+	public Set<String> getMembers() {
+		return ring.getMembers();
+	}
+
+	/**
+	 * Determine whether a request comes from a host of the members,
+	 * such as a statistics handed over by another member.
+	 * @param address IP address of the client
+	 * @return {@code true} if statistics are shared and a member runs on the host of the address
+	 */
+	public boolean isMember(String address) {
+		if (!isEnabled() || address == null) {
+			return false;
+		}
+		try {
+			InetAddress client = InetAddress.getByName(address);
+			for (String member : getMembers()) {
+				String host = URI.create(member).getHost();
+				if (host != null) {
+					for (InetAddress resolved : InetAddress.getAllByName(host)) {
+						if (resolved.equals(client)) {
+							return true;
+						}
+					}
+				}
+			}
+		} catch (IllegalArgumentException | UnknownHostException e) {
+			logger.log(Level.FINE, e, () -> "Cannot resolve members: " + e.getLocalizedMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Get the member owning a statistics, unless this collector owns it.
+	 * @param id ID of statistics
+	 * @return base URL of the owner, empty if this collector owns it
+	 */
+	public Optional<String> ownerOf(String id) {
+		String owner = isEnabled() ? ring.ownerOf(id) : null;
+		return owner == null || owner.equals(self) ? Optional.empty() : Optional.of(owner);
+	}
+
+	/**
+	 * Register an action performed after every reading of the file, on a managed thread.
+	 * @param listener action such as rebalancing statistics, accepting {@code true} if the members have changed
+	 */
+	public void onRefresh(Consumer<Boolean> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Hand a statistics over to its owner without waiting for the response.
+	 * @param owner base URL of the owner
+	 * @param id ID of statistics
+	 * @param form description of the statistics
+	 * @return stage completed when the owner has accepted the statistics,
+	 * or completed exceptionally with {@code ProcessingException} if it fails
+	 */
+	public CompletionStage<Void> handOver(String owner, String id, Form form) {
+		return client.target(owner).path(id).path("handover").request().rx().post(Entity.form(form))
+				.thenAccept(response -> {
+					try (Response obtained = response) {
+						if (obtained.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+							throw new ProcessingException(obtained.getStatus() + " "
+									+ obtained.getStatusInfo().getReasonPhrase());
+						}
+					}
+				});
+	}
+
+	/**
+	 * Get the first page of the list of statistics owned by a member without waiting for the response,
+	 * so that the lists of several members are fetched at once.
+	 * @param member base URL of the member
+	 * @param parameters parameters of the list, such as the filter and the size of pages
+	 * @return future of HTML fragment rendering the list, which fails with {@code ProcessingException}
+	 * or {@code WebApplicationException}
+	 */
+	public Future<String> list(String member, Map<String, String> parameters) {
+		WebTarget target = client.target(member).path("/").queryParam("local", true);
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			target = target.queryParam(parameter.getKey(), parameter.getValue());
+		}
+		return target.request(MediaType.TEXT_HTML).async().get(String.class);
+	}
+
+	/**
+	 * Read the file listing members with the heartbeat of this collector, and schedule the next reading.
+	 * <p>The members whose heartbeats have expired are removed from the file,
+	 * and this collector is added again if another member has removed it.</p>
+	 * @param time the time in milliseconds of the current deadline
+	 */
+	private void refresh(long time) {
+		try {
+			executor.execute(() -> {
+				try {
+					long now = System.currentTimeMillis();
+					Set<String> members = update(current -> {
+						current.values().removeIf(heartbeat -> heartbeat != null && now - heartbeat > expiry);
+						current.put(self, now);
+					}).keySet();
+					boolean changed = !members.equals(ring.getMembers());
+					if (changed) {
+						logger.info(() -> "Members: ".concat(members.toString()));
+						ring = new HashRing(members, VIRTUAL_POINTS);
+					}
+					listeners.forEach(listener -> listener.accept(changed));
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e, () -> "Cannot read members: ".concat(e.toString()));
+				}
+			});
+			deadline = scheduler.at(time + refresh, () -> refresh(time + refresh));
+		} catch (RejectedExecutionException e) {
+			// the application is stopping
+		}
+	}
+
+	/**
+	 * Read and update the file listing members under an exclusive lock.
+	 * @param modification action modifying the members associated with the times in milliseconds
+	 * of their heartbeats, or {@code null} if they never expire, which are written back if modified
+	 * @return the members after modification
+	 * @throws IOException fail to access the file
+	 */
+	private Map<String, Long> update(Consumer<Map<String, Long>> modification) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			FileLock lock = channel.lock();
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+					// read the whole file
+				}
+				Map<String, Long> members = new LinkedHashMap<>();
+				for (String line : new String(buffer.array(), 0, buffer.position(), UTF_8).split("[\r\n]+")) {
+					if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+						String[] fields = line.trim().split("\\s+", 2);
+						members.put(fields[0], fields.length > 1 ? parseHeartbeat(fields[1]) : null);
+					}
+				}
+
+				Map<String, Long> modified = new LinkedHashMap<>(members);
+				modification.accept(modified);
+				if (!modified.equals(members)) {
+					StringBuilder lines = new StringBuilder();
+					modified.forEach((member, heartbeat) -> {
+						lines.append(member);
+						if (heartbeat != null) {
+							lines.append(' ').append(heartbeat);
+						}
+						lines.append('\n');
+					});
+					channel.truncate(0);
+					channel.write(ByteBuffer.wrap(lines.toString().getBytes(UTF_8)), 0);
+				}
+				return modified;
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Parse the time of a heartbeat written after a base URL.
+	 * @param value the time in milliseconds
+	 * @return the time, or {@code null} if it is not a number, never expiring
+	 */
+	private static Long parseHeartbeat(String value) {
+		try {
+			return Long.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		file = Optional.ofNullable(Settings.getEnvValue(ENV_MEMBERS, null)).map(Paths::get).orElse(null);
+		self = Optional.ofNullable(Settings.getEnvValue(ENV_SELF, null))
+				.map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url).orElse(null);
+		refresh = TimeUnit.SECONDS.toMillis(Math.max(Settings.getLong(ENV_MEMBERS_REFRESH, 5), 1));
+		expiry = Math.max(TimeUnit.SECONDS.toMillis(Settings.getLong(ENV_MEMBERS_EXPIRY, 0)), refresh * 3);
+		if (file != null && self == null) {
+			logger.severe(() -> "Cannot join members without " + ENV_SELF);
+		}
+		if (!isEnabled()) {
+			return;
+		}
+
+		client = ClientBuilder.newBuilder()
+				.connectTimeout(Settings.getLong(PollingEngine.ENV_CONNECT_TIMEOUT, 10), TimeUnit.SECONDS)
+				.readTimeout(Settings.getLong(PollingEngine.ENV_READ_TIMEOUT, 30), TimeUnit.SECONDS)
+				.build();
+		try {
+			ring = new HashRing(update(members -> members.put(self, System.currentTimeMillis())).keySet(),
+					VIRTUAL_POINTS);
+			logger.info(() -> "Joined members: ".concat(ring.getMembers().toString()));
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, e, () -> "Cannot join members: ".concat(e.toString()));
+		}
+		long first = System.currentTimeMillis() + refresh;
+		deadline = scheduler.at(first, () -> refresh(first));
+	}
+
+	@PreDestroy
+	private void destroy() {
+		if (deadline != null) {
+			deadline.cancel(false);
+		}
+		if (!isEnabled()) {
+			return;
+		}
+		try {
+			update(members -> members.remove(self));
+		} catch (IOException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot leave members: ".concat(e.toString()));
+		}
+		client.close();
+	}
+
+}
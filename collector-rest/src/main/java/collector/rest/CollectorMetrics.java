@@ -0,0 +1,147 @@
+package collector.rest;
+
+import static collector.rest.metrics.Exposition.appendFamily;
+import static collector.rest.metrics.Exposition.appendSample;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import collector.rest.metrics.Exposition;
+import collector.rest.metrics.Histogram;
+import collector.rest.stream.OutputCounters;
+
+/**
+ * Self-instrumentation of the collector exposed in Prometheus text format.
+ * <p>Meters are updated on the hot path only by incrementing counters and histogram buckets,
+ * and everything else, such as depths of queues, is read when the metrics are rendered.
+ * Metrics are broken down per location of RESTConnector and per statistics;
+ * the meters of a statistics are discarded when it is finished or completed.</p>
+ */
+@ApplicationScoped
+public class CollectorMetrics {
+
+	@Inject
+	private PollingEngine engine;
+
+	@Inject
+	private PollingScheduler scheduler;
+
+	@Inject
+	private StreamHub hub;
+
+	/** Map associating the ID of statistics with its meters. */
+	private final Map<String, RequestMeters> meters = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the meters of a statistics, creating them if necessary.
+	 * @param work request for a statistics
+	 * @return meters of the statistics
+	 */
+	public RequestMeters of(StatisticsRequest work) {
+		return meters.computeIfAbsent(work.getId(), id -> new RequestMeters(id, work.getLocation()));
+	}
+
+	/**
+	 * Discard the meters of a statistics.
+	 * @param id ID of statistics
+	 */
+	public void remove(String id) {
+		meters.remove(id);
+	}
+
+	/**
+	 * Render all metrics in Prometheus text format.
+	 * @param out buffer to which the metrics are appended
+	 */
+	public void appendTo(StringBuilder out) {
+		Collection<Transport> transports = engine.getTransports();
+		histograms(out, "collector_request_seconds",
+				"Time from issuing a request to RESTConnector until its response or failure.",
+				transports, Transport::getLatency, this::labelsOf);
+		counters(out, "collector_requests_total", "Requests issued to RESTConnector.",
+				transports, Transport::getRequests, this::labelsOf);
+		counters(out, "collector_retries_total", "Requests retried after failures.",
+				transports, Transport::getRetried, this::labelsOf);
+		counters(out, "collector_hedges_total", "Requests issued for hedging slow ones.",
+				transports, Transport::getHedged, this::labelsOf);
+		appendFamily(out, "collector_wait_seconds_total", "counter",
+				"Time for which requests have waited for a connection.");
+		for (Transport transport : transports) {
+			appendSample(out, "collector_wait_seconds_total", labelsOf(transport), transport.getWaitTime() / 1000.0);
+		}
+		gauges(out, "collector_requests_active", "Requests in flight.",
+				transports, Transport::getActive, this::labelsOf);
+		gauges(out, "collector_requests_waiting", "Requests waiting for a connection.",
+				transports, Transport::getWaiting, this::labelsOf);
+		gauges(out, "collector_circuit_open", "1 if the circuit of the location is open, otherwise 0.",
+				transports, transport -> transport.getBreaker().getState() == CircuitBreaker.State.OPEN ? 1 : 0,
+				this::labelsOf);
+
+		Collection<RequestMeters> requests = meters.values();
+		histograms(out, "collector_poll_seconds",
+				"Time from issuing a poll until its response, including the time waiting for a connection.",
+				requests, RequestMeters::getPollTime, RequestMeters::getLabels);
+		histograms(out, "collector_parse_seconds", "Time for reading and decoding a response.",
+				requests, RequestMeters::getParseTime, RequestMeters::getLabels);
+		histograms(out, "collector_format_seconds", "Time for rendering a sample for a subscriber.",
+				requests, RequestMeters::getFormatTime, RequestMeters::getLabels);
+		histograms(out, "collector_write_seconds", "Time for writing a chunk to a subscriber.",
+				requests, RequestMeters::getWriteTime, RequestMeters::getLabels);
+		counters(out, "collector_received_bytes_total", "Bytes of responses read from RESTConnector.",
+				requests, meter -> meter.getReceived().get(), RequestMeters::getLabels);
+		counters(out, "collector_sent_bytes_total", "Bytes written to subscribers.",
+				requests, meter -> meter.getSent().get(), RequestMeters::getLabels);
+		counters(out, "collector_gaps_total", "Polls without sample.",
+				requests, meter -> meter.getGaps().get(), RequestMeters::getLabels);
+
+		appendFamily(out, "collector_scheduler_lag_seconds", "histogram",
+				"Delay of actions fired by the scheduler after their deadlines.");
+		scheduler.getLag().appendTo(out, "collector_scheduler_lag_seconds", "");
+		appendFamily(out, "collector_scheduler_pending", "gauge", "Actions waiting for their deadlines.");
+		appendSample(out, "collector_scheduler_pending", "", scheduler.getPending());
+		OutputCounters output = hub.getCounters();
+		appendFamily(out, "collector_output_dropped_total", "counter",
+				"Samples, gaps and keep-alives discarded for slow subscribers.");
+		appendSample(out, "collector_output_dropped_total", "", output.getDropped());
+		appendFamily(out, "collector_output_disconnected_total", "counter",
+				"Subscribers disconnected for not catching up.");
+		appendSample(out, "collector_output_disconnected_total", "", output.getDisconnected());
+	}
+
+	private String labelsOf(Transport transport) {
+		return Exposition.labels("location", transport.getLocation());
+	}
+
+	private static <T> void histograms(StringBuilder out, String name, String help, Collection<T> sources,
+			Function<T, Histogram> histogram, Function<T, String> labels) {
+		appendFamily(out, name, "histogram", help);
+		for (T source : sources) {
+			histogram.apply(source).appendTo(out, name, labels.apply(source));
+		}
+	}
+
+	private static <T> void counters(StringBuilder out, String name, String help, Collection<T> sources,
+			ToLongFunction<T> value, Function<T, String> labels) {
+		samples(out, name, "counter", help, sources, value, labels);
+	}
+
+	private static <T> void gauges(StringBuilder out, String name, String help, Collection<T> sources,
+			ToLongFunction<T> value, Function<T, String> labels) {
+		samples(out, name, "gauge", help, sources, value, labels);
+	}
+
+	private static <T> void samples(StringBuilder out, String name, String type, String help,
+			Collection<T> sources, ToLongFunction<T> value, Function<T, String> labels) {
+		appendFamily(out, name, type, help);
+		for (T source : sources) {
+			appendSample(out, name, labels.apply(source), value.applyAsLong(source));
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package collector.rest;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Cache of the names of MBeans listed by RESTConnector, keyed by the location and credentials.
+ * <p>A listing is reused until its TTL expires, and then revalidated with
+ * {@code If-None-Match} or {@code If-Modified-Since} if RESTConnector has returned
+ * {@code ETag} or {@code Last-Modified}. A listing fetched again is compared with the cached one,
+ * so that the caller can retire the MBeans which have disappeared.
+ * Only names of MBeans are extracted from the listing while it is parsed.
+ * Listings are fetched through {@link PollingEngine#fetch}, waiting for a slot of the location with polls
+ * and failing fast while its circuit is open.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_DISCOVERY_TTL}</dt>
+ * <dd>time in seconds for reusing a listing without asking RESTConnector (default: 60)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class DiscoveryCache {
+
+	/**
+	 * Name of environment variable specifying the TTL of a listing.
+	 * @see DiscoveryCache
+	 */
+	public static final String ENV_DISCOVERY_TTL = "COLLECTOR_DISCOVERY_TTL";
+
+	private static final String OBJECT_NAME = "objectName";
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	/** Map associating the key of the location and credentials with the listing. */
+	private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+
+	@Inject
+	private PollingEngine engine;
+
+	private long ttl = TimeUnit.SECONDS.toMillis(60);
+
+	/**
+	 * Get the names of MBeans at the location, fetching them if the cached listing has expired.
+	 * @param base request holding the location and credentials, whose query is the root
+	 * @return names of MBeans with those disappeared since the previous listing
+	 * @throws ProcessingException fail to fetch the listing, or the circuit of the location is open
+	 */
+	public Discovery discover(StatisticsRequest base) {
+		Listing listing = listings.computeIfAbsent(base.getCredentialsKey(), key -> new Listing());
+		synchronized (listing) {
+			long now = System.currentTimeMillis();
+			if (listing.names != null && now < listing.expires) {
+				return new Discovery(listing.names, Collections.emptySet());
+			}
+
+			Builder endpoint = engine.request(base);
+			if (listing.names != null && listing.entityTag != null) {
+				endpoint.header(HttpHeaders.IF_NONE_MATCH, listing.entityTag);
+			}
+			if (listing.names != null && listing.lastModified != null) {
+				endpoint.header(HttpHeaders.IF_MODIFIED_SINCE, listing.lastModified);
+			}
+
+			return engine.fetch(base, () -> endpoint, obtained -> {
+				if (obtained.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+					listing.expires = now + ttl;
+					logger.fine(() -> base.getLocation() + " is not modified.");
+					return new Discovery(listing.names, Collections.emptySet());
+				} else if (obtained.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+					throw new ProcessingException(obtained.getStatus() + " "
+							+ obtained.getStatusInfo().getReasonPhrase());
+				}
+
+				Set<String> names = parse(obtained.readEntity(InputStream.class));
+				Set<String> added = new HashSet<>(names);
+				Set<String> removed = new HashSet<>();
+				if (listing.names != null) {
+					added.removeAll(listing.names);
+					removed.addAll(listing.names);
+					removed.removeAll(names);
+				}
+
+				EntityTag tag = obtained.getEntityTag();
+				listing.entityTag = tag == null ? null : tag.toString();
+				listing.lastModified = obtained.getHeaderString(HttpHeaders.LAST_MODIFIED);
+				listing.names = Collections.unmodifiableSet(names);
+				listing.expires = now + ttl;
+				logger.fine(() -> base.getLocation() + ": " + added.size() + " MBeans appeared, "
+						+ removed.size() + " MBeans disappeared.");
+				return new Discovery(listing.names, removed);
+			});
+		}
+	}
+
+	/**
+	 * Extract the names of MBeans from a listing.
+	 * @param in the entity of the listing
+	 * @return names of MBeans
+	 * @throws ProcessingException fail to parse the listing
+	 */
+	private Set<String> parse(InputStream in) {
+		Set<String> names = new HashSet<>();
+		try (JsonParser parser = Json.createParser(in)) {
+			boolean name = false;
+			while (parser.hasNext()) {
+				Event event = parser.next();
+				if (event == Event.KEY_NAME) {
+					name = OBJECT_NAME.equals(parser.getString());
+				} else if (event == Event.VALUE_STRING && name) {
+					names.add(parser.getString());
+					name = false;
+				} else {
+					name = false;
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new ProcessingException(e);
+		}
+		return names;
+	}
+
+	@PostConstruct
+	private void initialize() {
+		ttl = TimeUnit.SECONDS.toMillis(Settings.getLong(ENV_DISCOVERY_TTL, 60));
+	}
+
+	/**
+	 * Names of MBeans and those disappeared since the previous listing.
+	 */
+	public static class Discovery {
+
+		private final Set<String> names;
+
+		private final Set<String> removed;
+
+		Discovery(Set<String> names, Set<String> removed) {
+			this.names = names;
+			this.removed = removed;
+		}
+
+		public Set<String> getNames() {
+			return names;
+		}
+
+		public Set<String> getRemoved() {
+			return removed;
+		}
+
+	}
+
+	/**
+	 * Cached listing of a location, guarded by itself.
+	 */
+	private static class Listing {
+
+		private Set<String> names;
+
+		private String entityTag;
+
+		private String lastModified;
+
+		private long expires;
+
+	}
+
+}
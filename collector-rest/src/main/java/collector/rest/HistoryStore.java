@@ -0,0 +1,377 @@
+package collector.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import collector.rest.series.SampleSink;
+import collector.rest.series.Segment;
+import collector.rest.series.SegmentReader;
+import collector.rest.series.SegmentWriter;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Durable store of samples written into compressed segment files per statistics.
+ * <p>A segment is rolled when it is filled, when it becomes older than the limit,
+ * or when the layout of attributes has been changed.
+ * Segments are kept after the statistics has ended and can be replayed by its ID.</p>
+ * <p>Segments no longer written are deleted periodically, oldest first, once they are older than
+ * the retention or while their total size exceeds the limit.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_STORE_DIR}</dt>
+ * <dd>directory of segment files (default: {@code history} under the output directory of the server)</dd>
+ * <dt>{@value #ENV_STORE_ALL}</dt>
+ * <dd>{@code true} for storing all statistics, otherwise only statistics polled without limit
+ * of times are stored (default: false)</dd>
+ * <dt>{@value #ENV_SEGMENT_SIZE}</dt>
+ * <dd>maximum size of a segment file in megabytes (default: 8)</dd>
+ * <dt>{@value #ENV_SEGMENT_HOURS}</dt>
+ * <dd>maximum time span of a segment file in hours (default: 24)</dd>
+ * <dt>{@value #ENV_STORE_RETENTION}</dt>
+ * <dd>time in hours for which segment files are kept after their last samples, 0 for keeping them
+ * (default: 168)</dd>
+ * <dt>{@value #ENV_STORE_MAX_SIZE}</dt>
+ * <dd>maximum total size in megabytes of segment files no longer written, 0 for no limit (default: 1024)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class HistoryStore {
+
+	/**
+	 * Name of environment variable specifying the directory of segment files.
+	 * @see HistoryStore
+	 */
+	public static final String ENV_STORE_DIR = "COLLECTOR_STORE_DIR";
+
+	/**
+	 * Name of environment variable specifying whether all statistics are stored.
+	 * @see HistoryStore
+	 */
+	public static final String ENV_STORE_ALL = "COLLECTOR_STORE_ALL";
+
+	/**
+	 * Name of environment variable specifying the maximum size of a segment file.
+	 * @see HistoryStore
+	 */
+	public static final String ENV_SEGMENT_SIZE = "COLLECTOR_SEGMENT_SIZE";
+
+	/**
+	 * Name of environment variable specifying the maximum time span of a segment file.
+	 * @see HistoryStore
+	 */
+	public static final String ENV_SEGMENT_HOURS = "COLLECTOR_SEGMENT_HOURS";
+
+	/**
+	 * Name of environment variable specifying the time for which segment files are kept.
+	 * @see HistoryStore
+	 */
+	public static final String ENV_STORE_RETENTION = "COLLECTOR_STORE_RETENTION";
+
+	/**
+	 * Name of environment variable specifying the maximum total size of segment files.
+	 * @see HistoryStore
+	 */
+	public static final String ENV_STORE_MAX_SIZE = "COLLECTOR_STORE_MAX_SIZE";
+
+	/** Interval in milliseconds for deleting segment files exceeding the retention or the limit. */
+	private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	/** Map associating the ID of statistics with its history being written. */
+	private final Map<String, History> histories = new ConcurrentHashMap<>();
+
+	private Path directory;
+
+	private boolean storeAll;
+
+	private int segmentSize = 8 * 1024 * 1024;
+
+	private long segmentSpan = TimeUnit.HOURS.toMillis(24);
+
+	private long retention = TimeUnit.HOURS.toMillis(168);
+
+	private long maxSize = 1024L * 1024 * 1024;
+
+	@Inject
+	private PollingScheduler scheduler;
+
+	@Resource(lookup = "java:comp/DefaultManagedExecutorService")
+	private ManagedExecutorService executor;
+
+	/** Deadline of deleting segment files. */
+	private volatile ScheduledFuture<?> deadline;
+
+	/**
+	 * Determine whether a statistics should be stored.
+	 * @param times number of polls, {@code Integer.MAX_VALUE} for polling without limit
+	 * @return {@code true} if the statistics should be stored
+	 */
+	public boolean isStored(int times) {
+		return storeAll || times == Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Start storing samples of a statistics.
+	 * @param id ID of statistics
+	 * @return destination of the samples
+	 */
+	public SampleSink open(String id) {
+		return histories.computeIfAbsent(id, History::new);
+	}
+
+	/**
+	 * Stop storing samples of a statistics, closing its segment file.
+	 * @param id ID of statistics
+	 */
+	public void close(String id) {
+		History history = histories.remove(id);
+		if (history != null) {
+			history.close();
+		}
+	}
+
+	/**
+	 * Replay the stored samples of a statistics within the range of time.
+	 * @param id ID of statistics
+	 * @param from the time in milliseconds, inclusive
+	 * @param to the time in milliseconds, exclusive
+	 * @param sink destination of the samples
+	 * @return {@code false} if no sample of the statistics is stored
+	 * @throws IOException fail to read segment files
+	 */
+	public boolean replay(String id, long from, long to, SampleSink sink) throws IOException {
+		List<Path> segments = list(id);
+		for (int i = 0; i < segments.size(); i++) {
+			// every sample of this segment is earlier than the first sample of the next segment
+			if (i + 1 < segments.size() && SegmentReader.first(segments.get(i + 1)) <= from) {
+				continue;
+			}
+
+			Path segment = segments.get(i);
+			History history = histories.get(id);
+			try {
+				if (history != null) {
+					synchronized (history) {
+						SegmentReader.replay(segment, from, to, sink);
+					}
+				} else {
+					SegmentReader.replay(segment, from, to, sink);
+				}
+			} catch (NoSuchFileException e) {
+				// deleted by the retention meanwhile
+			}
+		}
+		return !segments.isEmpty();
+	}
+
+	/**
+	 * Delete segment files no longer written, which are older than the retention,
+	 * and then the oldest ones while their total size exceeds the limit.
+	 * @throws IOException fail to list segment files
+	 */
+	private void sweep() throws IOException {
+		if (!Files.isDirectory(directory) || retention <= 0 && maxSize <= 0) {
+			return;
+		}
+		List<Path> segments = new ArrayList<>();
+		Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Segment::isSegment)) {
+			for (Path path : stream) {
+				try {
+					attributes.put(path, Files.readAttributes(path, BasicFileAttributes.class));
+					segments.add(path);
+				} catch (NoSuchFileException e) {
+					// deleted meanwhile
+				}
+			}
+		}
+		// listed before collecting the files being written, so that a segment rolled meanwhile is never deleted
+		Set<Path> writing = new HashSet<>();
+		histories.values().forEach(history -> history.getFile().ifPresent(writing::add));
+		segments.removeIf(writing::contains);
+		segments.sort(Comparator.comparing(path -> attributes.get(path).lastModifiedTime()));
+
+		long now = System.currentTimeMillis();
+		long total = segments.stream().mapToLong(path -> attributes.get(path).size()).sum();
+		for (Path segment : segments) {
+			BasicFileAttributes attribute = attributes.get(segment);
+			if (retention > 0 && now - attribute.lastModifiedTime().toMillis() > retention
+					|| maxSize > 0 && total > maxSize) {
+				try {
+					Files.deleteIfExists(segment);
+					total -= attribute.size();
+					logger.fine(() -> "Deleted ".concat(segment.toString()));
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e,
+							() -> "Cannot delete " + segment + ": " + e.getLocalizedMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delete segment files on a managed thread, and schedule the next deletion.
+	 * @param time the time in milliseconds of the current deadline
+	 */
+	private void sweep(long time) {
+		try {
+			executor.execute(() -> {
+				try {
+					sweep();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e, () -> "Cannot delete segments: ".concat(e.toString()));
+				}
+			});
+			deadline = scheduler.at(time + SWEEP_INTERVAL, () -> sweep(time + SWEEP_INTERVAL));
+		} catch (RejectedExecutionException e) {
+			// the application is stopping
+		}
+	}
+
+	/**
+	 * List segment files of a statistics in order of sequence.
+	 * @param id ID of statistics
+	 * @return paths of segment files
+	 * @throws IOException fail to list segment files
+	 */
+	private List<Path> list(String id) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return segments;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				if (Segment.sequenceOf(id, path) >= 0) {
+					segments.add(path);
+				}
+			}
+		}
+		segments.sort((left, right) -> Integer.compare(
+				Segment.sequenceOf(id, left), Segment.sequenceOf(id, right)));
+		return segments;
+	}
+
+	@PostConstruct
+	private void initialize() {
+		String output = System.getProperty("server.output.dir", System.getProperty("java.io.tmpdir"));
+		directory = Paths.get(Settings.getEnvValue(ENV_STORE_DIR,
+				output + File.separator + "history"));
+		storeAll = Settings.getBoolean(ENV_STORE_ALL, storeAll);
+		segmentSize = (int) Math.min(Settings.getLong(ENV_SEGMENT_SIZE, 8) * 1024 * 1024,
+				Integer.MAX_VALUE);
+		segmentSpan = TimeUnit.HOURS.toMillis(Settings.getLong(ENV_SEGMENT_HOURS, 24));
+		retention = TimeUnit.HOURS.toMillis(Settings.getLong(ENV_STORE_RETENTION, 168));
+		maxSize = Settings.getLong(ENV_STORE_MAX_SIZE, 1024) * 1024 * 1024;
+		long first = System.currentTimeMillis();
+		deadline = scheduler.at(first, () -> sweep(first));
+	}
+
+	@PreDestroy
+	private void destroy() {
+		if (deadline != null) {
+			deadline.cancel(false);
+		}
+		histories.values().forEach(History::close);
+		histories.clear();
+	}
+
+	/**
+	 * Samples of a statistics being written into segment files.
+	 */
+	private class History implements SampleSink {
+
+		private final String id;
+
+		private SegmentWriter current;
+
+		private int sequence = -1;
+
+		private boolean failed;
+
+		History(String id) {
+			this.id = id;
+		}
+
+		synchronized Optional<Path> getFile() {
+			return Optional.ofNullable(current).map(SegmentWriter::getFile);
+		}
+
+		@Override
+		public synchronized void accept(long timestamp, Layout layout, Row row) {
+			if (failed) {
+				return;
+			}
+
+			try {
+				if (current == null || current.getLayout() != layout
+						|| timestamp - current.getFirst() >= segmentSpan
+						|| !current.append(timestamp, row)) {
+					roll(timestamp, layout);
+					if (!current.append(timestamp, row)) {
+						logger.warning(() -> id + ": sample is too large for a segment.");
+					}
+				}
+			} catch (IOException e) {
+				failed = true;
+				logger.log(Level.SEVERE, e,
+						() -> id + ": cannot store samples: " + e.getLocalizedMessage());
+			}
+		}
+
+		synchronized void close() {
+			if (current != null) {
+				try {
+					current.close();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, e,
+							() -> id + ": cannot close segment: " + e.getLocalizedMessage());
+				}
+				current = null;
+			}
+		}
+
+		private void roll(long timestamp, Layout layout) throws IOException {
+			close();
+			if (sequence < 0) {
+				Files.createDirectories(directory);
+				sequence = list(id).stream()
+						.mapToInt(path -> Segment.sequenceOf(id, path))
+						.max().orElse(0);
+			}
+			sequence++;
+			current = SegmentWriter.create(directory.resolve(Segment.fileName(id, sequence)),
+					id, layout, timestamp, segmentSize);
+		}
+
+	}
+
+}
@@ -0,0 +1,400 @@
+package collector.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import collector.rest.metrics.Exposition;
+import collector.rest.series.SampleSink;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Latest samples of all started statistics, served to scrapers in OpenMetrics text format.
+ * <p>Each numeric attribute of an MBean is a series of the metric family named after the {@code type}
+ * key of the object name and the attribute, such as {@code pmi_thread_pool_stats_active_threads},
+ * and the other keys of the object name and the location are its labels.
+ * Integral attributes whose names match the pattern of counters are exposed as counters,
+ * and the other numeric attributes as gauges; attributes of other types are not exposed.</p>
+ * <p>The name and labels of every series are encoded once when the layout of the statistics changes,
+ * and values are encoded once per sample on the polling thread, so that a scrape only copies bytes
+ * into the output. The latest samples are read without locking the polling.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_METRICS_COUNTERS}</dt>
+ * <dd>regular expression of names of integral attributes exposed as counters
+ * (default: {@code .*Count})</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class LatestSamples {
+
+	/**
+	 * Name of environment variable specifying the pattern of names of counters.
+	 * @see LatestSamples
+	 */
+	public static final String ENV_METRICS_COUNTERS = "COLLECTOR_METRICS_COUNTERS";
+
+	/** Prefix of names of metric families. */
+	private static final String PREFIX = "pmi_";
+
+	private static final byte[] EOF = "# EOF\n".getBytes(UTF_8);
+
+	/** Size of output written to the {@code OutputStream} at once. */
+	private static final int CHUNK = 32768;
+
+	/** Map associating the ID of statistics with its latest sample. */
+	private final Map<String, Latest> latest = new ConcurrentHashMap<>();
+
+	/** Metric families in the order of their names, guarded by itself. */
+	private final Map<String, Family> families = new TreeMap<>();
+
+	private Pattern counters = Pattern.compile(".*Count");
+
+	/**
+	 * Start keeping the latest sample of a statistics, replacing the previous one if any.
+	 * @param work request for a statistics
+	 * @return sink receiving the samples of the statistics
+	 */
+	public SampleSink open(StatisticsRequest work) {
+		Latest created = new Latest(work.getLocation(), work.getQuery());
+		Latest previous = latest.put(work.getId(), created);
+		if (previous != null) {
+			unregister(previous);
+		}
+		return created;
+	}
+
+	/**
+	 * Stop exposing the latest sample of a statistics.
+	 * @param id ID of statistics
+	 */
+	public void remove(String id) {
+		Latest removed = latest.remove(id);
+		if (removed != null) {
+			unregister(removed);
+		}
+	}
+
+	/**
+	 * Write the latest samples of all statistics in OpenMetrics text format.
+	 * @param out destination of the output
+	 * @throws IOException fail to write the output
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		byte[] buffer = new byte[CHUNK];
+		int length = 0;
+		synchronized (families) {
+			for (Family family : families.values()) {
+				length = put(out, buffer, length, family.header, 0, family.header.length);
+				for (Series series : family.series.values()) {
+					Sample sample = series.owner.sample;
+					if (sample == null || sample.layout != series.layout) {
+						continue;
+					}
+					int from = sample.offsets[series.column];
+					int size = sample.offsets[series.column + 1] - from;
+					if (size > 0) {
+						length = put(out, buffer, length, series.head, 0, series.head.length);
+						length = put(out, buffer, length, sample.text, from, size);
+					}
+				}
+			}
+		}
+		length = put(out, buffer, length, EOF, 0, EOF.length);
+		out.write(buffer, 0, length);
+	}
+
+	/**
+	 * Copy bytes into the buffer, writing the buffer when it is full.
+	 * @return length of the buffer after copying
+	 */
+	private static int put(OutputStream out, byte[] buffer, int length, byte[] bytes, int offset, int size)
+			throws IOException {
+		if (length + size > buffer.length) {
+			out.write(buffer, 0, length);
+			length = 0;
+			if (size > buffer.length) {
+				out.write(bytes, offset, size);
+				return 0;
+			}
+		}
+		System.arraycopy(bytes, offset, buffer, length, size);
+		return length + size;
+	}
+
+	/**
+	 * Register the series of a statistics whose layout has changed.
+	 * @param owner latest sample of the statistics
+	 * @param sample sample with the new layout
+	 */
+	private void register(Latest owner, Sample sample) {
+		List<Series> added = new ArrayList<>();
+		for (int i = 0; i < sample.layout.size(); i++) {
+			String type = typeOf(sample.layout, i);
+			if (type == null) {
+				continue;
+			}
+			String name = PREFIX + owner.prefix + Exposition.snakeCase(sample.layout.getName(i));
+			StringBuilder head = new StringBuilder(name.length() + owner.labels.length() + 16).append(name);
+			if (type.equals("counter")) {
+				head.append("_total");
+			}
+			if (!owner.labels.isEmpty()) {
+				head.append('{').append(owner.labels).append('}');
+			}
+			added.add(new Series(name, type, head.toString(), owner, i, sample.layout));
+		}
+
+		synchronized (families) {
+			if (owner.closed) {
+				return;
+			}
+			unregister(owner.series);
+			List<Series> registered = new ArrayList<>(added.size());
+			for (Series series : added) {
+				Family family = families.computeIfAbsent(series.family, name -> new Family(name, series.type));
+				// the same MBean reserved twice is exposed once
+				if (family.type.equals(series.type) && family.series.putIfAbsent(series.key, series) == null) {
+					registered.add(series);
+				}
+			}
+			owner.series = registered;
+		}
+	}
+
+	private void unregister(Latest owner) {
+		synchronized (families) {
+			unregister(owner.series);
+			owner.series = Collections.emptyList();
+			owner.closed = true;
+		}
+	}
+
+	private void unregister(List<Series> registered) {
+		for (Series series : registered) {
+			Family family = families.get(series.family);
+			if (family != null && family.series.remove(series.key, series) && family.series.isEmpty()) {
+				families.remove(series.family);
+			}
+		}
+	}
+
+	/**
+	 * Determine the type of metric for an attribute.
+	 * @param layout layout of attributes
+	 * @param column index of the attribute
+	 * @return {@code counter}, {@code gauge} or {@code null} if it is not exposed
+	 */
+	private String typeOf(Layout layout, int column) {
+		switch (layout.getKind(column)) {
+		case Layout.INTEGER:
+			return counters.matcher(layout.getName(column)).matches() ? "counter" : "gauge";
+		case Layout.DECIMAL:
+			return "gauge";
+		default:
+			return null;
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		counters = Pattern.compile(Settings.getEnvValue(ENV_METRICS_COUNTERS, counters.pattern()));
+	}
+
+	/**
+	 * Latest sample of a statistics, which registers its series when the layout changes.
+	 */
+	private class Latest implements SampleSink {
+
+		/** Part of names of metric families derived from the object name. */
+		final String prefix;
+
+		/** Labels shared by all series of the statistics. */
+		final String labels;
+
+		/** Latest sample, replaced as a whole so that a scrape reads it without locking. */
+		volatile Sample sample;
+
+		/** Series registered to metric families, guarded by {@code families}. */
+		List<Series> series = Collections.emptyList();
+
+		/** Flag indicating the statistics is no longer exposed, guarded by {@code families}. */
+		boolean closed;
+
+		/** Buffer for encoding values, used by the polling thread only. */
+		private final StringBuilder values = new StringBuilder(256);
+
+		Latest(String location, String query) {
+			List<String> pairs = new ArrayList<>();
+			pairs.add("location");
+			pairs.add(location);
+			String type = "";
+			ObjectName name = objectNameOf(query);
+			if (name == null) {
+				pairs.add("query");
+				pairs.add(query);
+			} else {
+				type = String.valueOf(name.getKeyProperty("type"));
+				for (Map.Entry<String, String> key : new TreeMap<>(name.getKeyPropertyList()).entrySet()) {
+					String label = Exposition.snakeCase(key.getKey());
+					if (!key.getKey().equals("type")) {
+						pairs.add(label.equals("location") ? "mbean_location" : label);
+						pairs.add(key.getValue().startsWith("\"")
+								? ObjectName.unquote(key.getValue()) : key.getValue());
+					}
+				}
+			}
+			this.prefix = type.isEmpty() || type.equals("null") ? "" : Exposition.snakeCase(type) + '_';
+			this.labels = Exposition.labels(pairs.toArray(new String[pairs.size()]));
+		}
+
+		@Override
+		public void accept(long timestamp, Layout layout, Row row) {
+			// values followed by the timestamp, such as " 100 1700000000.123\n", in the order of columns
+			int[] offsets = new int[row.size() + 1];
+			values.setLength(0);
+			for (int i = 0; i < row.size(); i++) {
+				offsets[i] = values.length();
+				if (row.getKind(i) == Layout.INTEGER || row.getKind(i) == Layout.DECIMAL) {
+					values.append(' ');
+					if (row.getKind(i) == Layout.INTEGER) {
+						values.append(row.getInteger(i));
+					} else {
+						Exposition.appendValue(values, row.getDecimal(i));
+					}
+					values.append(' ');
+					Exposition.appendTimestamp(values, timestamp);
+					values.append('\n');
+				}
+			}
+			offsets[row.size()] = values.length();
+			byte[] text = new byte[values.length()];
+			for (int i = 0; i < text.length; i++) {
+				// values and timestamps consist of ASCII characters
+				text[i] = (byte) values.charAt(i);
+			}
+
+			Sample current = sample;
+			Sample next = new Sample(layout, text, offsets);
+			if (current == null || current.layout != layout) {
+				register(this, next);
+			}
+			sample = next;
+		}
+
+	}
+
+	/**
+	 * Encoded values of a sample with its layout.
+	 */
+	private static class Sample {
+
+		final Layout layout;
+
+		/** Values and timestamps encoded in ASCII. */
+		final byte[] text;
+
+		/** Offsets of the values in {@code text} by column, followed by its length. */
+		final int[] offsets;
+
+		Sample(Layout layout, byte[] text, int[] offsets) {
+			this.layout = layout;
+			this.text = text;
+			this.offsets = offsets;
+		}
+
+	}
+
+	/**
+	 * Metric family with its series in the order of registration.
+	 */
+	private static class Family {
+
+		final String name;
+
+		final String type;
+
+		/** Comment declaring the type of the family, encoded in UTF-8. */
+		final byte[] header;
+
+		final Map<String, Series> series = new LinkedHashMap<>();
+
+		Family(String name, String type) {
+			this.name = name;
+			this.type = type;
+			this.header = ("# TYPE " + name + ' ' + type + '\n').getBytes(UTF_8);
+		}
+
+	}
+
+	/**
+	 * Series of an attribute of a statistics.
+	 */
+	private static class Series {
+
+		final String family;
+
+		final String type;
+
+		/** Name and labels of the sample identifying the series. */
+		final String key;
+
+		/** {@code key} encoded in UTF-8. */
+		final byte[] head;
+
+		final Latest owner;
+
+		final int column;
+
+		final Layout layout;
+
+		Series(String family, String type, String key, Latest owner, int column, Layout layout) {
+			this.family = family;
+			this.type = type;
+			this.key = key;
+			this.head = key.getBytes(UTF_8);
+			this.owner = owner;
+			this.column = column;
+			this.layout = layout;
+		}
+
+	}
+
+	/**
+	 * Parse the object name of an MBean from the query of its attributes.
+	 * @param query query such as {@code WebSphere:type=ThreadPoolStats,name=Default Executor/attributes}
+	 * @return object name, {@code null} if the query does not represent attributes of an MBean
+	 */
+	static ObjectName objectNameOf(String query) {
+		if (query == null || !query.endsWith("/attributes")) {
+			return null;
+		}
+		String name = query.substring(query.startsWith("/") ? 1 : 0, query.length() - "/attributes".length());
+		try {
+			if (name.indexOf('%') >= 0) {
+				name = URLDecoder.decode(name, UTF_8.name());
+			}
+			return new ObjectName(name);
+		} catch (MalformedObjectNameException | UnsupportedEncodingException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package collector.rest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import collector.rest.metrics.Exposition;
+
+/**
+ * Servlet exposing metrics to be scraped.
+ * <p>{@code GET metrics} returns the latest samples of all started statistics in OpenMetrics text format,
+ * and {@code GET metrics/collector} returns the self-instrumentation of the collector
+ * in Prometheus text format.</p>
+ * @see LatestSamples
+ * @see CollectorMetrics
+ */
+@WebServlet(name = "MetricsController", urlPatterns = "/metrics/*")
+public class MetricsController extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final List<String> EMPTY_PATHS = Arrays.asList(null, "", "/");
+
+	@Inject
+	private LatestSamples latest;
+
+	@Inject
+	private CollectorMetrics metrics;
+
+	@Override
+	public void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws IOException, ServletException {
+		if (EMPTY_PATHS.contains(request.getPathInfo())) {
+			response.setContentType(Exposition.OPENMETRICS_CONTENT_TYPE);
+			latest.writeTo(response.getOutputStream());
+		} else if ("/collector".equals(request.getPathInfo())) {
+			StringBuilder out = new StringBuilder(16384);
+			metrics.appendTo(out);
+			response.setContentType(Exposition.CONTENT_TYPE);
+			response.getWriter().append(out);
+		} else {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+}
@@ -0,0 +1,576 @@
+package collector.rest;
+
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+
+/**
+ * Engine invoking REST API of RESTConnector without blocking the caller.
+ * <p>Polls are issued through the asynchronous invoker of JAX-RS client,
+ * and the number of requests in flight is limited per location;
+ * the requests exceeding the limit are queued in arrival order.
+ * Threads of the engine are used only while the responses are processed.</p>
+ * <p>Each location has its own {@link Transport} whose connections are kept alive between polls,
+ * and TLS sessions are resumed, so that polling over HTTPS does not pay a full handshake per poll.</p>
+ * <p>Failures of a location are isolated by its {@link CircuitBreaker}: after consecutive failures,
+ * polls fail fast until a probe succeeds. A request failing to reach the location is retried
+ * with bounded exponential backoff, and a slow request can be hedged by a second one.
+ * Server errors count as failures of the location, but are not retried.</p>
+ * <p>On JDK 21 or later, {@value #ENV_VIRTUAL_THREADS} lets each request be a blocking call
+ * on its own virtual thread instead of the asynchronous invoker, so that requests waiting for
+ * slow locations hold no platform threads. Cancelling a poll interrupts its virtual thread.
+ * On earlier versions the asynchronous invoker is used whatever it specifies.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_CONNECT_TIMEOUT}</dt>
+ * <dd>timeout in seconds for establishing a connection (default: 10)</dd>
+ * <dt>{@value #ENV_READ_TIMEOUT}</dt>
+ * <dd>timeout in seconds for reading a response (default: 30)</dd>
+ * <dt>{@value #ENV_MAX_IN_FLIGHT}</dt>
+ * <dd>maximum number of requests in flight per location, which should not exceed
+ * {@code http.maxConnections} of the JVM, the number of connections kept alive (default: 5)</dd>
+ * <dt>{@value #ENV_TLS_SESSION_TIMEOUT}</dt>
+ * <dd>time in seconds for which a TLS session is cached for resumption (default: 3600)</dd>
+ * <dt>{@value #ENV_BREAKER_THRESHOLD}</dt>
+ * <dd>number of consecutive failures opening the circuit of a location (default: 5)</dd>
+ * <dt>{@value #ENV_BREAKER_BACKOFF}</dt>
+ * <dd>time in seconds for which the circuit stays open first, doubled while probes fail (default: 5)</dd>
+ * <dt>{@value #ENV_BREAKER_BACKOFF_MAX}</dt>
+ * <dd>maximum time in seconds for which the circuit stays open (default: 300)</dd>
+ * <dt>{@value #ENV_RETRIES}</dt>
+ * <dd>number of retries of a request failing to reach the location (default: 1)</dd>
+ * <dt>{@value #ENV_HEDGE}</dt>
+ * <dd>time in milliseconds after which a slow request is hedged, 0 for disabling it (default: 0)</dd>
+ * <dt>{@value #ENV_VIRTUAL_THREADS}</dt>
+ * <dd>{@code true} for issuing requests on virtual threads of JDK 21 or later (default: false)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class PollingEngine {
+
+	/**
+	 * Name of environment variable specifying the timeout for establishing a connection.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_CONNECT_TIMEOUT = "COLLECTOR_CONNECT_TIMEOUT";
+
+	/**
+	 * Name of environment variable specifying the timeout for reading a response.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_READ_TIMEOUT = "COLLECTOR_READ_TIMEOUT";
+
+	/**
+	 * Name of environment variable specifying the maximum number of requests in flight.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_MAX_IN_FLIGHT = "COLLECTOR_MAX_IN_FLIGHT";
+
+	/**
+	 * Name of environment variable specifying the time for which a TLS session is cached.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_TLS_SESSION_TIMEOUT = "COLLECTOR_TLS_SESSION_TIMEOUT";
+
+	/**
+	 * Name of environment variable specifying the number of consecutive failures opening the circuit.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_BREAKER_THRESHOLD = "COLLECTOR_BREAKER_THRESHOLD";
+
+	/**
+	 * Name of environment variable specifying the time for which the circuit stays open first.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_BREAKER_BACKOFF = "COLLECTOR_BREAKER_BACKOFF";
+
+	/**
+	 * Name of environment variable specifying the maximum time for which the circuit stays open.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_BREAKER_BACKOFF_MAX = "COLLECTOR_BREAKER_BACKOFF_MAX";
+
+	/**
+	 * Name of environment variable specifying the number of retries of a failed request.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_RETRIES = "COLLECTOR_RETRIES";
+
+	/**
+	 * Name of environment variable specifying the time after which a slow request is hedged.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_HEDGE = "COLLECTOR_HEDGE";
+
+	/**
+	 * Name of environment variable specifying whether requests are issued on virtual threads.
+	 * @see PollingEngine
+	 */
+	public static final String ENV_VIRTUAL_THREADS = "COLLECTOR_VIRTUAL_THREADS";
+
+	/** Prefix of names of virtual threads issuing requests. */
+	public static final String VIRTUAL_THREAD_PREFIX = "collector-poll-";
+
+	/** Time in milliseconds before the first retry, doubled for each retry. */
+	private static final long RETRY_DELAY = 500;
+
+	/** Property of JAX-RS client of Liberty specifying persistent connections. */
+	private static final String KEEP_ALIVE_PROPERTY = "com.ibm.ws.jaxrs.client.keepalive.connection";
+
+	/** A dummy implementation for skipping server certification check. */
+	private static final TrustManager DUMMY_TRUST_MANAGER = new X509TrustManager() {
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return null;
+		}
+	};
+
+	/** A dummy implementation for skipping host identity check of TLS connection. */
+	private static final HostnameVerifier DUMMY_HOSTNAME_VERIFIER =
+			(host, session) -> host != null;
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	/** Map associating a location with its transport. */
+	private final Map<String, Transport> transports = new ConcurrentHashMap<>();
+
+	@Resource(lookup = "java:comp/DefaultManagedThreadFactory")
+	private ManagedThreadFactory factory;
+
+	@Inject
+	private PollingScheduler scheduler;
+
+	private long connectTimeout = 10;
+
+	private long readTimeout = 30;
+
+	/** Same as the number of idle connections kept alive per location by default of the JDK. */
+	private int maxInFlight = 5;
+
+	private int tlsSessionTimeout = 3600;
+
+	private int threshold = 5;
+
+	private long backoff = TimeUnit.SECONDS.toMillis(5);
+
+	private long maxBackoff = TimeUnit.SECONDS.toMillis(300);
+
+	private int retries = 1;
+
+	private long hedge;
+
+	/** Executor processing the responses, or issuing the requests on virtual threads. */
+	private ExecutorService executor;
+
+	/** Flag indicating requests are blocking calls on virtual threads. */
+	private boolean virtual;
+
+	/** {@code SSLContext} shared by all transports, {@code null} if default one is used. */
+	private SSLContext sslContext;
+
+	/**
+	 * Create a {@code Builder} instance for REST API invocation.
+	 * @param work request for a statistics to be invoked
+	 * @return {@code Builder} represents REST API invocation
+	 */
+	public Builder request(StatisticsRequest work) {
+		return request(work, Collections.emptyList());
+	}
+
+	/**
+	 * Create a {@code Builder} instance for REST API invocation projecting attributes.
+	 * @param work request for a statistics to be invoked
+	 * @param attributes names of attributes requested by {@code attribute} parameters,
+	 * all attributes are requested if it is empty
+	 * @return {@code Builder} represents REST API invocation
+	 */
+	public Builder request(StatisticsRequest work, List<String> attributes) {
+		return transportOf(work).request(work, attributes);
+	}
+
+	/**
+	 * Determine whether requests are blocking calls on virtual threads.
+	 * @return {@code true} if {@value #ENV_VIRTUAL_THREADS} is specified and virtual threads are available
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Get the transports to all locations accessed so far.
+	 * @return transports in no particular order
+	 */
+	public Collection<Transport> getTransports() {
+		return Collections.unmodifiableCollection(transports.values());
+	}
+
+	private Transport transportOf(StatisticsRequest work) {
+		return transports.computeIfAbsent(work.getLocation(), location -> new Transport(
+				location, createClient(), sslContext, maxInFlight,
+				new CircuitBreaker(threshold, backoff, maxBackoff)));
+	}
+
+	/**
+	 * Issue a GET request asynchronously, waiting in the queue of the location if necessary.
+	 * <p>{@code consumer} is called on a thread of the engine and the response is closed after that.
+	 * Cancelling the result abandons the request waiting in the queue or in flight.</p>
+	 * <p>The request fails fast with {@link CircuitBreaker.OpenException} while the circuit of the location
+	 * is open. A request failing to reach the location is retried with exponential backoff,
+	 * and a slow request is hedged by a second one if a connection is available,
+	 * in which case {@code consumer} is called only for the first response.</p>
+	 * @param work request for a statistics to be polled
+	 * @param endpoint supplier of {@code Builder} created by {@link #request(StatisticsRequest, List)},
+	 * called for each request
+	 * @param consumer action processing the response
+	 * @return {@code CompletableFuture} completed after {@code consumer} has returned
+	 */
+	public CompletableFuture<Void> poll(
+			StatisticsRequest work, Supplier<Builder> endpoint, Consumer<Response> consumer) {
+		Call call = new Call(transportOf(work), endpoint, consumer);
+		call.attempt(0);
+		call.result.whenComplete((nothing, e) -> {
+			if (e != null && !call.result.isCancelled()) {
+				logger.log(Level.FINE, e, () -> "Cannot process: ".concat(e.toString()));
+			}
+		});
+		return call.result;
+	}
+
+	/**
+	 * Issue a GET request and wait for its response, waiting in the queue of the location like polls.
+	 * <p>The request fails fast with {@link CircuitBreaker.OpenException} while the circuit of the location
+	 * is open, and its result is recorded on the circuit breaker. It is neither retried nor hedged.</p>
+	 * @param <T> type of the result
+	 * @param work request holding the location
+	 * @param endpoint supplier of {@code Builder} of the request, called once a slot is available
+	 * @param reader function processing the response, which is closed after that
+	 * @return the result of {@code reader}
+	 * @throws ProcessingException fail to reach the location, or the waiting thread is interrupted
+	 */
+	public <T> T fetch(StatisticsRequest work, Supplier<Builder> endpoint, Function<Response, T> reader) {
+		Transport transport = transportOf(work);
+		if (!transport.getBreaker().allow()) {
+			throw new CircuitBreaker.OpenException(transport.getLocation());
+		}
+		// the slot given to the request abandoned meanwhile is released at once
+		CompletableFuture<Void> slot = new CompletableFuture<>();
+		transport.submit(() -> {
+			if (!slot.complete(null)) {
+				transport.release();
+			}
+		}, slot::isCancelled);
+		try {
+			slot.get();
+		} catch (InterruptedException e) {
+			if (!slot.cancel(false)) {
+				transport.release();
+			}
+			Thread.currentThread().interrupt();
+			throw new ProcessingException(e);
+		} catch (ExecutionException e) {
+			// the slot is never completed exceptionally
+			throw new IllegalStateException(e);
+		}
+
+		try {
+			long start = System.nanoTime();
+			Response obtained;
+			try {
+				obtained = endpoint.get().get();
+			} catch (ProcessingException e) {
+				transport.getLatency().since(start);
+				record(transport, false);
+				throw e;
+			}
+			try (Response response = obtained) {
+				transport.getLatency().since(start);
+				record(transport, response.getStatus() < 500);
+				return reader.apply(response);
+			}
+		} finally {
+			transport.release();
+		}
+	}
+
+	/**
+	 * Poll issuing one or more requests, the first response of which is processed.
+	 */
+	private class Call {
+
+		final Transport transport;
+
+		final Supplier<Builder> endpoint;
+
+		final Consumer<Response> consumer;
+
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		/** Flag indicating a response has been processed or the poll has failed. */
+		final AtomicBoolean claimed = new AtomicBoolean();
+
+		/** Number of requests in flight. */
+		final AtomicInteger pending = new AtomicInteger();
+
+		/** Timer of the hedge for the request issued last, {@code null} if none. */
+		volatile ScheduledFuture<?> hedging;
+
+		Call(Transport transport, Supplier<Builder> endpoint, Consumer<Response> consumer) {
+			this.transport = transport;
+			this.endpoint = endpoint;
+			this.consumer = consumer;
+		}
+
+		/**
+		 * Issue a request unless the circuit is open.
+		 * @param retried number of retries so far
+		 */
+		void attempt(int retried) {
+			if (result.isDone()) {
+				return;
+			}
+			if (!transport.getBreaker().allow()) {
+				fail(new CircuitBreaker.OpenException(transport.getLocation()));
+				return;
+			}
+			pending.incrementAndGet();
+			transport.submit(() -> {
+				// the timer is kept before the request so that a fast response cancels it
+				if (hedge > 0) {
+					hedging = scheduler.at(System.currentTimeMillis() + hedge, this::hedge);
+				}
+				invoke(retried);
+			}, result::isDone);
+		}
+
+		/**
+		 * Issue a second request if no response has been processed, the circuit allows it,
+		 * and a connection is available.
+		 */
+		private void hedge() {
+			if (!claimed.get() && !result.isDone() && transport.getBreaker().allow() && transport.tryAcquire()) {
+				pending.incrementAndGet();
+				invoke(retries);
+			}
+		}
+
+		private void invoke(int retried) {
+			AtomicBoolean released = new AtomicBoolean();
+			Runnable release = () -> {
+				if (released.compareAndSet(false, true)) {
+					pending.decrementAndGet();
+					transport.release();
+				}
+			};
+
+			if (result.isDone()) {
+				release.run();
+				return;
+			}
+
+			long start = System.nanoTime();
+			InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+				@Override
+				public void completed(Response obtained) {
+					transport.getLatency().since(start);
+					release.run();
+					cancelHedge();
+					record(transport, obtained.getStatus() < 500);
+					try {
+						if (claimed.compareAndSet(false, true) && !result.isDone()) {
+							consumer.accept(obtained);
+							result.complete(null);
+						}
+					} catch (RuntimeException e) {
+						result.completeExceptionally(e);
+					} finally {
+						obtained.close();
+					}
+				}
+
+				@Override
+				public void failed(Throwable throwable) {
+					transport.getLatency().since(start);
+					release.run();
+					cancelHedge();
+					record(transport, false);
+					if (claimed.get() || result.isDone()) {
+						return;
+					} else if (retried < retries && !transport.getBreaker().getState().equals(
+							CircuitBreaker.State.OPEN)) {
+						long delay = Math.min(RETRY_DELAY << retried, maxBackoff);
+						transport.retrying();
+						scheduler.at(System.currentTimeMillis() + delay, () -> attempt(retried + 1));
+					} else if (pending.get() == 0) {
+						fail(throwable);
+					}
+				}
+			};
+			try {
+				Future<?> call = virtual ? executor.submit(() -> {
+					Response obtained;
+					try {
+						obtained = endpoint.get().get();
+					} catch (RuntimeException e) {
+						callback.failed(e);
+						return;
+					}
+					callback.completed(obtained);
+				}) : endpoint.get().async().get(callback);
+				result.whenComplete((nothing, e) -> {
+					if (result.isCancelled()) {
+						call.cancel(true);
+						release.run();
+					}
+				});
+			} catch (RuntimeException e) {
+				release.run();
+				fail(e);
+			}
+		}
+
+		/**
+		 * Cancel the timer of the hedge, which is not needed once a response has arrived.
+		 */
+		private void cancelHedge() {
+			ScheduledFuture<?> timer = hedging;
+			if (timer != null) {
+				timer.cancel(false);
+			}
+		}
+
+		private void fail(Throwable throwable) {
+			if (claimed.compareAndSet(false, true)) {
+				result.completeExceptionally(throwable);
+			}
+		}
+
+	}
+
+	/**
+	 * Record the result of a request on the circuit breaker, logging only the changes of the circuit.
+	 * @param transport transport to the location
+	 * @param success {@code true} if the location has responded without a server error
+	 */
+	private void record(Transport transport, boolean success) {
+		CircuitBreaker breaker = transport.getBreaker();
+		if (success && breaker.succeeded()) {
+			logger.info(() -> transport.getLocation() + " has recovered, the circuit is closed.");
+		} else if (!success && breaker.failed()) {
+			logger.warning(() -> transport.getLocation() + " is failing, the circuit is open for "
+					+ (breaker.getOpenUntil() - System.currentTimeMillis()) / 1000 + " sec.");
+		}
+	}
+
+	/**
+	 * Create JAX-RS client keeping connections alive with the shared {@code SSLContext}.
+	 * @return JAX-RS client
+	 */
+	private Client createClient() {
+		ClientBuilder builder = ClientBuilder.newBuilder()
+				.connectTimeout(connectTimeout, TimeUnit.SECONDS)
+				.readTimeout(readTimeout, TimeUnit.SECONDS)
+				.executorService(executor)
+				.property(KEEP_ALIVE_PROPERTY, "keep-alive");
+		if (sslContext == null) {
+			return builder.build();
+		}
+		return builder
+				.sslContext(sslContext)
+				.hostnameVerifier(DUMMY_HOSTNAME_VERIFIER)
+				.build();
+	}
+
+	/**
+	 * Create {@code SSLContext} with dummy {@code TrustManager} caching sessions for resumption.
+	 * @return {@code SSLContext}, {@code null} if default one is used
+	 */
+	private SSLContext createSSLContext() {
+		try {
+			TrustManager[] trustManagers = { DUMMY_TRUST_MANAGER };
+			SSLContext context = SSLContext.getInstance("TLSv1.2");
+			context.init(null, trustManagers, null);
+			context.getClientSessionContext().setSessionTimeout(tlsSessionTimeout);
+			return context;
+		} catch (KeyManagementException | NoSuchAlgorithmException e) {
+			logger.log(Level.WARNING, e,
+					() -> "Using default SSLContext: ".concat(e.toString()));
+			return null;
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		connectTimeout = Settings.getLong(ENV_CONNECT_TIMEOUT, connectTimeout);
+		readTimeout = Settings.getLong(ENV_READ_TIMEOUT, readTimeout);
+		maxInFlight = Settings.getInt(ENV_MAX_IN_FLIGHT, maxInFlight);
+		tlsSessionTimeout = Settings.getInt(ENV_TLS_SESSION_TIMEOUT, tlsSessionTimeout);
+		threshold = Settings.getInt(ENV_BREAKER_THRESHOLD, threshold);
+		backoff = TimeUnit.SECONDS.toMillis(Settings.getLong(ENV_BREAKER_BACKOFF, 5));
+		maxBackoff = TimeUnit.SECONDS.toMillis(Settings.getLong(ENV_BREAKER_BACKOFF_MAX, 300));
+		retries = Math.max(Settings.getInt(ENV_RETRIES, retries), 0);
+		hedge = Math.max(Settings.getLong(ENV_HEDGE, hedge), 0);
+
+		Optional<ExecutorService> virtualThreads = Settings.getBoolean(ENV_VIRTUAL_THREADS, false)
+				? VirtualThreads.newExecutor(VIRTUAL_THREAD_PREFIX) : Optional.empty();
+		if (Settings.getBoolean(ENV_VIRTUAL_THREADS, false) && !virtualThreads.isPresent()) {
+			logger.warning(() -> "Virtual threads are not available on Java "
+					+ System.getProperty("java.version") + ", requests are issued asynchronously.");
+		}
+		virtual = virtualThreads.isPresent();
+		executor = virtualThreads.orElseGet(() -> Executors.newCachedThreadPool(factory));
+		sslContext = createSSLContext();
+	}
+
+	@PreDestroy
+	private void destroy() {
+		transports.values().forEach(Transport::close);
+		transports.clear();
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,95 @@
+package collector.rest;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A set of {@link PollingTask}(s) sharing a location, credentials and period.
+ * <p>The group holds a single deadline on the timer; at each tick all members due are polled
+ * concurrently and their samples share the time of the tick as timestamp.
+ * The polls are spread within the tick by the offsets given by {@link PollingScheduler},
+ * so that members of the group do not hit the target in lockstep.</p>
+ */
+class PollingGroup {
+
+	private final PollingScheduler scheduler;
+
+	private final String key;
+
+	private final long period;
+
+	private final Set<PollingTask> members = ConcurrentHashMap.newKeySet();
+
+	/** The time of the next tick, accessed only on the timer thread after started. */
+	private long next;
+
+	private volatile ScheduledFuture<?> pending;
+
+	/**
+	 * Constructor.
+	 * @param scheduler scheduler holding the deadline of this group
+	 * @param key key of this group
+	 * @param period interval between ticks in milliseconds
+	 * @param first the time of the first tick in milliseconds
+	 * @throws IllegalArgumentException {@code period} is not positive
+	 */
+	PollingGroup(PollingScheduler scheduler, String key, long period, long first) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("period should be positive: " + period);
+		}
+		this.scheduler = scheduler;
+		this.key = key;
+		this.period = period;
+		this.next = first;
+	}
+
+	void add(PollingTask task) {
+		members.add(task);
+	}
+
+	void remove(PollingTask task) {
+		members.remove(task);
+	}
+
+	boolean isEmpty() {
+		return members.isEmpty();
+	}
+
+	void start() {
+		pending = scheduler.at(next, this::tick);
+	}
+
+	void stop() {
+		ScheduledFuture<?> current = pending;
+		if (current != null) {
+			current.cancel(false);
+		}
+	}
+
+	private void tick() {
+		long timestamp = next;
+		for (PollingTask member : members) {
+			long offset = scheduler.offsetOf(member);
+			if (offset > 0) {
+				scheduler.at(timestamp + offset, () -> offer(member, timestamp));
+			} else {
+				offer(member, timestamp);
+			}
+		}
+
+		next += period;
+		if (!members.isEmpty()) {
+			pending = scheduler.at(next, this::tick);
+		}
+	}
+
+	private void offer(PollingTask member, long timestamp) {
+		try {
+			member.offer(timestamp);
+		} catch (RuntimeException e) {
+			scheduler.report(key, e);
+		}
+	}
+
+}
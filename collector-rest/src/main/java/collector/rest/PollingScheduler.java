@@ -0,0 +1,156 @@
+package collector.rest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+
+import collector.rest.metrics.Histogram;
+
+/**
+ * Collector-wide scheduler holding the deadlines of all started statistics.
+ * <p>Only a single timer thread waits for the deadlines.
+ * Each action fired by the timer is expected to hand the actual poll over to another thread,
+ * so that a poll thread exists only while the poll is in flight.</p>
+ * <p>{@link PollingTask}(s) with the same group key are coalesced into a {@link PollingGroup}
+ * and polled at the same ticks. Each poll is offset from its tick by a deterministic jitter
+ * derived from the ID of the statistics, spreading the polls of a tick over a part of the period.</p>
+ * <p>The lag of the timer firing actions after their deadlines is observed by a histogram.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_JITTER}</dt>
+ * <dd>percentage of the period over which the polls of a tick are spread, 0 for disabling it
+ * (default: 10)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class PollingScheduler {
+
+	/**
+	 * Name of environment variable specifying the percentage of the period for spreading polls.
+	 * @see PollingScheduler
+	 */
+	public static final String ENV_JITTER = "COLLECTOR_JITTER";
+
+	@Resource(lookup = "java:comp/DefaultManagedThreadFactory")
+	private ManagedThreadFactory factory;
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	/** Map associating the group key with the group of polls. */
+	private final Map<String, PollingGroup> groups = new ConcurrentHashMap<>();
+
+	/** Timer holding the deadlines. */
+	private ScheduledThreadPoolExecutor timer;
+
+	private int jitter = 10;
+
+	/** Histogram of the delay of actions after their deadlines. */
+	private final Histogram lag = new Histogram();
+
+	/**
+	 * Add a series of polls to the group for its group key, starting the group if necessary.
+	 * @param task series of polls to be added
+	 */
+	public void join(PollingTask task) {
+		groups.compute(task.getGroup(), (key, group) -> {
+			if (group == null) {
+				group = new PollingGroup(this, key, task.getPeriod(), task.getFirst());
+				group.start();
+			}
+			group.add(task);
+			return group;
+		});
+	}
+
+	/**
+	 * Remove a series of polls from its group, stopping the group if it becomes empty.
+	 * @param task series of polls to be removed
+	 */
+	public void leave(PollingTask task) {
+		groups.computeIfPresent(task.getGroup(), (key, group) -> {
+			group.remove(task);
+			if (group.isEmpty()) {
+				group.stop();
+				return null;
+			}
+			return group;
+		});
+	}
+
+	/**
+	 * Schedule an action to be fired at the specified time.
+	 * An action for the past time is fired as soon as possible.
+	 * @param time the time in milliseconds when the action is fired
+	 * @param action action to be fired, which should return immediately
+	 * @return {@code ScheduledFuture} for cancelling the action
+	 */
+	public ScheduledFuture<?> at(long time, Runnable action) {
+		return timer.schedule(() -> {
+			lag.observe(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - time));
+			action.run();
+		}, time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Get the histogram of the delay of actions fired after their deadlines.
+	 * @return histogram of the lag
+	 */
+	public Histogram getLag() {
+		return lag;
+	}
+
+	/**
+	 * Get the number of actions waiting for their deadlines.
+	 * @return number of pending deadlines
+	 */
+	public int getPending() {
+		return timer.getQueue().size();
+	}
+
+	/**
+	 * Get the offset of the polls of a series from the ticks of its group.
+	 * @param task series of polls
+	 * @return offset in milliseconds, the same for the same ID and period
+	 */
+	long offsetOf(PollingTask task) {
+		long spread = task.getPeriod() * jitter / 100;
+		if (spread <= 0) {
+			return 0;
+		}
+		// mix the bits of the hash code, since IDs may differ only in a few characters
+		long hash = task.getId().hashCode() * 0x9e3779b97f4a7c15L;
+		return Math.floorMod(hash ^ (hash >>> 32), spread);
+	}
+
+	/**
+	 * Report a failure on dispatching a poll of a group.
+	 * @param key key of the group
+	 * @param e the cause of the failure
+	 */
+	void report(String key, RuntimeException e) {
+		logger.log(Level.WARNING, e, () -> "Cannot dispatch a poll of " + key + ": " + e);
+	}
+
+	@PostConstruct
+	private void initialize() {
+		jitter = Math.min(Math.max(Settings.getInt(ENV_JITTER, jitter), 0), 100);
+		timer = new ScheduledThreadPoolExecutor(1, factory);
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	@PreDestroy
+	private void destroy() {
+		timer.shutdownNow();
+	}
+
+}
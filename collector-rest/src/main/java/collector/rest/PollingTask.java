@@ -0,0 +1,240 @@
+package collector.rest;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A series of polls for a statistics represented as {@code Future}.
+ * <p>The series joins the {@link PollingGroup} for its group key on {@link #start()}.
+ * Each poll is started at a tick of the group and must not block the timer thread,
+ * so that no thread is occupied while waiting for a response or the next poll.
+ * Ticks are skipped according to the {@link AdaptiveInterval} of the series.</p>
+ */
+public class PollingTask implements Future<Void> {
+
+	/**
+	 * Action performed at each due time.
+	 */
+	@FunctionalInterface
+	public interface Poll {
+
+		/**
+		 * Start a poll without blocking.
+		 * @param timestamp the time of the tick in milliseconds, shared within a group
+		 * @param remains number of polls remaining including this poll
+		 * @return {@code CompletableFuture} completed when the poll has finished,
+		 * which is cancelled if the series is cancelled during the poll
+		 */
+		CompletableFuture<?> poll(long timestamp, int remains);
+
+	}
+
+	private final PollingScheduler scheduler;
+
+	private final String id;
+
+	private final String group;
+
+	private final long period;
+
+	private final Poll poll;
+
+	private final Runnable completion;
+
+	private final long first;
+
+	private final AdaptiveInterval interval;
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	private volatile int remains;
+
+	private volatile boolean cancelled;
+
+	/** Flag indicating a poll has been started and not finished yet, guarded by {@code this}. */
+	private boolean busy;
+
+	/** The tick of the last poll started, 0 before the first poll, guarded by {@code this}. */
+	private long last;
+
+	/** The poll in flight, guarded by {@code this}. */
+	private CompletableFuture<?> inFlight;
+
+	/**
+	 * Constructor.
+	 * @param scheduler scheduler holding the due time of polls
+	 * @param id ID of the statistics, which determines the offset of polls from the ticks
+	 * @param group key of the group of polls sharing their ticks
+	 * @param period interval between ticks in milliseconds
+	 * @param first the time in milliseconds before which no poll is performed
+	 * @param times number of polls
+	 * @param interval interval between polls as a multiple of {@code period}
+	 * @param poll action performed at each due time
+	 * @param completion action performed once when the series has finished or cancelled
+	 * @throws IllegalArgumentException {@code period} is not positive
+	 */
+	public PollingTask(PollingScheduler scheduler, String id, String group, long period,
+			long first, int times, AdaptiveInterval interval, Poll poll, Runnable completion) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("period should be positive: " + period);
+		}
+		this.scheduler = scheduler;
+		this.id = id;
+		this.group = group;
+		this.period = period;
+		this.first = first;
+		this.interval = interval;
+		this.remains = times;
+		this.poll = poll;
+		this.completion = completion;
+	}
+
+	/**
+	 * Start waiting for the first poll.
+	 */
+	public void start() {
+		scheduler.join(this);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Get the number of polls remaining.
+	 * @return number of polls remaining including the poll in flight
+	 */
+	public int getRemains() {
+		return remains;
+	}
+
+	/**
+	 * Start a poll for the tick, called on the timer thread.
+	 * The tick is skipped if it is earlier than the first poll, the previous poll is in flight,
+	 * or it is within the adaptive interval from the previous poll.
+	 * @param timestamp the time of the tick in milliseconds
+	 */
+	void offer(long timestamp) {
+		synchronized (this) {
+			if (cancelled || busy || timestamp < first
+					|| timestamp - last < period * interval.getStride()) {
+				return;
+			}
+			busy = true;
+			last = timestamp;
+		}
+
+		CompletableFuture<?> current;
+		try {
+			current = (remains > 0) ? poll.poll(timestamp, remains)
+					: CompletableFuture.completedFuture(null);
+		} catch (RuntimeException e) {
+			cancelled = true;
+			finish();
+			throw e;
+		}
+
+		synchronized (this) {
+			inFlight = current;
+		}
+		current.whenComplete((nothing, e) -> completed());
+		if (cancelled) {
+			current.cancel(true);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		CompletableFuture<?> current;
+		boolean starting;
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+			cancelled = true;
+			current = inFlight;
+			starting = busy && current == null;
+		}
+
+		// the poll in flight or being started finishes the series on its completion
+		if (current != null) {
+			current.cancel(mayInterruptIfRunning);
+		} else if (!starting) {
+			finish();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public Void get() throws InterruptedException {
+		done.await();
+		return result();
+	}
+
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return result();
+	}
+
+	private Void result() {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		return null;
+	}
+
+	private void completed() {
+		synchronized (this) {
+			inFlight = null;
+			busy = false;
+		}
+
+		if (cancelled || --remains <= 0) {
+			finish();
+		}
+	}
+
+	private void finish() {
+		if (finished.compareAndSet(false, true)) {
+			scheduler.leave(this);
+			try {
+				completion.run();
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package collector.rest;
+
+import java.io.PrintWriter;
+import java.util.Comparator;
+
+import collector.rest.stream.Json;
+
+/**
+ * Rendering of reserved statistics in the list of {@code GET requests/}.
+ * <p>It is separated from {@link RestClientController}, so that it can be used without a servlet container,
+ * such as by the benchmarks of the list.</p>
+ */
+final class RequestList {
+
+	/** A Comparator ordering StatisticsRequest(s) on a first-come, first-served basis. */
+	static final Comparator<StatisticsRequest> FIRST_COME =
+			Comparator.comparingLong(StatisticsRequest::getRequested).thenComparing(StatisticsRequest::getId);
+
+	private RequestList() {
+	}
+
+	/**
+	 * Render a request for statistics.
+	 * @param out {@code PrintWriter} to which the request is rendered
+	 * @param work request for a statistics to be rendered
+	 */
+	static void render(PrintWriter out, StatisticsRequest work) {
+		out.print("<ul id=\"");
+		out.print(work.getId());
+		if (work.getStatus() >= StatisticsRequest.STARTABLE) {
+			out.print("\" class=\"active\">\r\n");
+		} else {
+			out.print("\" class=\"inactive\">\r\n");
+		}
+
+		out.print("<li>");
+		out.print(work.getId());
+		out.print("</li>\r\n");
+
+		out.print("<li><form method=\"GET\" action=\"");
+		out.print(work.getId());
+		out.print("\" target=\"");
+		out.print(work.getId());
+		out.print("\" onsubmit=\"elements.start.disabled = true;\"");
+		if (work.getStatus() == StatisticsRequest.STARTABLE) {
+			out.print(" class=\"active\">");
+		} else {
+			out.print(" class=\"inactive\">");
+		}
+		out.print("initial(sec.)-period(sec.)-times ");
+		out.print("<input name=\"initial\" size=\"4\" value=\"15\">-");
+		out.print("<input name=\"period\" size=\"4\" value=\"30\">-");
+		out.print("<input name=\"times\" size=\"4\" value=\"-1\"> ");
+		out.print("<input type=\"submit\" name=\"start\" value=\"start\"> ");
+		out.print("</form>");
+		if (work.getStatus() == StatisticsRequest.STARTED) {
+			out.print("<a href=\"");
+			out.print(work.getId());
+			out.print("?recent=100\" target=\"_blank\">subscribe</a>");
+			AdaptiveInterval interval = work.getInterval();
+			if (interval != null) {
+				out.print(" every ");
+				out.print(interval.getInterval() / 1000);
+				out.print(" sec. (");
+				out.print(interval.getReason());
+				out.print(")");
+			}
+		}
+
+		out.print("<form method=\"POST\" action=\"");
+		out.print(work.getId());
+		out.print("/finished\">");
+		out.print("&nbsp;<input type=\"submit\" value=\"finish\">");
+		out.print("</form></li>\r\n");
+
+		out.print("<li>");
+		out.print(work.getLocation());
+		out.print(work.getQuery());
+		out.print("</li>\r\n");
+
+		out.print("</ul>\r\n");
+	}
+
+	/**
+	 * Append a request for statistics as a JSON object.
+	 * {@code
+	   {"id":"...","location":"...","query":"...","status":"started","requested":1700000000000,
+	    "interval":30,"reason":"fixed"}
+	 * }
+	 * <p>{@code interval} and {@code reason} are included only for a started statistics.</p>
+	 * @param out buffer to which the object is appended
+	 * @param work request for a statistics
+	 */
+	static void appendJson(StringBuilder out, StatisticsRequest work) {
+		out.append("{\"id\":");
+		Json.appendString(out, work.getId());
+		out.append(",\"location\":");
+		Json.appendString(out, work.getLocation());
+		out.append(",\"query\":");
+		Json.appendString(out, work.getQuery());
+		out.append(",\"status\":\"").append(statusOf(work)).append('"');
+		out.append(",\"requested\":").append(work.getRequested());
+		AdaptiveInterval interval = work.getInterval();
+		if (work.getStatus() == StatisticsRequest.STARTED && interval != null) {
+			out.append(",\"interval\":").append(interval.getInterval() / 1000);
+			out.append(",\"reason\":");
+			Json.appendString(out, interval.getReason());
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Escape a text to be rendered in HTML.
+	 * @param text text to be escaped, {@code null} is rendered as an empty string
+	 * @return escaped text
+	 */
+	static String escape(String text) {
+		if (text == null) {
+			return "";
+		}
+		StringBuilder out = new StringBuilder(text.length() + 16);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '&':
+				out.append("&amp;");
+				break;
+			case '"':
+				out.append("&quot;");
+				break;
+			default:
+				out.append(c);
+				break;
+			}
+		}
+		return out.toString();
+	}
+
+	private static String statusOf(StatisticsRequest work) {
+		switch (work.getStatus()) {
+		case StatisticsRequest.STARTABLE:
+			return "startable";
+		case StatisticsRequest.STARTED:
+			return "started";
+		default:
+			return "invalid";
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package collector.rest;
+
+import collector.rest.metrics.Counter;
+import collector.rest.metrics.Exposition;
+import collector.rest.metrics.Histogram;
+
+/**
+ * Meters of the hot path of a statistics, from polling RESTConnector to writing the stream.
+ * @see CollectorMetrics
+ */
+public class RequestMeters {
+
+	private final String labels;
+
+	private final Histogram pollTime = new Histogram();
+
+	private final Histogram parseTime = new Histogram();
+
+	private final Histogram formatTime = new Histogram();
+
+	private final Histogram writeTime = new Histogram();
+
+	private final Counter received = new Counter();
+
+	private final Counter sent = new Counter();
+
+	private final Counter gaps = new Counter();
+
+	/**
+	 * Constructor.
+	 * @param id ID of statistics
+	 * @param location location of RESTConnector
+	 */
+	RequestMeters(String id, String location) {
+		this.labels = Exposition.labels("location", location, "id", id);
+	}
+
+	/**
+	 * Get the labels identifying the statistics.
+	 * @return labels rendered in Prometheus text format
+	 */
+	public String getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Get the histogram of the time from issuing a poll until its response,
+	 * including the time waiting for a connection.
+	 * @return histogram of the time for polling
+	 */
+	public Histogram getPollTime() {
+		return pollTime;
+	}
+
+	/**
+	 * Get the histogram of the time for reading and decoding a response.
+	 * @return histogram of the time for parsing
+	 */
+	public Histogram getParseTime() {
+		return parseTime;
+	}
+
+	/**
+	 * Get the histogram of the time for rendering a sample for a subscriber.
+	 * @return histogram of the time for formatting
+	 */
+	public Histogram getFormatTime() {
+		return formatTime;
+	}
+
+	/**
+	 * Get the histogram of the time for writing a chunk to a subscriber.
+	 * @return histogram of the time for writing
+	 */
+	public Histogram getWriteTime() {
+		return writeTime;
+	}
+
+	/**
+	 * Get the counter of bytes of responses read from RESTConnector.
+	 * @return counter of bytes received
+	 */
+	public Counter getReceived() {
+		return received;
+	}
+
+	/**
+	 * Get the counter of bytes written to subscribers.
+	 * @return counter of bytes sent
+	 */
+	public Counter getSent() {
+		return sent;
+	}
+
+	/**
+	 * Get the counter of polls without sample.
+	 * @return counter of gaps
+	 */
+	public Counter getGaps() {
+		return gaps;
+	}
+
+}
@@ -0,0 +1,300 @@
+package collector.rest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Index of reserved statistics by ID and in the order of reservation.
+ * <p>Statistics are kept in a concurrent skip list ordered on a first-come, first-served basis,
+ * so that a page of the list is read from a cursor without copying or sorting all of them.
+ * Reservations and removals update the map by ID and the skip list under the lock of the index,
+ * so that the two never disagree, while reading either of them takes no lock.
+ * Every reservation, removal and start is numbered by a version, and the latest
+ * {@value #MAX_CHANGES} changes are kept so that a client can fetch only the statistics
+ * changed since the version it has seen.</p>
+ */
+final class ReservationIndex {
+
+	/** Maximum number of changes kept for incremental updates. */
+	static final int MAX_CHANGES = 4096;
+
+	private final Map<String, StatisticsRequest> byId = new ConcurrentHashMap<>();
+
+	private final NavigableMap<Key, StatisticsRequest> ordered = new ConcurrentSkipListMap<>();
+
+	/** IDs of statistics changed in the order of versions, guarded by itself. */
+	private final ArrayDeque<Change> changes = new ArrayDeque<>();
+
+	/** Version of the latest change, guarded by {@code changes}. */
+	private long version;
+
+	StatisticsRequest get(String id) {
+		return byId.get(id);
+	}
+
+	boolean containsKey(String id) {
+		return byId.containsKey(id);
+	}
+
+	int size() {
+		return byId.size();
+	}
+
+	/**
+	 * Reserve a statistics, replacing the one with the same ID if any.
+	 * @param id ID of statistics
+	 * @param work request for a statistics
+	 * @return the replaced statistics, {@code null} if it is new
+	 */
+	synchronized StatisticsRequest put(String id, StatisticsRequest work) {
+		StatisticsRequest previous = byId.put(id, work);
+		if (previous != null && previous != work) {
+			ordered.remove(Key.of(previous), previous);
+		}
+		ordered.put(Key.of(work), work);
+		changed(id);
+		return previous;
+	}
+
+	/**
+	 * Reserve a statistics unless the one with the same ID is reserved.
+	 * @param id ID of statistics
+	 * @param work request for a statistics
+	 * @return the statistics already reserved, {@code null} if {@code work} has been reserved
+	 */
+	synchronized StatisticsRequest putIfAbsent(String id, StatisticsRequest work) {
+		StatisticsRequest previous = byId.putIfAbsent(id, work);
+		if (previous == null) {
+			ordered.put(Key.of(work), work);
+			changed(id);
+		}
+		return previous;
+	}
+
+	/**
+	 * Remove a statistics.
+	 * @param id ID of statistics
+	 * @return the removed statistics, {@code null} if it is not reserved
+	 */
+	synchronized StatisticsRequest remove(String id) {
+		StatisticsRequest removed = byId.remove(id);
+		if (removed != null) {
+			ordered.remove(Key.of(removed), removed);
+			changed(id);
+		}
+		return removed;
+	}
+
+	/**
+	 * Get all reserved statistics.
+	 * @return unmodifiable view in the order of reservation
+	 */
+	Collection<StatisticsRequest> values() {
+		return Collections.unmodifiableCollection(ordered.values());
+	}
+
+	/**
+	 * Record a change of a statistics, such as its start.
+	 * @param id ID of statistics
+	 */
+	void changed(String id) {
+		synchronized (changes) {
+			changes.add(new Change(++version, id));
+			if (changes.size() > MAX_CHANGES) {
+				changes.poll();
+			}
+		}
+	}
+
+	/**
+	 * Get the version of the latest change.
+	 * @return the version, 0 before any change
+	 */
+	long getVersion() {
+		synchronized (changes) {
+			return version;
+		}
+	}
+
+	/**
+	 * Get the IDs of statistics changed after a version.
+	 * @param since version seen by the client
+	 * @return IDs in the order of their latest changes,
+	 * {@code null} if the changes have been discarded and the client should fetch the list again
+	 */
+	Set<String> changedSince(long since) {
+		synchronized (changes) {
+			if (since > version || (since < version && changes.peek().version > since + 1)) {
+				return null;
+			}
+			List<String> found = new ArrayList<>();
+			for (Iterator<Change> i = changes.descendingIterator(); i.hasNext(); ) {
+				Change change = i.next();
+				if (change.version <= since) {
+					break;
+				}
+				found.add(change.id);
+			}
+			Set<String> ids = new LinkedHashSet<>();
+			for (int i = found.size() - 1; i >= 0; i--) {
+				ids.remove(found.get(i));
+				ids.add(found.get(i));
+			}
+			return ids;
+		}
+	}
+
+	/**
+	 * Get a page of statistics.
+	 * @param after cursor given by the previous page, {@code null} for the first page
+	 * @param filter filter of statistics
+	 * @param limit maximum number of statistics in the page
+	 * @return the page
+	 */
+	Page page(String after, Predicate<StatisticsRequest> filter, int limit) {
+		Key cursor = Key.parse(after);
+		List<StatisticsRequest> items = new ArrayList<>(Math.min(limit, 1024));
+		int total = 0;
+		for (StatisticsRequest work : ordered.values()) {
+			if (filter.test(work)) {
+				total++;
+			}
+		}
+		String next = null;
+		for (StatisticsRequest work : (cursor == null ? ordered : ordered.tailMap(cursor, false)).values()) {
+			if (!filter.test(work)) {
+				continue;
+			}
+			if (items.size() == limit) {
+				next = Key.of(items.get(items.size() - 1)).toString();
+				break;
+			}
+			items.add(work);
+		}
+		return new Page(items, total, next);
+	}
+
+	/**
+	 * Page of statistics in the order of reservation.
+	 */
+	static final class Page {
+
+		private final List<StatisticsRequest> items;
+
+		private final int total;
+
+		private final String next;
+
+		Page(List<StatisticsRequest> items, int total, String next) {
+			this.items = items;
+			this.total = total;
+			this.next = next;
+		}
+
+		List<StatisticsRequest> getItems() {
+			return items;
+		}
+
+		/**
+		 * Get the number of statistics passing the filter in all pages.
+		 * @return number of statistics
+		 */
+		int getTotal() {
+			return total;
+		}
+
+		/**
+		 * Get the cursor of the next page.
+		 * @return cursor, {@code null} if this is the last page
+		 */
+		String getNext() {
+			return next;
+		}
+
+	}
+
+	/**
+	 * Position of a statistics in the order of reservation, which is also the cursor of a page.
+	 */
+	private static final class Key implements Comparable<Key> {
+
+		final long requested;
+
+		final String id;
+
+		Key(long requested, String id) {
+			this.requested = requested;
+			this.id = id;
+		}
+
+		static Key of(StatisticsRequest work) {
+			return new Key(work.getRequested(), work.getId());
+		}
+
+		/**
+		 * Parse a cursor such as {@code 1700000000000-<id>}.
+		 * @return key, {@code null} if the cursor is not valid
+		 */
+		static Key parse(String cursor) {
+			int separator = cursor == null ? -1 : cursor.indexOf('-');
+			if (separator <= 0) {
+				return null;
+			}
+			try {
+				return new Key(Long.parseLong(cursor.substring(0, separator)), cursor.substring(separator + 1));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public int compareTo(Key other) {
+			int compared = Long.compare(requested, other.requested);
+			return compared != 0 ? compared : id.compareTo(other.id);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && compareTo((Key) other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(requested) * 31 + id.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return requested + "-" + id;
+		}
+
+	}
+
+	/**
+	 * Change of a statistics numbered by a version.
+	 */
+	private static final class Change {
+
+		final long version;
+
+		final String id;
+
+		Change(long version, String id) {
+			this.version = version;
+			this.id = id;
+		}
+
+	}
+
+}
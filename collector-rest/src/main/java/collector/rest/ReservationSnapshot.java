@@ -0,0 +1,529 @@
+package collector.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.NameFilter;
+import collector.rest.stat.Row;
+
+/**
+ * Snapshot of reserved statistics kept in a local file for warm restart.
+ * <p>The snapshot is written shortly after reservations change and when the application stops,
+ * replacing the file atomically. It includes the schedule of started statistics
+ * and their last samples, so that polling resumes on the same ticks
+ * without discovering MBeans again. The file includes credentials of RESTConnector,
+ * and it is readable only by the owner where the file system supports it.
+ * Passwords are encrypted by AES-GCM with a key derived from {@value #ENV_SNAPSHOT_KEY},
+ * or a random key kept in a separate file readable only by the owner,
+ * so that the snapshot alone, such as a copy in a backup, does not reveal them.
+ * A statistics whose password cannot be decrypted is restored without it and not resumed.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_SNAPSHOT}</dt>
+ * <dd>path of the snapshot file, {@code none} for disabling it
+ * (default: {@code reservations.snapshot} under the output directory of the server)</dd>
+ * <dt>{@value #ENV_SNAPSHOT_KEY}</dt>
+ * <dd>passphrase from which the key encrypting passwords is derived
+ * (default: none, a random key kept in the path of the snapshot file followed by {@code .key})</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class ReservationSnapshot {
+
+	/**
+	 * Name of environment variable specifying the path of the snapshot file.
+	 * @see ReservationSnapshot
+	 */
+	public static final String ENV_SNAPSHOT = "COLLECTOR_SNAPSHOT";
+
+	/**
+	 * Name of environment variable specifying the passphrase of the key encrypting passwords.
+	 * @see ReservationSnapshot
+	 */
+	public static final String ENV_SNAPSHOT_KEY = "COLLECTOR_SNAPSHOT_KEY";
+
+	/** Magic number and version of the snapshot file. */
+	private static final int MAGIC = 0x43525331;
+
+	/** Number of bytes of the key encrypting passwords. */
+	private static final int KEY_BYTES = 32;
+
+	/** Number of bytes of the initialization vector of each password. */
+	private static final int IV_BYTES = 12;
+
+	/** Number of bits of the authentication tag of each password. */
+	private static final int TAG_BITS = 128;
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	/** Delay in milliseconds for writing changes together. */
+	private static final long DELAY = TimeUnit.SECONDS.toMillis(1);
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	@Inject
+	private PollingScheduler scheduler;
+
+	@Resource(lookup = "java:comp/DefaultManagedExecutorService")
+	private ManagedExecutorService executor;
+
+	/** Path of the snapshot file, {@code null} if disabled. */
+	private Path file;
+
+	/** Key encrypting passwords, loaded on the first access. */
+	private SecretKey key;
+
+	/** Action capturing the current entries. */
+	private volatile Supplier<List<Entry>> capture;
+
+	/** Flag indicating a write is scheduled. */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/** Flag indicating the final snapshot has been written. */
+	private volatile boolean closed;
+
+	/**
+	 * Bind the snapshot with the owner of reservations, and restore the entries on a managed thread.
+	 * @param capture action capturing the current entries
+	 * @param restore action restoring the entries read from the file
+	 */
+	public void bind(Supplier<List<Entry>> capture, Consumer<List<Entry>> restore) {
+		this.capture = capture;
+		if (file == null) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					List<Entry> entries = read();
+					logger.info(() -> entries.size() + " reservations are restored from " + file);
+					restore.accept(entries);
+				} catch (NoSuchFileException e) {
+					logger.fine(() -> "No snapshot: ".concat(file.toString()));
+				} catch (IOException | RuntimeException e) {
+					logger.log(Level.WARNING, e, () -> "Cannot restore reservations: ".concat(e.toString()));
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the application is stopping
+		}
+	}
+
+	/**
+	 * Write the snapshot shortly, together with the following changes.
+	 */
+	public void changed() {
+		if (file == null || closed || !scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		scheduler.at(System.currentTimeMillis() + DELAY, () -> {
+			try {
+				executor.execute(() -> {
+					scheduled.set(false);
+					save();
+				});
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+			}
+		});
+	}
+
+	/**
+	 * Write the final snapshot before the polling is stopped, ignoring the following changes.
+	 */
+	public void close() {
+		if (file != null && !closed) {
+			save();
+			closed = true;
+		}
+	}
+
+	private synchronized void save() {
+		Supplier<List<Entry>> current = capture;
+		if (closed || current == null) {
+			return;
+		}
+		List<Entry> entries = current.get();
+		try {
+			write(entries);
+			logger.fine(() -> entries.size() + " reservations are saved to " + file);
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.WARNING, e, () -> "Cannot save reservations: ".concat(e.toString()));
+		}
+	}
+
+	private void write(List<Entry> entries) throws IOException {
+		SecretKey sealing = key();
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			restrict(temporary);
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(entries.size());
+				for (Entry entry : entries) {
+					entry.write(out, sealing);
+				}
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private List<Entry> read() throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Unknown format: ".concat(file.toString()));
+			}
+			SecretKey sealing = key();
+			int size = in.readInt();
+			List<Entry> entries = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				entries.add(Entry.read(in, sealing));
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Get the key encrypting passwords, derived from the passphrase or read from the key file.
+	 * <p>The key file is created with a random key unless it exists.</p>
+	 * @return AES key
+	 * @throws IOException fail to access the key file
+	 */
+	private synchronized SecretKey key() throws IOException {
+		if (key != null) {
+			return key;
+		}
+		String passphrase = Settings.getEnvValue(ENV_SNAPSHOT_KEY, null);
+		if (passphrase != null) {
+			try {
+				byte[] bytes = MessageDigest.getInstance("SHA-256").digest(passphrase.getBytes(UTF_8));
+				key = new SecretKeySpec(bytes, "AES");
+			} catch (GeneralSecurityException e) {
+				throw new IOException(e);
+			}
+			return key;
+		}
+
+		Path keyFile = Paths.get(file.toString() + ".key");
+		if (!Files.exists(keyFile)) {
+			Path parent = keyFile.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			Path temporary = Files.createTempFile(parent, keyFile.getFileName().toString(), ".tmp");
+			try {
+				restrict(temporary);
+				byte[] bytes = new byte[KEY_BYTES];
+				RANDOM.nextBytes(bytes);
+				Files.write(temporary, bytes);
+				Files.move(temporary, keyFile, StandardCopyOption.ATOMIC_MOVE);
+				logger.info(() -> "Created key of snapshot: ".concat(keyFile.toString()));
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+		byte[] bytes = Files.readAllBytes(keyFile);
+		if (bytes.length != KEY_BYTES) {
+			throw new IOException("Invalid key: ".concat(keyFile.toString()));
+		}
+		key = new SecretKeySpec(bytes, "AES");
+		return key;
+	}
+
+	/**
+	 * Make a file readable only by the owner where the file system supports it.
+	 * @param path path of the file
+	 * @throws IOException fail to change the permissions
+	 */
+	private static void restrict(Path path) throws IOException {
+		try {
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			// the file system does not support POSIX permissions
+		}
+	}
+
+	/**
+	 * Encrypt a password, binding it to the ID of its statistics.
+	 * @param key key encrypting passwords
+	 * @param id ID of statistics
+	 * @param password password in clear text
+	 * @return initialization vector followed by the encrypted password
+	 * @throws IOException fail to encrypt the password
+	 */
+	private static byte[] seal(SecretKey key, String id, String password) throws IOException {
+		try {
+			byte[] iv = new byte[IV_BYTES];
+			RANDOM.nextBytes(iv);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(id.getBytes(UTF_8));
+			byte[] sealed = cipher.doFinal(password.getBytes(UTF_8));
+			byte[] result = Arrays.copyOf(iv, IV_BYTES + sealed.length);
+			System.arraycopy(sealed, 0, result, IV_BYTES, sealed.length);
+			return result;
+		} catch (GeneralSecurityException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Decrypt a password encrypted by {@link #seal(SecretKey, String, String)}.
+	 * @param key key encrypting passwords
+	 * @param id ID of statistics
+	 * @param sealed initialization vector followed by the encrypted password
+	 * @return password in clear text
+	 * @throws IOException fail to decrypt the password, such as by another key
+	 */
+	private static String unseal(SecretKey key, String id, byte[] sealed) throws IOException {
+		try {
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_BYTES));
+			cipher.updateAAD(id.getBytes(UTF_8));
+			return new String(cipher.doFinal(sealed, IV_BYTES, sealed.length - IV_BYTES), UTF_8);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Cannot decrypt password of ".concat(id), e);
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		String output = System.getProperty("server.output.dir", System.getProperty("java.io.tmpdir"));
+		String path = Settings.getEnvValue(ENV_SNAPSHOT, output + File.separator + "reservations.snapshot");
+		file = "none".equalsIgnoreCase(path) ? null : Paths.get(path);
+	}
+
+	/**
+	 * Reserved statistics with the state of its polling.
+	 */
+	public static class Entry {
+
+		private final StatisticsRequest work;
+
+		private final int remains;
+
+		private final long next;
+
+		private final long timestamp;
+
+		private final Layout layout;
+
+		private final Row row;
+
+		/**
+		 * Constructor.
+		 * @param work reserved statistics with the parameters with which it has been started
+		 * @param remains number of polls remaining, meaningful only if it has been started
+		 * @param next time in milliseconds of the next poll, meaningful only if it has been started
+		 * @param timestamp time in milliseconds of the last sample
+		 * @param layout layout of the last sample, {@link Layout#EMPTY} if there is no sample
+		 * @param row values of the last sample
+		 */
+		public Entry(StatisticsRequest work, int remains, long next, long timestamp, Layout layout, Row row) {
+			this.work = work;
+			this.remains = remains;
+			this.next = next;
+			this.timestamp = timestamp;
+			this.layout = layout;
+			this.row = row;
+		}
+
+		public StatisticsRequest getWork() {
+			return work;
+		}
+
+		public int getRemains() {
+			return remains;
+		}
+
+		public long getNext() {
+			return next;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public Layout getLayout() {
+			return layout;
+		}
+
+		public Row getRow() {
+			return row;
+		}
+
+		private void write(DataOutputStream out, SecretKey key) throws IOException {
+			out.writeUTF(work.getId());
+			out.writeLong(work.getRequested());
+			writeString(out, work.getLocation());
+			writeString(out, work.getQuery());
+			writeString(out, work.getUser());
+			out.writeBoolean(work.getPassword() != null);
+			if (work.getPassword() != null) {
+				byte[] sealed = seal(key, work.getId(), work.getPassword());
+				out.writeShort(sealed.length);
+				out.write(sealed);
+			}
+			writeStrings(out, work.getAttributes().getIncludes());
+			writeStrings(out, work.getAttributes().getExcludes());
+			out.writeByte(work.getStatus());
+			out.writeShort(work.getParameters().size());
+			for (Map.Entry<String, String> parameter : work.getParameters().entrySet()) {
+				out.writeUTF(parameter.getKey());
+				out.writeUTF(parameter.getValue());
+			}
+			out.writeInt(remains);
+			out.writeLong(next);
+
+			List<String> names = new ArrayList<>();
+			List<String> types = new ArrayList<>();
+			for (int i = 0; i < layout.size(); i++) {
+				names.add(layout.getName(i));
+				types.add(layout.getType(i));
+			}
+			writeStrings(out, names);
+			writeStrings(out, types);
+			out.writeLong(timestamp);
+			for (int i = 0; i < layout.size(); i++) {
+				out.writeByte(row.getKind(i));
+				switch (row.getKind(i)) {
+				case Layout.INTEGER:
+					out.writeLong(row.getInteger(i));
+					break;
+				case Layout.DECIMAL:
+					out.writeDouble(row.getDecimal(i));
+					break;
+				default:
+					writeString(out, row.getText(i));
+					break;
+				}
+			}
+		}
+
+		private static Entry read(DataInputStream in, SecretKey key) throws IOException {
+			StatisticsRequest work = new StatisticsRequest(in.readUTF(), in.readLong());
+			work.setLocation(readString(in));
+			work.setQuery(readString(in));
+			work.setUser(readString(in));
+			boolean locked = false;
+			if (in.readBoolean()) {
+				byte[] sealed = new byte[in.readUnsignedShort()];
+				in.readFully(sealed);
+				try {
+					work.setPassword(unseal(key, work.getId(), sealed));
+				} catch (IOException e) {
+					// such as the key has been changed, which should not lose the other entries
+					Logger.getLogger(ReservationSnapshot.class.getName()).log(Level.WARNING, e,
+							() -> work.getId() + " is restored without password, not resumed: " + e.getMessage());
+					locked = true;
+				}
+			}
+			work.setAttributes(NameFilter.of(readStrings(in), readStrings(in)));
+			work.setStatus(in.readByte());
+			if (locked) {
+				work.setStatus(StatisticsRequest.STARTABLE);
+			}
+			for (int i = in.readUnsignedShort(); i > 0; i--) {
+				work.getParameters().put(in.readUTF(), in.readUTF());
+			}
+			int remains = in.readInt();
+			long next = in.readLong();
+
+			List<String> names = readStrings(in);
+			List<String> types = readStrings(in);
+			Layout layout = names.isEmpty() ? Layout.EMPTY : Layout.of(names, types);
+			long timestamp = in.readLong();
+			Row row = new Row();
+			row.resize(layout.size());
+			for (int i = 0; i < layout.size(); i++) {
+				switch (in.readByte()) {
+				case Layout.INTEGER:
+					row.setInteger(i, in.readLong());
+					break;
+				case Layout.DECIMAL:
+					row.setDecimal(i, in.readDouble());
+					break;
+				default:
+					row.setText(i, readString(in));
+					break;
+				}
+			}
+			return new Entry(work, remains, next, timestamp, layout, row);
+		}
+
+		private static void writeString(DataOutputStream out, String value) throws IOException {
+			out.writeBoolean(value != null);
+			if (value != null) {
+				out.writeUTF(value);
+			}
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+
+		private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+			out.writeShort(values.size());
+			for (String value : values) {
+				out.writeUTF(value);
+			}
+		}
+
+		private static List<String> readStrings(DataInputStream in) throws IOException {
+			int size = in.readUnsignedShort();
+			List<String> values = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				values.add(in.readUTF());
+			}
+			return values;
+		}
+
+	}
+
+}
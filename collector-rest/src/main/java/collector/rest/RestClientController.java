@@ -4,91 +4,179 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Optional.ofNullable;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
-import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
 import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.ProcessingException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Invocation.Builder;
-import javax.ws.rs.core.GenericType;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Form;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import collector.rest.stat.StatEntry;
+import collector.rest.DiscoveryCache.Discovery;
+import collector.rest.derive.Derivations;
+import collector.rest.derive.DerivedColumns;
+import collector.rest.derive.Expression;
+import collector.rest.derive.ProjectedColumns;
+import collector.rest.metrics.Counter;
+import collector.rest.metrics.CountingInputStream;
+import collector.rest.metrics.Histogram;
+import collector.rest.series.Frame;
+import collector.rest.series.RingSeries;
+import collector.rest.series.SampleSink;
+import collector.rest.sketch.Aggregate;
+import collector.rest.sketch.Percentiles;
+import collector.rest.stat.AttributeDecoder;
+import collector.rest.stat.Layout;
+import collector.rest.stat.NameFilter;
+import collector.rest.stat.Row;
+import collector.rest.stream.Channel;
+import collector.rest.stream.Csv;
+import collector.rest.stream.Format;
+import collector.rest.stream.Json;
+import collector.rest.stream.StreamSubscriber;
+import collector.rest.stream.Subscriber;
+import collector.rest.stream.WideStream;
 
 /**
  * Controller communicating with RESTConnector for a MBeanServer.
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_DERIVE}</dt>
+ * <dd>expressions of derived columns for statistics started without {@code derive} parameter,
+ * such as {@code rate(*Count)} (default: none)</dd>
+ * <dt>{@value #ENV_ADAPTIVE}</dt>
+ * <dd>maximum multiple of the period to which the interval of polls backs off
+ * for statistics started without {@code adaptive} parameter, 1 for polling at every period
+ * (default: 1)</dd>
+ * <dt>{@value #ENV_PAGE_SIZE}</dt>
+ * <dd>number of statistics in a page of the list without {@code limit} parameter (default: 100)</dd>
+ * </dl>
+ * <p>If several collectors are members of {@link ClusterMembership}, each statistics is owned by one of them.
+ * Requests for a statistics owned by another member are redirected to the owner,
+ * the list includes the statistics of all members, and reserved statistics are handed over
+ * to their owners when members join or leave.</p>
+ * @see Derivations
  */
-@WebServlet(name = "RestClientController", urlPatterns = "/requests/*", asyncSupported = true)
+@WebServlet(name = "RestClientController", urlPatterns = "/requests/*", asyncSupported = true,
+		loadOnStartup = 1)
 public class RestClientController extends HttpServlet {
 
-	private static final long serialVersionUID = 1L;
-
-	/** A dummy implementation for skipping server certification check. */
-	private static final TrustManager DUMMY_TRUST_MANAGER = new X509TrustManager() {
-		@Override
-		public void checkClientTrusted(X509Certificate[] chain, String authType) {
-		}
+	/**
+	 * Name of environment variable specifying the expressions of derived columns.
+	 * @see RestClientController
+	 */
+	public static final String ENV_DERIVE = "COLLECTOR_DERIVE";
 
-		@Override
-		public void checkServerTrusted(X509Certificate[] chain, String authType) {
-		}
+	/**
+	 * Name of environment variable specifying the maximum multiple of the period between polls.
+	 * @see RestClientController
+	 */
+	public static final String ENV_ADAPTIVE = "COLLECTOR_ADAPTIVE";
 
-		@Override
-		public X509Certificate[] getAcceptedIssuers() {
-			return null;
-		}
-	};
+	/**
+	 * Name of environment variable specifying the number of statistics in a page of the list.
+	 * @see RestClientController
+	 */
+	public static final String ENV_PAGE_SIZE = "COLLECTOR_PAGE_SIZE";
 
-	/** A dummy implementation for skipping host identity check of TLS connection. */
-	private static final HostnameVerifier DUMMY_HOSTNAME_VERIFIER =
-			(host, session) -> host != null;
+	private static final long serialVersionUID = 1L;
 
-	/** A Comparator ordering StatisticsRequest(s) on a first-come, first-served basis. */
-	private static final Comparator<StatisticsRequest> FIRST_COME =
-			(left, right) -> (int) (left.getRequested() - right.getRequested());
+	private static final List<String> EMPTY_PATHS = Arrays.asList(null, "", "/");
 
-	private static final GenericType<List<ManagedObject>> BEANS =
-			new GenericType<List<ManagedObject>>() {
-	};
+	private static final Pattern ID_PATTERN = Pattern.compile("^/([^/]+)(|/.*)$");
 
-	private static final GenericType<List<StatEntry>> STATISTICS =
-			new GenericType<List<StatEntry>>() {
-	};
+	/** Parameters with which a statistics is started, handed over with the statistics. */
+	private static final List<String> START_PARAMETERS =
+			Arrays.asList("initial", "period", "times", "derive", "percentiles", "adaptive");
 
-	private static final List<String> EMPTY_PATHS = Arrays.asList(null, "", "/");
+	/** Script of the list updating the rows of statistics changed, every 5 seconds. */
+	private static final String UPDATE_SCRIPT = "<script>\r\n"
+			+ "(function () {\r\n"
+			+ "\tvar rows = document.getElementById('requests');\r\n"
+			+ "\tsetInterval(function () {\r\n"
+			+ "\t\tvar parameters = new URLSearchParams(window.location.search);\r\n"
+			+ "\t\tparameters.set('changes', rows.dataset.version);\r\n"
+			+ "\t\tparameters.set('html', '');\r\n"
+			+ "\t\tfetch('?' + parameters, { headers: { 'Accept': 'application/json' } })\r\n"
+			+ "\t\t\t.then(function (response) { return response.json(); })\r\n"
+			+ "\t\t\t.then(function (feed) {\r\n"
+			+ "\t\t\t\tif (feed.reload) {\r\n"
+			+ "\t\t\t\t\twindow.location.reload();\r\n"
+			+ "\t\t\t\t\treturn;\r\n"
+			+ "\t\t\t\t}\r\n"
+			+ "\t\t\t\tfeed.removed.forEach(function (id) {\r\n"
+			+ "\t\t\t\t\tvar row = document.getElementById(id);\r\n"
+			+ "\t\t\t\t\tif (row) { row.remove(); }\r\n"
+			+ "\t\t\t\t});\r\n"
+			+ "\t\t\t\tfeed.changed.forEach(function (item) {\r\n"
+			+ "\t\t\t\t\tvar row = document.getElementById(item.id);\r\n"
+			+ "\t\t\t\t\tif (row) {\r\n"
+			+ "\t\t\t\t\t\trow.outerHTML = item.html;\r\n"
+			+ "\t\t\t\t\t} else if (rows.dataset.last === 'true') {\r\n"
+			+ "\t\t\t\t\t\trows.insertAdjacentHTML('beforeend', item.html);\r\n"
+			+ "\t\t\t\t\t}\r\n"
+			+ "\t\t\t\t});\r\n"
+			+ "\t\t\t\trows.dataset.version = feed.version;\r\n"
+			+ "\t\t\t});\r\n"
+			+ "\t}, 5000);\r\n"
+			+ "})();\r\n"
+			+ "</script>\r\n";
 
-	private static final Pattern ID_PATTERN = Pattern.compile("^/([^/]+)(|/.*)$");
+	/** Time in milliseconds for which the list waits for the lists of other members. */
+	private static final long MEMBER_LIST_TIMEOUT = 3000;
 
 	private static final Pattern NAME_PATTERN =
 			Pattern.compile("^WebSphere:.*type=(\\w+Stats|perf)(|,.*)$");
@@ -98,23 +186,81 @@ public class RestClientController extends HttpServlet {
 	@Inject
 	private WorkerController executor;
 
-	private final Map<String, StatisticsRequest> reserved = new ConcurrentHashMap<>();
+	@Inject
+	private PollingScheduler scheduler;
+
+	@Inject
+	private PollingEngine engine;
+
+	@Inject
+	private SeriesStore store;
+
+	@Inject
+	private HistoryStore history;
+
+	@Inject
+	private StreamHub hub;
+
+	@Inject
+	private SketchStore sketches;
+
+	@Inject
+	private DiscoveryCache discovery;
+
+	@Inject
+	private ClusterMembership cluster;
+
+	@Inject
+	private ReservationSnapshot snapshot;
+
+	@Inject
+	private CollectorMetrics metrics;
+
+	@Inject
+	private LatestSamples latest;
+
+	private final ReservationIndex reserved = new ReservationIndex();
+
+	/** Map associating the ID of a set of statistics started at once with the set. */
+	private final Map<String, Bundle> bundles = new ConcurrentHashMap<>();
+
+	/** IDs of statistics being handed over to other members. */
+	private final Set<String> handing = ConcurrentHashMap.newKeySet();
 
-	private final Client client;
+	/** Flag indicating a statistics has failed to be handed over, retried at the next reading of members. */
+	private volatile boolean unbalanced;
 
-	public RestClientController() {
-		super();
-		client = createClient();
+	@Override
+	public void init() throws ServletException {
+		snapshot.bind(this::capture, this::restore);
+		cluster.onRefresh(changed -> {
+			if (changed || unbalanced) {
+				rebalance();
+			}
+		});
+	}
+
+	@Override
+	public void destroy() {
+		snapshot.close();
 	}
 
 	@Override
 	public void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws IOException, ServletException {
 		if (EMPTY_PATHS.contains(request.getPathInfo())) {
-			reserve(request, response);
+			if (ofNullable(request.getContentType()).orElse("").startsWith(MediaType.APPLICATION_JSON)) {
+				bundle(request, response);
+			} else {
+				reserve(request, response);
+			}
 		} else {
 			Matcher matcher = ID_PATTERN.matcher(request.getPathInfo());
-			if (matcher.matches() && "/finished".equals(matcher.group(2))) {
+			if (matcher.matches() && "/handover".equals(matcher.group(2))) {
+				accept(request, response, matcher.group(1));
+			} else if (matcher.matches() && redirect(request, response, matcher.group(1))) {
+				return;
+			} else if (matcher.matches() && "/finished".equals(matcher.group(2))) {
 				finish(request, response, matcher.group(1));
 			} else {
 				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -126,28 +272,115 @@ public class RestClientController extends HttpServlet {
 	public void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws IOException, ServletException {
 		if (EMPTY_PATHS.contains(request.getPathInfo())) {
-			list(response);
+			list(request, response);
 		} else {
 			Matcher matcher = ID_PATTERN.matcher(request.getPathInfo());
-			if (matcher.matches() && matcher.group(2).isEmpty()) {
+			if (matcher.matches() && redirect(request, response, matcher.group(1))) {
+				return;
+			} else if (matcher.matches() && matcher.group(2).isEmpty()) {
 				monitor(request, response, matcher.group(1));
+			} else if (matcher.matches() && "/series".equals(matcher.group(2))) {
+				series(request, response, matcher.group(1));
+			} else if (matcher.matches() && "/history".equals(matcher.group(2))) {
+				history(request, response, matcher.group(1));
+			} else if (matcher.matches() && "/percentiles".equals(matcher.group(2))) {
+				percentiles(request, response, matcher.group(1));
 			} else {
 				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
 			}
 		}
 	}
 
+	/**
+	 * Redirect a request for a statistics owned by another member to the owner.
+	 * <p>A statistics being handed over is redirected to its new owner.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param id ID of statistics
+	 * @return {@code true} if the request is redirected
+	 */
+	private boolean redirect(HttpServletRequest request, HttpServletResponse response, String id) {
+		Optional<String> owner = reserved.containsKey(id) && !handing.contains(id) || bundles.containsKey(id)
+				? Optional.empty() : cluster.ownerOf(id);
+		if (!owner.isPresent()) {
+			return false;
+		}
+		StringBuilder location = new StringBuilder(owner.get()).append(request.getPathInfo());
+		if (request.getQueryString() != null) {
+			location.append('?').append(request.getQueryString());
+		}
+		response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+		response.setHeader(HttpHeaders.LOCATION, location.toString());
+		return true;
+	}
+
 	/**
 	 * Render the list of statistics to {@code response}.
+	 * <p>The list is paged in the order of reservation: {@code limit} statistics following the cursor
+	 * {@code after} given by the previous page, filtered by substrings of {@code location} and {@code query}.
+	 * It is rendered as JSON if {@code Accept} includes {@code application/json}.
+	 * {@code changes} returns only the statistics changed since the version of the list,
+	 * with which the page updates its rows without reloading.</p>
+	 * <p>The list includes the first page of the statistics owned by other members,
+	 * unless {@code local} is specified for rendering only the fragment of this collector.</p>
+	 * @param request request object
 	 * @param response response object
 	 * @throws IOException fail to render the list of statistics
 	 */
-	protected void list(HttpServletResponse response) throws IOException {
+	protected void list(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Predicate<StatisticsRequest> filter = filterOf(request);
+		long version = reserved.getVersion();
+		ReservationIndex.Page page;
+		try {
+			if (request.getParameter("changes") != null) {
+				changes(request, response, Long.parseLong(request.getParameter("changes")), filter);
+				return;
+			}
+			int limit = ofNullable(request.getParameter("limit")).map(Integer::parseInt)
+					.filter(value -> value > 0).orElseGet(() -> Settings.getInt(ENV_PAGE_SIZE, 100));
+			page = reserved.page(request.getParameter("after"), filter, limit);
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
+
+		if (ofNullable(request.getHeader(HttpHeaders.ACCEPT))
+				.filter(accept -> accept.contains(MediaType.APPLICATION_JSON)).isPresent()) {
+			StringBuilder out = new StringBuilder(page.getItems().size() * 256 + 64)
+					.append("{\"version\":").append(version)
+					.append(",\"total\":").append(page.getTotal())
+					.append(",\"next\":");
+			Json.appendString(out, page.getNext());
+			out.append(",\"items\":[");
+			for (int i = 0; i < page.getItems().size(); i++) {
+				RequestList.appendJson(i == 0 ? out : out.append(','), page.getItems().get(i));
+			}
+			out.append("]}");
+			write(response, MediaType.APPLICATION_JSON, out);
+			return;
+		}
+
 		response.setContentType(MediaType.TEXT_HTML);
 		response.setCharacterEncoding(UTF_8.name());
-
-		List<StatisticsRequest> available = new ArrayList<>(reserved.values());
 		try (PrintWriter out = response.getWriter()) {
+			if (request.getParameter("local") != null) {
+				page.getItems().forEach(work -> RequestList.render(out, work));
+				engine.getTransports().forEach(transport -> render(out, transport));
+				return;
+			}
+
+			// the lists of other members are fetched at once while rendering this one
+			Map<String, Future<String>> members = new TreeMap<>();
+			Map<String, String> parameters = new HashMap<>();
+			for (String name : Arrays.asList("location", "query", "limit")) {
+				ofNullable(request.getParameter(name)).ifPresent(value -> parameters.put(name, value));
+			}
+			cluster.getMembers().stream()
+					.filter(member -> !member.equals(cluster.getSelf()))
+					.forEach(member -> members.put(member, list(member, parameters)));
+
+			String location = ofNullable(request.getParameter("location")).orElse("");
+			String query = ofNullable(request.getParameter("query")).orElse("");
 			out.print("<!DOCTYPE html>\r\n");
 			out.print("<html lang=\"ja\">\r\n");
 			out.print("<head>\r\n");
@@ -156,16 +389,157 @@ public class RestClientController extends HttpServlet {
 			out.print("<link href=\"/collector-rest/dashboard.css\" rel=\"stylesheet\">");
 			out.print("</head>\r\n");
 			out.print("<body>\r\n");
-			available.stream()
-					.sorted(FIRST_COME)
-					.forEach(request -> render(out, request));
+			out.print("<form method=\"GET\" action=\"\">location <input name=\"location\" size=\"30\" value=\"");
+			out.print(RequestList.escape(location));
+			out.print("\"> query <input name=\"query\" size=\"30\" value=\"");
+			out.print(RequestList.escape(query));
+			out.print("\"> <input type=\"submit\" value=\"filter\"></form>\r\n");
+			out.print("<p>");
+			out.print(page.getItems().size());
+			out.print(" of ");
+			out.print(page.getTotal());
+			out.print(" statistics");
+			if (request.getParameter("after") != null) {
+				out.print(" <a href=\"?");
+				out.print(RequestList.escape(pagingOf(location, query, null)));
+				out.print("\">first</a>");
+			}
+			if (page.getNext() != null) {
+				out.print(" <a href=\"?");
+				out.print(RequestList.escape(pagingOf(location, query, page.getNext())));
+				out.print("\">next</a>");
+			}
+			out.print("</p>\r\n");
+			out.print("<div id=\"requests\" data-version=\"");
+			out.print(version);
+			out.print("\" data-last=\"");
+			out.print(page.getNext() == null);
+			out.print("\">\r\n");
+			page.getItems().forEach(work -> RequestList.render(out, work));
+			out.print("</div>\r\n");
+			engine.getTransports().stream()
+					.sorted(Comparator.comparing(Transport::getLocation))
+					.forEach(transport -> render(out, transport));
+			long deadline = System.currentTimeMillis() + MEMBER_LIST_TIMEOUT;
+			members.forEach((member, fragment) -> render(out, member, fragment, deadline));
+			out.print(UPDATE_SCRIPT);
 			out.print("</body>\r\n");
 			out.print("</html>\r\n");
 		}
 	}
 
+	/**
+	 * Render the statistics changed since a version of the list as JSON.
+	 * {@code
+	   {"version":12,"reload":false,"changed":[{"id":"...",...,"html":"..."}],"removed":["..."]}
+	 * }
+	 * <p>Statistics no longer passing the filter are included in {@code removed}, and {@code html}
+	 * is included only if {@code html} is specified. {@code reload} is {@code true} if the changes since
+	 * the version are no longer kept, in which case the list should be fetched again.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param since version of the list seen by the client
+	 * @param filter filter of statistics
+	 * @throws IOException fail to render the changes
+	 */
+	private void changes(HttpServletRequest request, HttpServletResponse response, long since,
+			Predicate<StatisticsRequest> filter) throws IOException {
+		long version = reserved.getVersion();
+		Set<String> ids = reserved.changedSince(since);
+		boolean html = request.getParameter("html") != null;
+		StringBuilder out = new StringBuilder().append("{\"version\":").append(version)
+				.append(",\"reload\":").append(ids == null)
+				.append(",\"changed\":[");
+		List<String> removed = new ArrayList<>();
+		boolean first = true;
+		for (String id : ids == null ? Collections.<String>emptySet() : ids) {
+			StatisticsRequest work = reserved.get(id);
+			if (work == null || !filter.test(work)) {
+				removed.add(id);
+				continue;
+			}
+			if (!first) {
+				out.append(',');
+			}
+			first = false;
+			RequestList.appendJson(out, work);
+			if (html) {
+				StringWriter row = new StringWriter();
+				try (PrintWriter writer = new PrintWriter(row)) {
+					RequestList.render(writer, work);
+				}
+				// reopen the object to add the row rendered in HTML
+				out.setLength(out.length() - 1);
+				out.append(",\"html\":");
+				Json.appendString(out, row.toString());
+				out.append('}');
+			}
+		}
+		out.append("],\"removed\":[");
+		for (int i = 0; i < removed.size(); i++) {
+			Json.appendString(i == 0 ? out : out.append(','), removed.get(i));
+		}
+		out.append("]}");
+		write(response, MediaType.APPLICATION_JSON, out);
+	}
+
+	/**
+	 * Get the filter of statistics by substrings of {@code location} and {@code query}.
+	 * @param request request object
+	 * @return filter passing all statistics if neither is specified
+	 */
+	private static Predicate<StatisticsRequest> filterOf(HttpServletRequest request) {
+		String location = request.getParameter("location");
+		String query = request.getParameter("query");
+		Predicate<StatisticsRequest> filter = work -> true;
+		if (location != null && !location.isEmpty()) {
+			filter = filter.and(work -> String.valueOf(work.getLocation()).contains(location));
+		}
+		if (query != null && !query.isEmpty()) {
+			filter = filter.and(work -> String.valueOf(work.getQuery()).contains(query));
+		}
+		return filter;
+	}
+
+	/**
+	 * Build the query string of a page of the list.
+	 * @param location filter of locations
+	 * @param query filter of queries
+	 * @param after cursor of the page, {@code null} for the first page
+	 * @return query string without {@code ?}
+	 */
+	private static String pagingOf(String location, String query, String after)
+			throws UnsupportedEncodingException {
+		StringBuilder parameters = new StringBuilder()
+				.append("location=").append(URLEncoder.encode(location, UTF_8.name()))
+				.append("&query=").append(URLEncoder.encode(query, UTF_8.name()));
+		if (after != null) {
+			parameters.append("&after=").append(URLEncoder.encode(after, UTF_8.name()));
+		}
+		return parameters.toString();
+	}
+
+	/**
+	 * Write a text entity to {@code response}.
+	 * @param response response object
+	 * @param type media type of the entity
+	 * @param entity the entity
+	 * @throws IOException fail to write the entity
+	 */
+	private static void write(HttpServletResponse response, String type, CharSequence entity)
+			throws IOException {
+		response.setContentType(type);
+		response.setCharacterEncoding(UTF_8.name());
+		try (PrintWriter out = response.getWriter()) {
+			out.append(entity);
+		}
+	}
+
 	/**
 	 * Reserve a statistics and record its ID.
+	 * <p>Without {@code query}, the statistics of all MBeans listed by {@code MBeanServer} are reserved.
+	 * The listing is cached per location, so that reserving the same location again
+	 * adds only the MBeans which have appeared and retires the MBeans which have disappeared.</p>
 	 * @param request request object
 	 * @param response response object
 	 */
@@ -175,11 +549,17 @@ public class RestClientController extends HttpServlet {
 		work.setQuery("/");
 		work.setUser(request.getParameter("user"));
 		work.setPassword(request.getParameter("password"));
+		work.setAttributes(NameFilter.of(patternsOf(request, "attributes", "[,\\r\\n]+"),
+				patternsOf(request, "excludeAttributes", "[,\\r\\n]+")));
 
-		try (Response obtained = createInvocation(work).get()) {
+		try {
+			Discovery found = discovery.discover(work);
 			String query = request.getParameter("query");
-			if (query.isEmpty()) {
-				reserve(work, obtained.readEntity(BEANS));
+			if (query == null || query.isEmpty()) {
+				NameFilter beans = NameFilter.of(patternsOf(request, "include", "[\\r\\n]+"),
+						patternsOf(request, "exclude", "[\\r\\n]+"));
+				reserve(work, found, beans.getIncludes().isEmpty()
+						? beans.and(name -> NAME_PATTERN.matcher(name).matches()) : beans);
 			} else {
 				work.setQuery(query);
 				work.setStatus(StatisticsRequest.STARTABLE);
@@ -193,23 +573,44 @@ public class RestClientController extends HttpServlet {
 			reserved.put(work.getId(), work);
 		}
 
+		rebalance();
+		snapshot.changed();
 		refresh(request, response);
 	}
 
 	/**
-	 * Reserve all statistics listed by {@code MBeanServer}.
+	 * Reserve the statistics of MBeans listed by {@code MBeanServer}, which are not reserved yet,
+	 * and retire the statistics of MBeans which have disappeared unless they have been started.
 	 * @param base {@code StatisticsRequest} represents basic information
-	 * @param beans list of metadata for {@code MBean}
+	 * @param found names of MBeans with the difference from the previous listing
+	 * @param beans filter of names of MBeans to be reserved
 	 */
-	private void reserve(StatisticsRequest base, List<ManagedObject> beans) {
-		for (ManagedObject target : beans) {
-			String query = target.getObjectName();
-			if (NAME_PATTERN.matcher(query).matches()) {
-				StatisticsRequest work = new StatisticsRequest();
+	private void reserve(StatisticsRequest base, Discovery found, Predicate<String> beans) {
+		Map<String, StatisticsRequest> existing = new HashMap<>();
+		for (StatisticsRequest work : reserved.values()) {
+			if (isSameTarget(base, work)) {
+				existing.put(work.getQuery(), work);
+			}
+		}
+
+		for (String name : found.getRemoved()) {
+			StatisticsRequest work = existing.get(name.concat("/attributes"));
+			if (work != null && work.getStatus() == StatisticsRequest.STARTABLE) {
+				reserved.remove(work.getId());
+				logger.info(() -> work.getId() + ": " + name + " has disappeared.");
+			}
+		}
+
+		for (String query : found.getNames()) {
+			if (beans.test(query) && !existing.containsKey(query.concat("/attributes"))) {
+				// the same MBean has the same ID on every member, which determines its owner
+				StatisticsRequest work = new StatisticsRequest(UUID.nameUUIDFromBytes(
+						(base.getLocation() + ' ' + base.getUser() + ' ' + query).getBytes(UTF_8)).toString());
 				work.setLocation(base.getLocation());
 				work.setQuery(query.concat("/attributes"));
 				work.setUser(base.getUser());
 				work.setPassword(base.getPassword());
+				work.setAttributes(base.getAttributes());
 				work.setStatus(StatisticsRequest.STARTABLE);
 
 				reserved.put(work.getId(), work);
@@ -218,117 +619,853 @@ public class RestClientController extends HttpServlet {
 	}
 
 	/**
-	 * Start to gathering the statistics.
+	 * Collect patterns from all values of a parameter.
 	 * @param request request object
-	 * @param response response object
-	 * @param id ID of statistics to monitor
+	 * @param name name of the parameter
+	 * @param delimiter regular expression of the delimiter of patterns in a value
+	 * @return patterns, which may be blank
 	 */
-	protected void monitor(HttpServletRequest request, HttpServletResponse response, String id) {
-		reserved.get(id).setStatus(StatisticsRequest.STARTED);
+	private List<String> patternsOf(HttpServletRequest request, String name, String delimiter) {
+		List<String> patterns = new ArrayList<>();
+		for (String value : ofNullable(request.getParameterValues(name)).orElse(new String[0])) {
+			patterns.addAll(NameFilter.split(value, delimiter));
+		}
+		return patterns;
+	}
 
-		long start = System.currentTimeMillis();
-		AtomicBoolean verified = new AtomicBoolean();
-		long initial = ofNullable(request.getParameter("initial"))
-				.map(Long::parseLong).orElse(15L) * 1000L;
-		long period = ofNullable(request.getParameter("period"))
-				.map(Long::parseLong).orElse(30L) * 1000L;
+	/**
+	 * Determine whether two requests target the same location with the same credentials.
+	 * @param left a request
+	 * @param right another request
+	 * @return {@code true} if they target the same location with the same credentials
+	 */
+	private boolean isSameTarget(StatisticsRequest left, StatisticsRequest right) {
+		return Objects.equals(left.getLocation(), right.getLocation())
+				&& Objects.equals(left.getUser(), right.getUser())
+				&& Objects.equals(left.getPassword(), right.getPassword());
+	}
 
-		AsyncContext context = createAsyncContext(request, response, id);
-		RunnableFuture<?> task = new FutureTask<>(() -> {
-			int remains = ofNullable(request.getParameter("times"))
-					.map(Integer::parseInt).filter(value -> value >= 0).orElse(Integer.MAX_VALUE);
-			int attempts = remains;
-			logger.info(() -> String.valueOf(attempts).concat(" attempts start"));
+	/**
+	 * Reserve and start a set of statistics at once, polled on the same ticks under one schedule.
+	 * <p>The body is a JSON object such as
+	 * {@code {"location":"...","user":"...","password":"...","include":["..."],"period":10,"times":60}}.
+	 * The MBeans are named by {@code queries}, or else selected from the MBeans listed by {@code MBeanServer}
+	 * with {@code include} and {@code exclude} as the form of reservation does.
+	 * {@code attributes}, {@code excludeAttributes}, {@code initial}, {@code period}, {@code times}
+	 * and {@code derive} are shared by all statistics, whose intervals are not adapted
+	 * so that their samples stay aligned.</p>
+	 * <p>The response is {@code 201 Created} with the ID of the set, by which the samples of all statistics
+	 * are streamed as one wide stream and all statistics are finished at once,
+	 * and the IDs of the statistics, each of which is also available by itself.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @throws IOException fail to read the body or to write the response
+	 */
+	protected void bundle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		StatisticsRequest base = new StatisticsRequest();
+		Map<String, String> parameters;
+		List<String> queries;
+		NameFilter beans;
+		List<Expression> derived;
+		try (JsonReader reader = javax.json.Json.createReader(request.getReader())) {
+			JsonObject body = reader.readObject();
+			base.setLocation(textOf(body, "location"));
+			base.setQuery("/");
+			base.setUser(textOf(body, "user"));
+			base.setPassword(textOf(body, "password"));
+			base.setAttributes(NameFilter.of(stringsOf(body, "attributes"), stringsOf(body, "excludeAttributes")));
+			parameters = startParametersOf(name -> textOf(body, name));
+			base.getParameters().putAll(parameters);
+			if (base.getLocation() == null || base.getLocation().isEmpty()) {
+				throw new IllegalArgumentException("location is required.");
+			}
+			derived = derivedOf(parameters);
+			queries = stringsOf(body, "queries");
+			beans = NameFilter.of(stringsOf(body, "include"), stringsOf(body, "exclude"));
+		} catch (JsonException | ClassCastException | IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
 
-			PrintWriter out;
+		if (queries.isEmpty()) {
+			Discovery found;
 			try {
-				out = response.getWriter();
-			} catch (IOException e) {
-				logger.log(Level.SEVERE, e,
-						() -> "Cannot initialize response: ".concat(e.toString()));
-				complete(context, id);
+				found = discovery.discover(base);
+			} catch (ProcessingException e) {
+				logger.log(Level.SEVERE, e, () -> base.getLocation() + ": " + e.getLocalizedMessage());
+				response.sendError(HttpServletResponse.SC_BAD_GATEWAY, e.getLocalizedMessage());
 				return;
 			}
+			Predicate<String> filter = beans.getIncludes().isEmpty()
+					? beans.and(name -> NAME_PATTERN.matcher(name).matches()) : beans;
+			queries = found.getNames().stream().filter(filter).sorted().collect(Collectors.toList());
+		}
+		if (queries.isEmpty()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "No MBean is selected.");
+			return;
+		}
 
-			Builder endpoint = createInvocation(reserved.get(id));
+		String id = UUID.randomUUID().toString();
+		List<StatisticsRequest> works = new ArrayList<>();
+		for (String query : queries) {
+			String name = query.endsWith("/attributes") ? query.substring(0, query.length() - 11) : query;
+			StatisticsRequest work = new StatisticsRequest();
+			work.setLocation(base.getLocation());
+			work.setQuery(name.concat("/attributes"));
+			work.setUser(base.getUser());
+			work.setPassword(base.getPassword());
+			work.setAttributes(base.getAttributes());
+			work.getParameters().putAll(parameters);
+			work.getParameters().put("adaptive", "1");
+			work.getParameters().put("bundle", id);
+			work.getParameters().put("member", String.valueOf(works.size()));
+			works.add(work);
+		}
+		Bundle bundle = register(id, works);
 
-			long next = start + initial;
-			if (!untill(context, next, id)) {
-				return;
+		// all statistics start at the same time, so that they share the ticks
+		long first = firstOf(base);
+		List<PollingTask> tasks = new ArrayList<>();
+		for (int i = 0; i < works.size(); i++) {
+			StatisticsRequest work = works.get(i);
+			reserved.put(work.getId(), work);
+			synchronized (work) {
+				Channel channel = open(work);
+				channel.subscribe(bundle.getStream().member(i), 0);
+				tasks.add(start(work, DerivedColumns.of(derived, channel), channel, first));
 			}
+		}
+		tasks.forEach(PollingTask::start);
+		snapshot.changed();
+		logger.info(() -> works.size() + " tasks are scheduled for " + id);
+
+		String path = request.getContextPath() + request.getServletPath() + '/' + id;
+		StringBuilder json = new StringBuilder(128 + works.size() * 160).append("{\"id\":");
+		Json.appendString(json, id);
+		json.append(",\"stream\":");
+		Json.appendString(json, path);
+		json.append(",\"finish\":");
+		Json.appendString(json, path.concat("/finished"));
+		json.append(",\"statistics\":[");
+		for (int i = 0; i < works.size(); i++) {
+			json.append(i == 0 ? "{\"id\":" : ",{\"id\":");
+			Json.appendString(json, works.get(i).getId());
+			json.append(",\"query\":");
+			Json.appendString(json, works.get(i).getQuery());
+			json.append('}');
+		}
+		json.append("]}");
+		response.setStatus(HttpServletResponse.SC_CREATED);
+		response.setHeader(HttpHeaders.LOCATION, path);
+		write(response, MediaType.APPLICATION_JSON, json);
+	}
+
+	/**
+	 * Get a member of a JSON object as text.
+	 * @param object JSON object
+	 * @param name name of the member
+	 * @return the string, or the text of any other value such as a number, {@code null} if it is absent
+	 */
+	private static String textOf(JsonObject object, String name) {
+		JsonValue value = object.get(name);
+		if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+			return null;
+		}
+		return value instanceof JsonString ? ((JsonString) value).getString() : value.toString();
+	}
+
+	/**
+	 * Get a member of a JSON object as a list of strings.
+	 * @param object JSON object
+	 * @param name name of the member, whose value is an array of strings
+	 * @return the strings, empty if it is absent
+	 */
+	private static List<String> stringsOf(JsonObject object, String name) {
+		JsonArray array = object.getJsonArray(name);
+		if (array == null) {
+			return Collections.emptyList();
+		}
+		return array.getValuesAs(JsonString.class).stream()
+				.map(JsonString::getString).collect(Collectors.toList());
+	}
+
+	/**
+	 * Subscribe to the statistics, starting to gather it unless it has been started.
+	 * <p>The statistics is polled once however many clients subscribe to it.
+	 * A client subscribing late receives the header line and the latest {@code recent} samples
+	 * kept in memory, followed by the samples polled after that.
+	 * A client sending {@code Last-Event-ID} receives the samples kept after that time instead.</p>
+	 * <p>The samples are rendered as CSV, Server-Sent Events or NDJSON
+	 * according to {@code Accept} header.</p>
+	 * <p>The ID of a set of statistics started at once streams the rows joining the samples
+	 * of all statistics at every tick instead.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param id ID of statistics to monitor
+	 * @throws IOException fail to initialize response
+	 */
+	protected void monitor(HttpServletRequest request, HttpServletResponse response, String id)
+			throws IOException {
+		Format format = Format.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+		Bundle bundle = bundles.get(id);
+		if (bundle != null) {
+			AsyncContext context = createAsyncContext(request, response, id, format);
+			response.flushBuffer();
+			Subscriber subscriber = new StreamSubscriber(
+					hub.output(context, new Counter(), new Histogram()), format, new Histogram());
+			context.addListener(unsubscribing(() -> bundle.getStream().unsubscribe(subscriber)));
+			if (!bundle.getStream().subscribe(subscriber)) {
+				context.complete();
+			}
+			logger.info(() -> "Subscribed to ".concat(id));
+			return;
+		}
+		StatisticsRequest work = reserved.get(id);
+		if (work == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		Optional<Long> after = lastEventIdOf(request);
+		int recent;
+		Map<String, String> parameters;
+		List<Expression> derived;
+		try {
+			recent = ofNullable(request.getParameter("recent")).map(Integer::parseInt).orElse(0);
+			parameters = startParametersOf(request::getParameter);
+			derived = derivedOf(parameters);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
 
-			while (remains > 0) {
-				int current = remains;
-				logger.info(() -> String.valueOf(current).concat(" remains"));
+		AsyncContext context = createAsyncContext(request, response, id, format);
+		response.flushBuffer();
+		RequestMeters meters = metrics.of(work);
+		Subscriber subscriber = new StreamSubscriber(
+				hub.output(context, meters.getSent(), meters.getWriteTime()), format, meters.getFormatTime());
 
-				try (Response obtained = endpoint.get()) {
-					String data = format(next, obtained, verified);
-					logger.info(() -> id.concat(": ").concat(data));
-					out.print(data);
-					out.flush();
-				} catch (RuntimeException e) {
-					logger.log(Level.WARNING, e, () -> "Cannot process: ".concat(e.toString()));
+		Channel channel;
+		PollingTask task = null;
+		synchronized (work) {
+			Optional<Channel> running = hub.get(id);
+			if (running.isPresent()) {
+				channel = running.get();
+			} else {
+				work.getParameters().putAll(parameters);
+				channel = open(work);
+				task = start(work, DerivedColumns.of(derived, channel), channel, firstOf(work));
+			}
+		}
+
+		subscribe(context, channel, subscriber, recent, after);
+		if (task != null) {
+			task.start();
+			snapshot.changed();
+			logger.info(() -> "Task is scheduled for ".concat(id));
+		} else {
+			logger.info(() -> "Subscribed to ".concat(id));
+		}
+	}
+
+	/**
+	 * Open the channel publishing the samples of a statistics.
+	 * @param work request for a statistics to be polled
+	 * @return the opened channel
+	 */
+	private Channel open(StatisticsRequest work) {
+		String id = work.getId();
+		int attempts = attemptsOf(work);
+		RingSeries series = store.open(id);
+		SampleSink sink = series;
+		if (history.isStored(attempts)) {
+			sink = sink.andThen(history.open(id));
+		}
+		Optional<Percentiles> percentiles = sketches.open(id, work.getParameters().get("percentiles"));
+		if (percentiles.isPresent()) {
+			sink = sink.andThen(percentiles.get());
+		}
+		sink = sink.andThen(latest.open(work));
+		return hub.open(id, series, sink);
+	}
+
+	/**
+	 * Create the task polling a statistics and publishing the samples to the channel.
+	 * @param work request for a statistics to be polled, with the parameters to start it
+	 * @param sink destination of the samples, which leads to the channel
+	 * @param channel channel to which the samples and gaps are published
+	 * @param first the time in milliseconds before which no poll is performed
+	 * @return created task, which is not started yet
+	 */
+	private PollingTask start(StatisticsRequest work, SampleSink sink, Channel channel, long first) {
+		String id = work.getId();
+		work.setStatus(StatisticsRequest.STARTED);
+		reserved.changed(id);
+
+		AttributeDecoder decoder = new AttributeDecoder();
+		Row row = new Row();
+		long period = periodOf(work);
+		int attempts = attemptsOf(work);
+		logger.info(() -> String.valueOf(attempts).concat(" attempts start"));
+
+		// attributes are projected by RESTConnector once their names are determined
+		NameFilter attributes = work.getAttributes();
+		ProjectedColumns projection = attributes.isAll() ? null : new ProjectedColumns(attributes, sink);
+		SampleSink projected = projection == null ? sink : projection;
+		List<String> literals = attributes.getLiterals();
+		AtomicReference<List<String>> names = new AtomicReference<>(literals);
+		AtomicBoolean narrowed = new AtomicBoolean(projection == null || !literals.isEmpty());
+
+		AdaptiveInterval interval = new AdaptiveInterval(period, ofNullable(work.getParameters().get("adaptive"))
+				.map(Integer::parseInt).orElseGet(() -> Settings.getInt(ENV_ADAPTIVE, 1)));
+		work.setInterval(interval);
+		RequestMeters meters = metrics.of(work);
+
+		PollingTask task = new PollingTask(scheduler, id, groupOf(work, period), period,
+				first, attempts, interval, (next, remains) -> {
+			logger.info(() -> String.valueOf(remains).concat(" remains"));
+
+			long issued = System.currentTimeMillis();
+			long start = System.nanoTime();
+			List<String> requested = names.get();
+			CompletableFuture<Void> poll = engine.poll(work, () -> engine.request(work, requested),
+					obtained -> {
+				meters.getPollTime().since(start);
+				if (publish(next, obtained, decoder, row, projected, channel, meters)) {
+					interval.observe(row, System.currentTimeMillis() - issued);
 				}
+				if (!narrowed.get() && !projection.getNames().isEmpty()) {
+					narrowed.set(true);
+					names.set(projection.getNames());
+				}
+				logger.fine(() -> id + ": " + next + " is published to "
+						+ channel.getSubscribers() + " subscribers");
+			});
+			poll.whenComplete((nothing, e) -> {
+				if (e != null && !poll.isCancelled()) {
+					meters.getGaps().increment();
+					channel.gap(next, gapOf(e));
+				}
+			});
+			return poll;
+		}, () -> complete(id));
+		executor.attach(id, task);
+		return task;
+	}
+
+	/**
+	 * Subscribe to a channel with the response of an asynchronous request.
+	 * <p>The subscription ends when the request is completed, either by the client
+	 * or by closing the channel.</p>
+	 * @param context context of the asynchronous request
+	 * @param channel channel to subscribe to
+	 * @param subscriber subscriber writing to the response
+	 * @param recent maximum number of the latest samples to be replayed
+	 * @param after time in milliseconds of the last sample received by the client, if any
+	 */
+	private void subscribe(AsyncContext context, Channel channel, Subscriber subscriber,
+			int recent, Optional<Long> after) {
+		context.addListener(unsubscribing(() -> channel.unsubscribe(subscriber)));
+		boolean subscribed = after.isPresent()
+				? channel.resume(subscriber, after.get())
+				: channel.subscribe(subscriber, recent);
+		if (!subscribed) {
+			context.complete();
+		}
+	}
+
+	/**
+	 * Create the listener ending a subscription when an asynchronous request is completed.
+	 * @param unsubscribe action removing the subscriber
+	 * @return the listener
+	 */
+	private static AsyncListener unsubscribing(Runnable unsubscribe) {
+		return new AsyncListener() {
+			@Override
+			public void onComplete(AsyncEvent event) {
+				unsubscribe.run();
+			}
+
+			@Override
+			public void onTimeout(AsyncEvent event) {
+				unsubscribe.run();
+			}
+
+			@Override
+			public void onError(AsyncEvent event) {
+				unsubscribe.run();
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+				// the listener is not registered again
+			}
+		};
+	}
+
+	/**
+	 * Get the ID of the last event received by a client reconnecting to Server-Sent Events,
+	 * which is the time of the sample.
+	 * @param request request object
+	 * @return time in milliseconds of the last sample, or empty if it is not a valid ID
+	 */
+	private Optional<Long> lastEventIdOf(HttpServletRequest request) {
+		try {
+			return ofNullable(request.getHeader("Last-Event-ID")).map(String::trim).map(Long::valueOf);
+		} catch (NumberFormatException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Collect and validate the parameters with which a statistics is started.
+	 * @param values function getting the value of a parameter by name, {@code null} if it is not specified
+	 * @return the parameters specified
+	 * @throws IllegalArgumentException any parameter is not valid
+	 */
+	private static Map<String, String> startParametersOf(Function<String, String> values) {
+		Map<String, String> parameters = new HashMap<>();
+		for (String name : START_PARAMETERS) {
+			ofNullable(values.apply(name)).ifPresent(value -> parameters.put(name, value));
+		}
+		checkSchedule(parameters.get("initial"), parameters.get("period"));
+		ofNullable(parameters.get("times")).ifPresent(Integer::parseInt);
+		ofNullable(parameters.get("adaptive")).ifPresent(Integer::parseInt);
+		return parameters;
+	}
 
-				next += period;
-				if ((--remains > 0) && !untill(context, next, id)) {
-					return;
+	/**
+	 * Parse the expressions of derived columns of a statistics.
+	 * @param parameters parameters with which the statistics is started
+	 * @return expressions of {@code derive}, or those of {@value #ENV_DERIVE} without it
+	 * @throws IllegalArgumentException the expressions are not valid
+	 */
+	private static List<Expression> derivedOf(Map<String, String> parameters) {
+		return Expression.parse(ofNullable(parameters.get("derive"))
+				.orElseGet(() -> Settings.getEnvValue(ENV_DERIVE, "")));
+	}
+
+	/**
+	 * Check the schedule of a statistics to be started.
+	 * @param initial value of {@code initial} parameter, {@code null} if it is not specified
+	 * @param period value of {@code period} parameter, {@code null} if it is not specified
+	 * @throws IllegalArgumentException {@code initial} is negative or {@code period} is not positive
+	 */
+	private static void checkSchedule(String initial, String period) {
+		if (initial != null && Long.parseLong(initial) < 0) {
+			throw new IllegalArgumentException("initial should not be negative: " + initial);
+		}
+		if (period != null && Long.parseLong(period) <= 0) {
+			throw new IllegalArgumentException("period should be positive: " + period);
+		}
+	}
+
+	/**
+	 * Get the time of the first poll of a statistics started now.
+	 * @param work request for a statistics with the parameters to start it
+	 * @return the time in milliseconds, {@code initial} seconds after now
+	 */
+	private long firstOf(StatisticsRequest work) {
+		return System.currentTimeMillis() + ofNullable(work.getParameters().get("initial"))
+				.map(Long::parseLong).orElse(15L) * 1000L;
+	}
+
+	/**
+	 * Get the tick on which a statistics continues polling, skipping the ticks missed.
+	 * @param next the time in milliseconds of the next tick when the statistics was polled last
+	 * @param period interval between polls in milliseconds
+	 * @param now the current time in milliseconds
+	 * @return {@code next} if it has not passed, or the first tick after {@code now} otherwise
+	 */
+	private static long tickOf(long next, long period, long now) {
+		return next < now ? next + (now - next + period - 1) / period * period : next;
+	}
+
+	/**
+	 * Get the interval between polls of a statistics.
+	 * @param work request for a statistics with the parameters to start it
+	 * @return the interval in milliseconds
+	 */
+	private long periodOf(StatisticsRequest work) {
+		return ofNullable(work.getParameters().get("period"))
+				.map(Long::parseLong).orElse(30L) * 1000L;
+	}
+
+	/**
+	 * Get the number of times a statistics is polled.
+	 * @param work request for a statistics with the parameters to start it
+	 * @return the number of times, {@code Integer.MAX_VALUE} for polling until it is finished
+	 */
+	private int attemptsOf(StatisticsRequest work) {
+		return ofNullable(work.getParameters().get("times"))
+				.map(Integer::parseInt).filter(value -> value >= 0).orElse(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Render the samples kept for the statistics as CSV.
+	 * <p>Samples are selected by the latest {@code last} samples, or by the range of time
+	 * from {@code from} to {@code to} in milliseconds, downsampled if {@code step} in seconds
+	 * is specified.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param id ID of statistics to render
+	 * @throws IOException fail to render the samples
+	 */
+	protected void series(HttpServletRequest request, HttpServletResponse response, String id)
+			throws IOException {
+		Optional<RingSeries> found = store.get(id);
+		if (!found.isPresent()) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		RingSeries series = found.get();
+		Frame frame;
+		try {
+			Optional<Integer> last = ofNullable(request.getParameter("last")).map(Integer::parseInt);
+			long from = ofNullable(request.getParameter("from")).map(Long::parseLong).orElse(0L);
+			long to = ofNullable(request.getParameter("to"))
+					.map(Long::parseLong).orElse(Long.MAX_VALUE);
+			long step = ofNullable(request.getParameter("step"))
+					.map(Long::parseLong).orElse(0L) * 1000L;
+			if (last.isPresent()) {
+				frame = series.last(last.get());
+			} else if (step > 0) {
+				frame = series.downsample(from, to, step);
+			} else {
+				frame = series.range(from, to);
+			}
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
+
+		response.setContentType("text/csv");
+		response.setCharacterEncoding(UTF_8.name());
+		try (PrintWriter out = response.getWriter()) {
+			StringBuilder lines = new StringBuilder(1024);
+			Csv.appendHeader(lines, frame.getLayout());
+			Row row = new Row();
+			for (int i = 0; i < frame.size(); i++) {
+				Csv.appendLine(lines, frame.getTimestamp(i), frame.load(i, row));
+				if (lines.length() > 8192) {
+					out.append(lines);
+					lines.setLength(0);
 				}
 			}
+			out.append(lines);
+		}
+	}
 
-			complete(context, id);
-		}, id);
-		context.start(task);
-		executor.attach(id, task);
-		logger.info(() -> "Task is scheduled for ".concat(id));
+	/**
+	 * Replay the samples stored for the statistics as CSV.
+	 * <p>Samples are selected by the range of time from {@code from} to {@code to}
+	 * in milliseconds. The header line is rendered whenever the layout of attributes changes.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param id ID of statistics to replay
+	 * @throws IOException fail to read or render the samples
+	 */
+	protected void history(HttpServletRequest request, HttpServletResponse response, String id)
+			throws IOException {
+		long from;
+		long to;
+		try {
+			from = ofNullable(request.getParameter("from")).map(Long::parseLong).orElse(0L);
+			to = ofNullable(request.getParameter("to")).map(Long::parseLong).orElse(Long.MAX_VALUE);
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
+
+		response.setContentType("text/csv");
+		response.setCharacterEncoding(UTF_8.name());
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+				"attachment; filename=\"" + id + ".csv\"");
+		PrintWriter out = response.getWriter();
+		StringBuilder lines = new StringBuilder(8192);
+		Layout[] current = { null };
+		boolean found = history.replay(id, from, to, (timestamp, layout, values) -> {
+			if (layout != current[0]) {
+				Csv.appendHeader(lines, layout);
+				current[0] = layout;
+			}
+			Csv.appendLine(lines, timestamp, values);
+			if (lines.length() > 8192) {
+				out.append(lines);
+				lines.setLength(0);
+			}
+		});
+
+		if (found) {
+			out.append(lines);
+			out.close();
+		} else {
+			response.reset();
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Render the percentiles of the statistics over the sliding and tumbling windows as JSON.
+	 * <p>The windows of the statistics listed in {@code merge} are merged by the names of attributes,
+	 * so that statistics of several locations can be aggregated.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param id ID of statistics to render
+	 * @throws IOException fail to render the percentiles
+	 */
+	protected void percentiles(HttpServletRequest request, HttpServletResponse response, String id)
+			throws IOException {
+		List<String> ids = new ArrayList<>();
+		ids.add(id);
+		ofNullable(request.getParameter("merge"))
+				.ifPresent(merged -> ids.addAll(Arrays.asList(merged.split(","))));
+
+		Map<String, Aggregate> aggregates = new TreeMap<>();
+		boolean found = false;
+		for (String target : ids) {
+			Optional<Percentiles> percentiles = sketches.get(target.trim());
+			if (percentiles.isPresent()) {
+				percentiles.get().mergeInto(aggregates);
+				found = true;
+			}
+		}
+		if (!found) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		response.setContentType(MediaType.APPLICATION_JSON);
+		response.setCharacterEncoding(UTF_8.name());
+		StringBuilder json = new StringBuilder(1024);
+		Aggregate.appendJson(json, sketches.getSpan(), aggregates);
+		try (PrintWriter out = response.getWriter()) {
+			out.append(json);
+		}
 	}
 
 	/**
 	 * Finish the statistics specified by {@code id}.
+	 * <p>The ID of a set of statistics started at once finishes all of them,
+	 * responding {@code 204 No Content} instead of the list.</p>
 	 * @param request request object
 	 * @param response response object
 	 * @param id ID of statistics to end
 	 */
 	protected void finish(HttpServletRequest request, HttpServletResponse response, String id) {
+		Bundle bundle = bundles.remove(id);
+		if (bundle != null) {
+			bundle.getWorks().forEach(work -> discard(work.getId()));
+			snapshot.changed();
+			response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			logger.info(() -> id.concat(" is finished."));
+			return;
+		}
+		discard(id);
+
+		snapshot.changed();
+		refresh(request, response);
+	}
+
+	/**
+	 * Cancel a statistics and discard everything kept for it.
+	 * @param id ID of statistics
+	 */
+	private void discard(String id) {
 		executor.detach(id, true);
 		reserved.remove(id);
+		metrics.remove(id);
+		latest.remove(id);
+		store.discard(id);
+		sketches.discard(id);
+	}
 
-		refresh(request, response);
+	/**
+	 * Accept a statistics handed over by another member, starting it again if it has been started.
+	 * <p>A statistics which has already been reserved is kept as it is.
+	 * A started statistics continues the polls remaining on the ticks following the last poll
+	 * of the previous owner, specified by {@code remains} and {@code next}.
+	 * The statistics is accepted only from the hosts of the members,
+	 * and its ID should be a UUID like those created by the collectors.</p>
+	 * @param request request object
+	 * @param response response object
+	 * @param id ID of statistics
+	 * @throws IOException fail to send error
+	 */
+	protected void accept(HttpServletRequest request, HttpServletResponse response, String id)
+			throws IOException {
+		if (!cluster.isMember(request.getRemoteAddr())) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Statistics are handed over only by members.");
+			return;
+		}
+		if (!isUuid(id)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "ID should be a UUID.");
+			return;
+		}
+		StatisticsRequest work;
+		try {
+			// keep the order in which requests have come first among the members
+			work = new StatisticsRequest(id, ofNullable(request.getParameter("requested"))
+					.map(Long::valueOf).orElseGet(System::currentTimeMillis));
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
+		work.setLocation(request.getParameter("location"));
+		work.setQuery(request.getParameter("query"));
+		work.setUser(request.getParameter("user"));
+		work.setPassword(request.getParameter("password"));
+		work.setAttributes(NameFilter.of(patternsOf(request, "attributes", "[\\r\\n]+"),
+				patternsOf(request, "excludeAttributes", "[\\r\\n]+")));
+		boolean started = String.valueOf(StatisticsRequest.STARTED).equals(request.getParameter("status"));
+		work.setStatus(StatisticsRequest.STARTABLE);
+		List<Expression> derived;
+		long first;
+		try {
+			Map<String, String> parameters = startParametersOf(request::getParameter);
+			derived = derivedOf(parameters);
+			Optional<Integer> remains = ofNullable(request.getParameter("remains")).map(Integer::valueOf);
+			if (started && remains.isPresent() && parameters.containsKey("times")) {
+				parameters.put("times", String.valueOf(remains.get()));
+			}
+			work.getParameters().putAll(parameters);
+			Optional<Long> next = ofNullable(request.getParameter("next")).map(Long::valueOf);
+			first = next.isPresent() ? tickOf(next.get(), periodOf(work), System.currentTimeMillis())
+					: firstOf(work);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getLocalizedMessage());
+			return;
+		}
+
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+		if (reserved.putIfAbsent(id, work) != null || !started) {
+			snapshot.changed();
+			logger.info(() -> id.concat(" is handed over."));
+			return;
+		}
+		PollingTask task;
+		synchronized (work) {
+			Channel channel = open(work);
+			task = start(work, DerivedColumns.of(derived, channel), channel, first);
+		}
+		task.start();
+		snapshot.changed();
+		logger.info(() -> id.concat(" is handed over and started again."));
 	}
 
 	/**
-	 * Create JAX-RS client with dummy {@code TrustManager} and dummy {@code HostnameVerifier}.
-	 * @return JAX-RS client
+	 * Determine whether an ID is a UUID in the canonical form.
+	 * @param id ID of statistics
+	 * @return {@code true} if it is the string representation of a UUID
 	 */
-	private Client createClient() {
+	private static boolean isUuid(String id) {
 		try {
-			TrustManager[] trustManagers = { DUMMY_TRUST_MANAGER };
-			SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-			sslContext.init(null, trustManagers, null);
-			return ClientBuilder.newBuilder()
-					.sslContext(sslContext)
-					.hostnameVerifier(DUMMY_HOSTNAME_VERIFIER)
-					.build();
-		} catch (KeyManagementException | NoSuchAlgorithmException e) {
-			logger.log(Level.WARNING, e,
-					() -> "Using default SSLContext: ".concat(e.toString()));
-			return ClientBuilder.newClient();
+			return UUID.fromString(id).toString().equals(id);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Hand the statistics owned by other members over to them.
+	 * <p>Statistics are handed over one after another without waiting for the responses,
+	 * and requests for a statistics being handed over are redirected to its owner.
+	 * A started statistics stops polling here after its owner has accepted it,
+	 * and its subscribers are disconnected so that they reconnect to the owner.
+	 * A statistics failing to be handed over is kept until the next reading of members.</p>
+	 */
+	private void rebalance() {
+		unbalanced = false;
+		CompletableFuture<Void> handed = CompletableFuture.completedFuture(null);
+		for (StatisticsRequest work : reserved.values()) {
+			// a set of statistics started at once is polled together on the collector starting it
+			Optional<String> owner = cluster.ownerOf(work.getId());
+			if (!owner.isPresent() || work.getStatus() == StatisticsRequest.INVALID
+					|| work.getParameters().containsKey("bundle") || !handing.add(work.getId())) {
+				continue;
+			}
+			handed = handed.exceptionally(e -> null).thenCompose(previous -> handOver(work, owner.get()));
 		}
 	}
 
+	/**
+	 * Hand a statistics over to its owner, removing it here once the owner has accepted it.
+	 * @param work statistics being handed over
+	 * @param owner base URL of the owner
+	 * @return stage completed when the owner has responded
+	 */
+	private CompletionStage<Void> handOver(StatisticsRequest work, String owner) {
+		CompletionStage<Void> accepted;
+		try {
+			Form form = new Form()
+					.param("requested", String.valueOf(work.getRequested()))
+					.param("location", work.getLocation())
+					.param("query", work.getQuery())
+					.param("user", work.getUser())
+					.param("password", work.getPassword())
+					.param("attributes", String.join("\n", work.getAttributes().getIncludes()))
+					.param("excludeAttributes", String.join("\n", work.getAttributes().getExcludes()));
+			synchronized (work) {
+				form.param("status", String.valueOf(work.getStatus()));
+				work.getParameters().forEach(form::param);
+				// the owner continues the remaining polls on the same ticks like warm restart
+				Optional<PollingTask> task = executor.get(work.getId())
+						.filter(PollingTask.class::isInstance).map(PollingTask.class::cast);
+				if (task.isPresent()) {
+					long next = store.get(work.getId()).map(series -> series.last(1))
+							.filter(last -> last.size() > 0).map(last -> last.getTimestamp(0) + periodOf(work))
+							.orElse(0L);
+					form.param("remains", String.valueOf(task.get().getRemains()))
+							.param("next", String.valueOf(Math.max(next, task.get().getFirst())));
+				}
+			}
+			accepted = cluster.handOver(owner, work.getId(), form);
+		} catch (RuntimeException e) {
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			accepted = failed;
+		}
+		return accepted.handle((result, e) -> {
+			if (e == null) {
+				synchronized (work) {
+					reserved.remove(work.getId());
+					handing.remove(work.getId());
+					executor.detach(work.getId(), true);
+					metrics.remove(work.getId());
+					latest.remove(work.getId());
+				}
+				snapshot.changed();
+				logger.info(() -> work.getId() + " is handed over to " + owner);
+			} else {
+				Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				logger.log(Level.WARNING, cause, () -> "Cannot hand " + work.getId()
+						+ " over to " + owner + ": " + cause.getLocalizedMessage());
+				handing.remove(work.getId());
+				unbalanced = true;
+			}
+			return null;
+		});
+	}
+
 	/**
 	 * Create context for Servlet asynchronous operation.
 	 * @param request request object
 	 * @param response response object
 	 * @param id ID of statistics to monitor
+	 * @param format format of the samples
 	 * @return {@code AsyncContext} represents the context for asynchronous operation
 	 */
 	private AsyncContext createAsyncContext(
-			HttpServletRequest request, HttpServletResponse response, String id) {
-		response.setContentType("text/csv");
+			HttpServletRequest request, HttpServletResponse response, String id, Format format) {
+		response.setContentType(format.getContentType());
 		response.setCharacterEncoding(UTF_8.name());
-		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
-				"attachment; filename=\"" + id + ".csv\"");
+		String fileName = format.getFileName(id);
+		if (fileName != null) {
+			response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+					"attachment; filename=\"" + fileName + "\"");
+		} else {
+			response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+		}
 
 		AsyncContext result = request.startAsync(request, response);
 		result.setTimeout(-1);
@@ -336,107 +1473,157 @@ public class RestClientController extends HttpServlet {
 	}
 
 	/**
-	 * Create a {@code Builder} instance for REST API invocation.
-	 * @param work request for a statistics to be invoked
-	 * @return {@code Builder} represents REST API invocation
+	 * Determine the key of the group whose members are polled at the same ticks.
+	 * @param work request for a statistics to be polled
+	 * @param period interval between polls in milliseconds
+	 * @return key of the group sharing a location, credentials and period,
+	 * and the set of statistics started at once if any
 	 */
-	private Builder createInvocation(StatisticsRequest work) {
-		StringBuilder buffer = new StringBuilder();
-		buffer.append(work.getUser()).append(':').append(work.getPassword());
-		String encoded = Base64.getUrlEncoder().encodeToString(buffer.toString().getBytes(UTF_8));
-		buffer.setLength(0);
-		buffer.append("Basic ").append(encoded);
-		String authorization = buffer.toString();
-
-		return client.target(work.getLocation().concat(work.getQuery()).replace(' ', '+'))
-				.request()
-				.accept(MediaType.APPLICATION_JSON)
-				.header(HttpHeaders.AUTHORIZATION, authorization);
+	private String groupOf(StatisticsRequest work, long period) {
+		StringBuilder group = new StringBuilder(work.getCredentialsKey()).append(' ').append(period);
+		ofNullable(work.getParameters().get("bundle")).ifPresent(bundle -> group.append(' ').append(bundle));
+		return group.toString();
 	}
 
 	/**
-	 * Format a statistic returned by RESTConnector.
+	 * Decode a statistic returned by RESTConnector, passing the values to the sink.
 	 * @param timestamp current time in milliseconds
 	 * @param obtained response including entity returned by RESTConnector
-	 * @param first flag determining the header line has not been rendered
-	 * @return a set of formated statistic
+	 * @param decoder decoder holding the layout of attributes of the statistic
+	 * @param row reusable row to which the values are decoded
+	 * @param sink destination of the values, which leads to the channel
+	 * @param channel channel to which a poll without values is published
+	 * @param meters meters of the statistics
+	 * @return {@code true} if a sample has been published, otherwise a gap has been published
 	 */
-	private String format(long timestamp, Response obtained, AtomicBoolean first) {
+	private boolean publish(long timestamp, Response obtained,
+			AttributeDecoder decoder, Row row, SampleSink sink, Channel channel, RequestMeters meters) {
+		if (obtained.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+			meters.getGaps().increment();
+			channel.gap(timestamp, "(HTTP " + obtained.getStatus() + ")");
+			return false;
+		}
 		if (!obtained.hasEntity()) {
-			return timestamp + ",(no contents)\r\n";
+			meters.getGaps().increment();
+			channel.gap(timestamp, "(no contents)");
+			return false;
 		}
 
-		List<StatEntry> values;
-		try {
-			values = obtained.readEntity(STATISTICS);
-
-			StringBuilder lines = new StringBuilder(1024);
-			if (!first.getAndSet(true)) {
-				String separator = "Time,";
-				for (StatEntry entry : values) {
-					lines.append(separator).append(entry.getName());
-					separator = ",";
-				}
-				lines.append("\r\n");
-			}
-
-			lines.append(timestamp);
-			for (StatEntry entry : values) {
-				lines.append(',').append(entry.getValue().getValue());
-			}
-			lines.append("\r\n");
-
-			return lines.toString();
-		} catch (ProcessingException e) {
-			return timestamp + ",(not started)\r\n";
+		long start = System.nanoTime();
+		try (InputStream in = new CountingInputStream(obtained.readEntity(InputStream.class),
+				meters.getReceived())) {
+			decoder.decode(in, row);
+			meters.getParseTime().since(start);
+			sink.accept(timestamp, decoder.getLayout(), row);
+			return true;
+		} catch (ProcessingException | IOException e) {
+			meters.getGaps().increment();
+			channel.gap(timestamp, "(invalid contents)");
+			return false;
 		}
 	}
 
 	/**
-	 * Render a request for statistics.
-	 * @param out {@code PrintWriter} to which the request is rendered
-	 * @param work request for a statistics to be rendered
+	 * Describe a poll failing without a response as the reason of a gap.
+	 * @param failure cause of the failure
+	 * @return short description of the cause
 	 */
-	private void render(PrintWriter out, StatisticsRequest work) {
-		if (work.getStatus() >= StatisticsRequest.STARTABLE) {
-			out.print("<ul class=\"active\">\r\n");
-		} else {
-			out.print("<ul class=\"inactive\">\r\n");
+	private static String gapOf(Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+				? failure.getCause() : failure;
+		for (Throwable e = cause; e != null; e = e.getCause()) {
+			if (e instanceof CircuitBreaker.OpenException) {
+				return "(circuit open)";
+			} else if (e instanceof SocketTimeoutException || e instanceof TimeoutException) {
+				return "(timeout)";
+			} else if (e instanceof ConnectException || e instanceof UnknownHostException) {
+				return "(unreachable)";
+			}
 		}
+		return "(failed)";
+	}
 
+	/**
+	 * Render the metrics of the connections to a location.
+	 * @param out destination of rendering
+	 * @param transport transport to a location
+	 */
+	private void render(PrintWriter out, Transport transport) {
+		out.print("<ul class=\"transport\">\r\n");
 		out.print("<li>");
-		out.print(work.getId());
+		out.print(transport.getLocation());
 		out.print("</li>\r\n");
+		out.print("<li>requests in flight ");
+		out.print(transport.getActive());
+		out.print(" (peak ");
+		out.print(transport.getPeak());
+		out.print("), TLS sessions ");
+		out.print(transport.getSessions());
+		out.print("</li>\r\n");
+		out.print("<li>requests ");
+		out.print(transport.getRequests());
+		out.print(", waiting ");
+		out.print(transport.getWaiting());
+		out.print(", waited ");
+		out.print(transport.getWaited());
+		out.print(" for ");
+		out.print(transport.getWaitTime());
+		out.print(" ms, retried ");
+		out.print(transport.getRetried());
+		out.print(", hedged ");
+		out.print(transport.getHedged());
+		out.print("</li>\r\n");
+		CircuitBreaker breaker = transport.getBreaker();
+		out.print("<li>circuit ");
+		out.print(breaker.getState().name().toLowerCase(Locale.ROOT));
+		out.print(", failures ");
+		out.print(breaker.getFailures());
+		out.print(", opened ");
+		out.print(breaker.getOpened());
+		out.print(" times</li>\r\n");
+		out.print("</ul>\r\n");
+	}
 
-		out.print("<li><form method=\"GET\" action=\"");
-		out.print(work.getId());
-		out.print("\" target=\"");
-		out.print(work.getId());
-		out.print("\" onsubmit=\"elements.start.disabled = true;\"");
-		if (work.getStatus() == StatisticsRequest.STARTABLE) {
-			out.print(" class=\"active\">");
-		} else {
-			out.print(" class=\"inactive\">");
+	/**
+	 * Start getting the first page of the statistics owned by another member.
+	 * @param member base URL of the member
+	 * @param parameters parameters of the list specifying the filter and the size of pages
+	 * @return future of HTML fragment rendering the list
+	 */
+	private Future<String> list(String member, Map<String, String> parameters) {
+		try {
+			return cluster.list(member, parameters);
+		} catch (ProcessingException e) {
+			CompletableFuture<String> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
 		}
-		out.print("initial(sec.)-period(sec.)-times ");
-		out.print("<input name=\"initial\" size=\"4\" value=\"15\">-");
-		out.print("<input name=\"period\" size=\"4\" value=\"30\">-");
-		out.print("<input name=\"times\" size=\"4\" value=\"-1\"> ");
-		out.print("<input type=\"submit\" name=\"start\" value=\"start\"> ");
-		out.print("</form>");
-
-		out.print("<form method=\"POST\" action=\"");
-		out.print(work.getId());
-		out.print("/finished\">");
-		out.print("&nbsp;<input type=\"submit\" value=\"finish\">");
-		out.print("</form></li>\r\n");
-
-		out.print("<li>");
-		out.print(work.getLocation());
-		out.print(work.getQuery());
-		out.print("</li>\r\n");
+	}
 
-		out.print("</ul>\r\n");
+	/**
+	 * Render the first page of the statistics owned by another member.
+	 * <p>A member which does not respond until the deadline is rendered as unreachable.</p>
+	 * @param out destination of rendering
+	 * @param member base URL of the member
+	 * @param fragment future of HTML fragment rendering the list
+	 * @param deadline the time in milliseconds until which the fragment is waited for
+	 */
+	private void render(PrintWriter out, String member, Future<String> fragment, long deadline) {
+		try {
+			out.print(fragment.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS));
+		} catch (ExecutionException | TimeoutException | InterruptedException e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			fragment.cancel(true);
+			logger.log(Level.FINE, e, () -> "Cannot list statistics of ".concat(member));
+			out.print("<ul class=\"inactive\">\r\n");
+			out.print("<li>");
+			out.print(member);
+			out.print("</li>\r\n");
+			out.print("<li>(unreachable)</li>\r\n");
+			out.print("</ul>\r\n");
+		}
 	}
 
 	/**
@@ -453,35 +1640,194 @@ public class RestClientController extends HttpServlet {
 		response.setHeader(HttpHeaders.LOCATION, location.toString());
 	}
 
-	private void complete(AsyncContext context, String id) {
-		context.complete();
+	private void complete(String id) {
+		hub.close(id);
 		logger.info(() -> id.concat(" finished."));
 		executor.detach(id, false);
 		reserved.remove(id);
+		metrics.remove(id);
+		latest.remove(id);
+		store.complete(id);
+		sketches.complete(id);
+		history.close(id);
+		snapshot.changed();
 	}
 
 	/**
-	 * Wait till the specified time, aborting as soon as possible if the task is interrupted.
-	 * @param context {@code AsyncContext} associated with current task
-	 * @param time the time when end to wait
-	 * @param id ID of current task
-	 * @return {@code true} if timed-up without interruption
+	 * Register a set of statistics started at once, whose columns are labelled by the names of MBeans.
+	 * @param id ID of the set
+	 * @param works statistics in the order of their columns, whose queries end with {@code /attributes}
+	 * @return the set, removed once all statistics have finished
 	 */
-	private boolean untill(AsyncContext context, long time, String id) {
-		while (System.currentTimeMillis() < time) {
-			if (Thread.interrupted()) {
-				Thread.currentThread().interrupt();
-				complete(context, id);
-				return false;
+	private Bundle register(String id, List<StatisticsRequest> works) {
+		List<String> labels = works.stream()
+				.map(work -> work.getQuery().substring(0, work.getQuery().length() - "/attributes".length()))
+				.collect(Collectors.toList());
+		Bundle bundle = new Bundle(works, new WideStream(labels, () -> {
+			bundles.remove(id);
+			logger.info(() -> id.concat(" finished."));
+		}));
+		bundles.put(id, bundle);
+		return bundle;
+	}
+
+	/**
+	 * Capture the reserved statistics and the state of their polling for the snapshot.
+	 * @return entries of the snapshot
+	 */
+	private List<ReservationSnapshot.Entry> capture() {
+		List<ReservationSnapshot.Entry> entries = new ArrayList<>();
+		for (StatisticsRequest work : reserved.values()) {
+			if (work.getStatus() == StatisticsRequest.INVALID) {
+				continue;
+			}
+			Optional<PollingTask> task = executor.get(work.getId())
+					.filter(PollingTask.class::isInstance).map(PollingTask.class::cast);
+			int remains = task.map(PollingTask::getRemains).orElse(0);
+			long first = task.map(PollingTask::getFirst).orElse(0L);
+			Frame last = store.get(work.getId()).map(series -> series.last(1)).orElse(null);
+			Row row = new Row();
+			if (last == null || last.size() == 0) {
+				entries.add(new ReservationSnapshot.Entry(work, remains, first, 0, Layout.EMPTY, row));
+			} else {
+				// samples are stamped with the ticks, so the next tick follows the last sample
+				long timestamp = last.getTimestamp(0);
+				entries.add(new ReservationSnapshot.Entry(work, remains,
+						Math.max(timestamp + periodOf(work), first), timestamp, last.getLayout(), last.load(0, row)));
 			}
-			Thread.yield();
 		}
-		return true;
+		return entries;
+	}
+
+	/**
+	 * Restore the reserved statistics from the snapshot, resuming the started ones.
+	 * <p>A started statistics resumes on the ticks following its last sample, skipping the ticks missed,
+	 * and the last sample is kept in memory again so that subscribers receive it.
+	 * The started statistics of a set started at once are joined into a wide stream again
+	 * under the ID of the set.</p>
+	 * @param entries entries of the snapshot
+	 */
+	private void restore(List<ReservationSnapshot.Entry> entries) {
+		long now = System.currentTimeMillis();
+		Map<String, List<ReservationSnapshot.Entry>> bundled = new TreeMap<>();
+		for (ReservationSnapshot.Entry entry : entries) {
+			StatisticsRequest work = entry.getWork();
+			boolean started = work.getStatus() == StatisticsRequest.STARTED;
+			if (started && work.getParameters().containsKey("times")) {
+				work.getParameters().put("times", String.valueOf(entry.getRemains()));
+			}
+			work.setStatus(StatisticsRequest.STARTABLE);
+			if (reserved.putIfAbsent(work.getId(), work) != null || !started) {
+				continue;
+			}
+			String bundle = work.getParameters().get("bundle");
+			if (bundle != null) {
+				bundled.computeIfAbsent(bundle, key -> new ArrayList<>()).add(entry);
+			} else {
+				resume(entry, now, null);
+			}
+		}
+
+		bundled.forEach((id, members) -> {
+			members.sort(Comparator.comparingInt(RestClientController::memberOf)
+					.thenComparing(member -> member.getWork().getQuery()));
+			Bundle bundle = register(id, members.stream()
+					.map(ReservationSnapshot.Entry::getWork).collect(Collectors.toList()));
+			for (int i = 0; i < members.size(); i++) {
+				resume(members.get(i), now, bundle.getStream().member(i));
+			}
+			logger.info(() -> members.size() + " tasks are scheduled again for " + id);
+		});
+		rebalance();
+		snapshot.changed();
+	}
+
+	/**
+	 * Get the position of a statistics in the set started at once.
+	 * @param entry entry of the snapshot
+	 * @return index of its columns, {@code Integer.MAX_VALUE} if unknown
+	 */
+	private static int memberOf(ReservationSnapshot.Entry entry) {
+		try {
+			return Integer.parseInt(entry.getWork().getParameters().getOrDefault("member", ""));
+		} catch (NumberFormatException e) {
+			return Integer.MAX_VALUE;
+		}
 	}
 
-	@PreDestroy
-	private void close() {
-		client.close();
+	/**
+	 * Resume polling a started statistics restored from the snapshot.
+	 * <p>A statistics failing to resume is kept reserved without stopping the others,
+	 * and ends its member of the wide stream if any.</p>
+	 * @param entry entry of the snapshot, whose statistics has been reserved
+	 * @param now the time in milliseconds of restoring
+	 * @param member subscriber joining the samples into the wide stream of its set, {@code null} if none
+	 */
+	private void resume(ReservationSnapshot.Entry entry, long now, Subscriber member) {
+		StatisticsRequest work = entry.getWork();
+		try {
+			reschedule(entry, now, member);
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, e, () -> work.getId() + " cannot resume: " + e.getLocalizedMessage());
+			executor.detach(work.getId(), true);
+			hub.close(work.getId());
+			work.setStatus(StatisticsRequest.STARTABLE);
+			reserved.changed(work.getId());
+			if (member != null) {
+				member.close();
+			}
+		}
+	}
+
+	/**
+	 * Start polling a statistics restored from the snapshot on the ticks following its last sample.
+	 * @param entry entry of the snapshot, whose statistics has been reserved
+	 * @param now the time in milliseconds of restoring
+	 * @param member subscriber joining the samples into the wide stream of its set, {@code null} if none
+	 * @throws IllegalArgumentException the parameters of the statistics are not valid
+	 */
+	private void reschedule(ReservationSnapshot.Entry entry, long now, Subscriber member) {
+		StatisticsRequest work = entry.getWork();
+		List<Expression> derived = derivedOf(startParametersOf(work.getParameters()::get));
+		long first = tickOf(entry.getNext(), periodOf(work), now);
+
+		PollingTask task;
+		synchronized (work) {
+			Channel channel = open(work);
+			if (member != null) {
+				channel.subscribe(member, 0);
+			}
+			if (entry.getLayout() != Layout.EMPTY) {
+				store.get(work.getId()).ifPresent(
+						series -> series.append(entry.getTimestamp(), entry.getLayout(), entry.getRow()));
+			}
+			task = start(work, DerivedColumns.of(derived, channel), channel, first);
+		}
+		task.start();
+	}
+
+	/**
+	 * Set of statistics started at once, whose samples are joined into a wide stream.
+	 */
+	private static final class Bundle {
+
+		private final List<StatisticsRequest> works;
+
+		private final WideStream stream;
+
+		Bundle(List<StatisticsRequest> works, WideStream stream) {
+			this.works = works;
+			this.stream = stream;
+		}
+
+		List<StatisticsRequest> getWorks() {
+			return works;
+		}
+
+		WideStream getStream() {
+			return stream;
+		}
+
 	}
 
 }
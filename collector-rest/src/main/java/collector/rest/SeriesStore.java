@@ -0,0 +1,119 @@
+package collector.rest;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import collector.rest.series.RingSeries;
+
+/**
+ * Store of {@link RingSeries} keyed by the ID of statistics.
+ * <p>The series of a completed statistics is retained for a while,
+ * so that its samples can be read after the polling has ended.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_SERIES_CAPACITY}</dt>
+ * <dd>number of samples kept per statistics (default: 2880)</dd>
+ * <dt>{@value #ENV_SERIES_DIRECT}</dt>
+ * <dd>{@code true} for keeping samples off-heap (default: false)</dd>
+ * <dt>{@value #ENV_SERIES_RETAINED}</dt>
+ * <dd>number of series of completed statistics retained (default: 16)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class SeriesStore {
+
+	/**
+	 * Name of environment variable specifying the number of samples kept per statistics.
+	 * @see SeriesStore
+	 */
+	public static final String ENV_SERIES_CAPACITY = "COLLECTOR_SERIES_CAPACITY";
+
+	/**
+	 * Name of environment variable specifying whether samples are kept off-heap.
+	 * @see SeriesStore
+	 */
+	public static final String ENV_SERIES_DIRECT = "COLLECTOR_SERIES_DIRECT";
+
+	/**
+	 * Name of environment variable specifying the number of series of completed statistics.
+	 * @see SeriesStore
+	 */
+	public static final String ENV_SERIES_RETAINED = "COLLECTOR_SERIES_RETAINED";
+
+	/** Map associating the ID of statistics with its series. */
+	private final Map<String, RingSeries> series = new ConcurrentHashMap<>();
+
+	/** IDs of completed statistics in order of completion, guarded by itself. */
+	private final Deque<String> completed = new ArrayDeque<>();
+
+	private int capacity = 2880;
+
+	private boolean direct;
+
+	private int retained = 16;
+
+	/**
+	 * Create the series for a statistics, replacing existing one.
+	 * @param id ID of statistics
+	 * @return created series
+	 */
+	public RingSeries open(String id) {
+		RingSeries created = new RingSeries(capacity, direct);
+		synchronized (completed) {
+			// the statistics may be started again after it has been handed over and back
+			completed.remove(id);
+			series.put(id, created);
+		}
+		return created;
+	}
+
+	/**
+	 * Get the series of a statistics.
+	 * @param id ID of statistics
+	 * @return the series, or empty if it is not kept
+	 */
+	public Optional<RingSeries> get(String id) {
+		return Optional.ofNullable(series.get(id));
+	}
+
+	/**
+	 * Mark the series as completed, discarding the oldest completed series if necessary.
+	 * @param id ID of statistics
+	 */
+	public void complete(String id) {
+		synchronized (completed) {
+			if (!series.containsKey(id) || completed.contains(id)) {
+				return;
+			}
+			completed.add(id);
+			while (completed.size() > retained) {
+				series.remove(completed.poll());
+			}
+		}
+	}
+
+	/**
+	 * Discard the series of a statistics.
+	 * @param id ID of statistics
+	 */
+	public void discard(String id) {
+		synchronized (completed) {
+			completed.remove(id);
+			series.remove(id);
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		capacity = Settings.getInt(ENV_SERIES_CAPACITY, capacity);
+		direct = Settings.getBoolean(ENV_SERIES_DIRECT, direct);
+		retained = Math.max(Settings.getInt(ENV_SERIES_RETAINED, retained), 0);
+	}
+
+}
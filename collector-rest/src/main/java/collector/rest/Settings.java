@@ -0,0 +1,70 @@
+package collector.rest;
+
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Accessor of settings given as environment variables.
+ */
+final class Settings {
+
+	private static final Logger LOGGER = Logger.getLogger(Settings.class.getName());
+
+	private Settings() {
+	}
+
+	/**
+	 * Get the value of environment variable, using default value if it is not specified.
+	 * @param name name of environment variable
+	 * @param defaultValue the value used if environment variable is not specified
+	 * @return the value of environment variable
+	 */
+	static String getEnvValue(String name, String defaultValue) {
+		return Optional.ofNullable(System.getenv(name))
+				.filter(value -> value != null && !value.isEmpty())
+				.orElse(defaultValue);
+	}
+
+	/**
+	 * Get the value of environment variable as {@code long}.
+	 * @param name name of environment variable
+	 * @param defaultValue the value used if environment variable is not specified or invalid
+	 * @return the value of environment variable
+	 */
+	static long getLong(String name, long defaultValue) {
+		String value = getEnvValue(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			LOGGER.log(Level.SEVERE, e,
+					() -> "Cannot apply " + name + " for invalid value: " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Get the value of environment variable as {@code int}.
+	 * @param name name of environment variable
+	 * @param defaultValue the value used if environment variable is not specified or invalid
+	 * @return the value of environment variable
+	 */
+	static int getInt(String name, int defaultValue) {
+		long value = getLong(name, defaultValue);
+		return (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) ? defaultValue : (int) value;
+	}
+
+	/**
+	 * Get the value of environment variable as {@code boolean}.
+	 * @param name name of environment variable
+	 * @param defaultValue the value used if environment variable is not specified
+	 * @return the value of environment variable
+	 */
+	static boolean getBoolean(String name, boolean defaultValue) {
+		return Boolean.parseBoolean(getEnvValue(name, String.valueOf(defaultValue)).trim());
+	}
+
+}
@@ -0,0 +1,131 @@
+package collector.rest;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import collector.rest.sketch.Percentiles;
+
+/**
+ * Store of {@link Percentiles} keyed by the ID of statistics.
+ * <p>Like {@link SeriesStore}, the percentiles of a completed statistics are retained for a while.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_PERCENTILES}</dt>
+ * <dd>comma-separated names of attributes whose percentiles are kept for statistics
+ * started without {@code percentiles} parameter (default: none)</dd>
+ * <dt>{@value #ENV_WINDOW}</dt>
+ * <dd>span in seconds of the sliding and tumbling windows (default: 300)</dd>
+ * <dt>{@value #ENV_WINDOW_SLICES}</dt>
+ * <dd>number of slices dividing the sliding window (default: 5)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class SketchStore {
+
+	/**
+	 * Name of environment variable specifying the attributes whose percentiles are kept.
+	 * @see SketchStore
+	 */
+	public static final String ENV_PERCENTILES = "COLLECTOR_PERCENTILES";
+
+	/**
+	 * Name of environment variable specifying the span of windows.
+	 * @see SketchStore
+	 */
+	public static final String ENV_WINDOW = "COLLECTOR_WINDOW";
+
+	/**
+	 * Name of environment variable specifying the number of slices of the sliding window.
+	 * @see SketchStore
+	 */
+	public static final String ENV_WINDOW_SLICES = "COLLECTOR_WINDOW_SLICES";
+
+	/** Map associating the ID of statistics with its percentiles. */
+	private final Map<String, Percentiles> percentiles = new ConcurrentHashMap<>();
+
+	/** IDs of completed statistics in order of completion, guarded by itself. */
+	private final Deque<String> completed = new ArrayDeque<>();
+
+	private String names = "";
+
+	private long span = TimeUnit.MINUTES.toMillis(5);
+
+	private int slices = 5;
+
+	private int retained = 16;
+
+	/**
+	 * Create the percentiles for a statistics if any attribute is selected.
+	 * @param id ID of statistics
+	 * @param selected comma-separated names of attributes, or {@code null} for the default
+	 * @return created percentiles, or empty if no attribute is selected
+	 */
+	public Optional<Percentiles> open(String id, String selected) {
+		Percentiles created = Percentiles.of(selected == null ? names : selected, span, slices);
+		synchronized (completed) {
+			completed.remove(id);
+			if (created == null) {
+				percentiles.remove(id);
+				return Optional.empty();
+			}
+			percentiles.put(id, created);
+		}
+		return Optional.of(created);
+	}
+
+	/**
+	 * Get the percentiles of a statistics.
+	 * @param id ID of statistics
+	 * @return the percentiles, or empty if they are not kept
+	 */
+	public Optional<Percentiles> get(String id) {
+		return Optional.ofNullable(percentiles.get(id));
+	}
+
+	public long getSpan() {
+		return span;
+	}
+
+	/**
+	 * Mark the percentiles as completed, discarding the oldest completed ones if necessary.
+	 * @param id ID of statistics
+	 */
+	public void complete(String id) {
+		synchronized (completed) {
+			if (!percentiles.containsKey(id) || completed.contains(id)) {
+				return;
+			}
+			completed.add(id);
+			while (completed.size() > retained) {
+				percentiles.remove(completed.poll());
+			}
+		}
+	}
+
+	/**
+	 * Discard the percentiles of a statistics.
+	 * @param id ID of statistics
+	 */
+	public void discard(String id) {
+		synchronized (completed) {
+			completed.remove(id);
+			percentiles.remove(id);
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		names = Settings.getEnvValue(ENV_PERCENTILES, names);
+		span = TimeUnit.SECONDS.toMillis(Math.max(Settings.getLong(ENV_WINDOW, 300), 1));
+		slices = Math.max(Settings.getInt(ENV_WINDOW_SLICES, slices), 1);
+		retained = Math.max(Settings.getInt(SeriesStore.ENV_SERIES_RETAINED, retained), 0);
+	}
+
+}
@@ -1,6 +1,15 @@
 package collector.rest;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import collector.rest.stat.NameFilter;
 
 public class StatisticsRequest {
 
@@ -20,9 +29,41 @@ public class StatisticsRequest {
 
 	private int status = INVALID;
 
-	private final long requested = System.currentTimeMillis();
+	/** Filter of attributes to be polled. */
+	private NameFilter attributes = NameFilter.ALL;
+
+	/** Parameters with which the statistics has been started, such as {@code period}. */
+	private final Map<String, String> parameters = new ConcurrentHashMap<>();
+
+	/** Interval of polls of the statistics once it has been started. */
+	private volatile AdaptiveInterval interval;
 
-	private final String id = UUID.randomUUID().toString();
+	private final long requested;
+
+	private final String id;
+
+	public StatisticsRequest() {
+		this(UUID.randomUUID().toString());
+	}
+
+	/**
+	 * Constructor for the request handed over from another collector.
+	 * @param id ID of the request
+	 */
+	public StatisticsRequest(String id) {
+		this(id, System.currentTimeMillis());
+	}
+
+	/**
+	 * Constructor for the request restored from a snapshot or handed over from another collector,
+	 * keeping the order in which the requests have come first.
+	 * @param id ID of the request
+	 * @param requested time when the request has come first in milliseconds
+	 */
+	public StatisticsRequest(String id, long requested) {
+		this.id = id;
+		this.requested = requested;
+	}
 
 	public String getId() {
 		return id;
@@ -44,6 +85,30 @@ public class StatisticsRequest {
 		return password;
 	}
 
+	/**
+	 * Get the key identifying the location and the credentials without revealing the password.
+	 * @return SHA-256 of the location, the user and the password in hexadecimal
+	 */
+	public String getCredentialsKey() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (String value : new String[] { location, user, password }) {
+			// each value is prefixed by its length, -1 for null, so that no two values are confused
+			byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF_8);
+			digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value == null ? -1 : bytes.length).array());
+			digest.update(bytes);
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
 	public long getRequested() {
 		return requested;
 	}
@@ -52,6 +117,22 @@ public class StatisticsRequest {
 		return status;
 	}
 
+	public NameFilter getAttributes() {
+		return attributes;
+	}
+
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public AdaptiveInterval getInterval() {
+		return interval;
+	}
+
+	public void setInterval(AdaptiveInterval interval) {
+		this.interval = interval;
+	}
+
 	public void setLocation(String location) {
 		this.location = location;
 	}
@@ -68,6 +149,10 @@ public class StatisticsRequest {
 		this.password = password;
 	}
 
+	public void setAttributes(NameFilter attributes) {
+		this.attributes = attributes;
+	}
+
 	public void setStatus(int status) {
 		switch (status) {
 		case INVALID:
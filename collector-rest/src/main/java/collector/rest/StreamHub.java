@@ -0,0 +1,182 @@
+package collector.rest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.servlet.AsyncContext;
+
+import collector.rest.metrics.Counter;
+import collector.rest.metrics.Histogram;
+import collector.rest.series.RingSeries;
+import collector.rest.series.SampleSink;
+import collector.rest.stream.Channel;
+import collector.rest.stream.OutputCounters;
+import collector.rest.stream.OutputQueue;
+import collector.rest.stream.Overflow;
+
+/**
+ * Hub of {@link Channel}s keyed by the ID of statistics.
+ * <p>A statistics is polled once however many clients subscribe to it,
+ * and clients subscribe and unsubscribe independently of the polling.
+ * Connections of subscribers are kept alive while no sample is published,
+ * if the format of the stream supports it.
+ * Output to each subscriber is buffered up to the limit and written without blocking the polling.</p>
+ * <p>Available environment variables</p>
+ * <dl>
+ * <dt>{@value #ENV_KEEP_ALIVE}</dt>
+ * <dd>interval in seconds for keeping idle connections alive, 0 for disabling it (default: 15)</dd>
+ * <dt>{@value #ENV_OUTPUT_BUFFER}</dt>
+ * <dd>maximum size in kilobytes of output buffered per subscriber (default: 1024)</dd>
+ * <dt>{@value #ENV_OUTPUT_OVERFLOW}</dt>
+ * <dd>policy applied when the buffer is exceeded, one of {@code drop-oldest}, {@code coalesce}
+ * and {@code disconnect} (default: drop-oldest)</dd>
+ * </dl>
+ */
+@ApplicationScoped
+public class StreamHub {
+
+	/**
+	 * Name of environment variable specifying the interval for keeping idle connections alive.
+	 * @see StreamHub
+	 */
+	public static final String ENV_KEEP_ALIVE = "COLLECTOR_KEEP_ALIVE";
+
+	/**
+	 * Name of environment variable specifying the size of output buffered per subscriber.
+	 * @see StreamHub
+	 */
+	public static final String ENV_OUTPUT_BUFFER = "COLLECTOR_OUTPUT_BUFFER";
+
+	/**
+	 * Name of environment variable specifying the policy applied when the buffer is exceeded.
+	 * @see StreamHub
+	 */
+	public static final String ENV_OUTPUT_OVERFLOW = "COLLECTOR_OUTPUT_OVERFLOW";
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	/** Map associating the ID of statistics with its channel. */
+	private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+	@Inject
+	private PollingScheduler scheduler;
+
+	@Resource(lookup = "java:comp/DefaultManagedExecutorService")
+	private ManagedExecutorService executor;
+
+	private final OutputCounters counters = new OutputCounters();
+
+	private long keepAlive = TimeUnit.SECONDS.toMillis(15);
+
+	private int outputBuffer = 1024 * 1024;
+
+	private Overflow overflow = Overflow.DROP_OLDEST;
+
+	/** Deadline keeping idle connections alive. */
+	private volatile ScheduledFuture<?> deadline;
+
+	/**
+	 * Open the channel of a statistics.
+	 * @param id ID of statistics
+	 * @param series series keeping the latest samples, which is a part of {@code sink}
+	 * @param sink destination of all samples
+	 * @return the opened channel, or the existing one if it has already been opened
+	 */
+	public Channel open(String id, RingSeries series, SampleSink sink) {
+		return channels.computeIfAbsent(id, key -> new Channel(series, sink));
+	}
+
+	/**
+	 * Get the channel of a statistics.
+	 * @param id ID of statistics
+	 * @return the channel, or empty if the statistics is not polled
+	 */
+	public Optional<Channel> get(String id) {
+		return Optional.ofNullable(channels.get(id));
+	}
+
+	/**
+	 * Create the bounded output of the response of an asynchronous request.
+	 * @param context context of the asynchronous request
+	 * @param sent counter of bytes written
+	 * @param writeTime histogram of the time for writing a chunk
+	 * @return created output
+	 * @throws IOException fail to get the output of the response
+	 */
+	public OutputQueue output(AsyncContext context, Counter sent, Histogram writeTime) throws IOException {
+		return new OutputQueue(context, outputBuffer, overflow, counters, sent, writeTime);
+	}
+
+	/**
+	 * Get the counters of items discarded for slow subscribers.
+	 * @return counters shared by all subscribers
+	 */
+	public OutputCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Close the channel of a statistics, ending all subscriptions.
+	 * @param id ID of statistics
+	 */
+	public void close(String id) {
+		Channel channel = channels.remove(id);
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Keep idle connections alive on the managed executor, and schedule the next deadline.
+	 * @param time the time in milliseconds of the current deadline
+	 */
+	private void keepAlive(long time) {
+		try {
+			executor.execute(() -> channels.values().forEach(channel -> channel.keepAlive(keepAlive)));
+			deadline = scheduler.at(time + keepAlive, () -> keepAlive(time + keepAlive));
+		} catch (RejectedExecutionException e) {
+			// the application is stopping
+		}
+	}
+
+	@PostConstruct
+	private void initialize() {
+		keepAlive = TimeUnit.SECONDS.toMillis(Settings.getLong(ENV_KEEP_ALIVE, 15));
+		outputBuffer = (int) Math.min(Settings.getLong(ENV_OUTPUT_BUFFER, 1024) * 1024,
+				Integer.MAX_VALUE);
+		String policy = Settings.getEnvValue(ENV_OUTPUT_OVERFLOW, "drop-oldest");
+		try {
+			overflow = Overflow.of(policy);
+		} catch (IllegalArgumentException e) {
+			logger.log(Level.SEVERE, e,
+					() -> "Cannot apply " + ENV_OUTPUT_OVERFLOW + " for invalid value: " + policy);
+		}
+		if (keepAlive > 0) {
+			long first = System.currentTimeMillis() + keepAlive;
+			deadline = scheduler.at(first, () -> keepAlive(first));
+		}
+	}
+
+	@PreDestroy
+	private void destroy() {
+		if (deadline != null) {
+			deadline.cancel(false);
+		}
+		channels.values().forEach(Channel::close);
+		channels.clear();
+	}
+
+}
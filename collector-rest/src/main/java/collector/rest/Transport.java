@@ -0,0 +1,353 @@
+package collector.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import collector.rest.metrics.Histogram;
+
+/**
+ * Transport to a location of RESTConnector, shared by all the statistics polled from it.
+ * <p>A transport owns a JAX-RS client keeping connections alive,
+ * and limits the number of requests in flight; the requests exceeding the limit are queued in arrival order.
+ * The connections are pooled by the implementation of JAX-RS client, {@code HttpURLConnection} of the JDK,
+ * whose pool is configured by {@code http.maxConnections} and {@code http.keepAlive.time.server}
+ * system properties of the JVM.
+ * {@code Authorization} headers and targets are cached,
+ * and TLS sessions are resumed through the {@code SSLContext} shared by all transports.</p>
+ * <p>A transport also has the {@link CircuitBreaker} of the location, so that a location failing
+ * does not hold slots and threads for the other statistics polled from it.</p>
+ */
+public class Transport {
+
+	/** Maximum number of targets cached per transport. */
+	private static final int MAX_TARGETS = 1024;
+
+	private final String location;
+
+	private final Client client;
+
+	private final SSLContext sslContext;
+
+	private final int capacity;
+
+	private final CircuitBreaker breaker;
+
+	/** Map associating credentials with {@code Authorization} header. */
+	private final Map<String, String> authorizations = new ConcurrentHashMap<>();
+
+	/** Map associating a query and projected attributes with its target. */
+	private final Map<String, WebTarget> targets = new ConcurrentHashMap<>();
+
+	/** Requests waiting for a slot, guarded by {@code this}. */
+	private final Queue<Waiting> waiting = new ArrayDeque<>();
+
+	/** Number of slots in use, guarded by {@code this}. */
+	private int used;
+
+	/** Highest number of requests in flight at once, guarded by {@code this}. */
+	private int peak;
+
+	/** Flag indicating a thread is handing released slots over to the requests waiting, guarded by {@code this}. */
+	private boolean handing;
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder waited = new LongAdder();
+
+	private final LongAdder waitTime = new LongAdder();
+
+	private final LongAdder retried = new LongAdder();
+
+	private final LongAdder hedged = new LongAdder();
+
+	/** Histogram of the time from issuing a request until its response or failure. */
+	private final Histogram latency = new Histogram();
+
+	/**
+	 * Constructor.
+	 * @param location location of RESTConnector
+	 * @param client JAX-RS client dedicated to the location
+	 * @param sslContext {@code SSLContext} of {@code client}, {@code null} if default one is used
+	 * @param capacity maximum number of requests in flight
+	 * @param breaker circuit breaker of the location
+	 */
+	Transport(String location, Client client, SSLContext sslContext, int capacity, CircuitBreaker breaker) {
+		this.location = location;
+		this.client = client;
+		this.sslContext = sslContext;
+		this.capacity = Math.max(capacity, 1);
+		this.breaker = breaker;
+	}
+
+	/**
+	 * Create a {@code Builder} instance for REST API invocation.
+	 * <p>The {@code Builder} is new for every call since headers may be added to it,
+	 * while the target and the {@code Authorization} header are reused.</p>
+	 * @param work request for a statistics to be invoked
+	 * @param attributes names of attributes requested by {@code attribute} parameters,
+	 * all attributes are requested if it is empty
+	 * @return {@code Builder} represents REST API invocation
+	 */
+	Builder request(StatisticsRequest work, List<String> attributes) {
+		String authorization = authorizations.computeIfAbsent(
+				work.getUser() + ':' + work.getPassword(), credentials -> "Basic ".concat(
+						Base64.getUrlEncoder().encodeToString(credentials.getBytes(UTF_8))));
+
+		String key = attributes.isEmpty() ? work.getQuery() : work.getQuery() + '?' + attributes;
+		WebTarget target = targets.get(key);
+		if (target == null) {
+			if (targets.size() >= MAX_TARGETS) {
+				targets.clear();
+			}
+			target = client.target(location.concat(work.getQuery()).replace(' ', '+'));
+			if (!attributes.isEmpty()) {
+				target = target.queryParam("attribute", attributes.toArray());
+			}
+			targets.put(key, target);
+		}
+		return target.request()
+				.accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.AUTHORIZATION, authorization);
+	}
+
+	/**
+	 * Start the request immediately if a slot is available, otherwise queue it.
+	 * @param start action starting the request, which must release the slot eventually
+	 * @param abandoned condition under which the request waiting is discarded without starting it,
+	 * such as the poll having been cancelled
+	 */
+	void submit(Runnable start, BooleanSupplier abandoned) {
+		requests.increment();
+		synchronized (this) {
+			if (used >= capacity) {
+				waiting.add(new Waiting(start, abandoned));
+				return;
+			}
+			acquire();
+		}
+		start.run();
+	}
+
+	/**
+	 * Take a slot for a hedged request only if it is available immediately.
+	 * @return {@code true} if a slot has been taken, which must be released eventually
+	 */
+	synchronized boolean tryAcquire() {
+		if (used >= capacity || !waiting.isEmpty()) {
+			return false;
+		}
+		acquire();
+		requests.increment();
+		hedged.increment();
+		return true;
+	}
+
+	/**
+	 * Count a request retried after a failure.
+	 */
+	void retrying() {
+		retried.increment();
+	}
+
+	/**
+	 * Release a slot, handing it over to the oldest request waiting.
+	 * <p>Slots are handed over in a loop by one thread at a time, since a request started
+	 * may release its slot at once, such as the one whose poll has just been cancelled.
+	 * A slot released meanwhile is handed over by the thread already handing over.</p>
+	 */
+	void release() {
+		synchronized (this) {
+			used--;
+			if (handing) {
+				return;
+			}
+			handing = true;
+		}
+		try {
+			for (Waiting next = nextWaiting(); next != null; next = nextWaiting()) {
+				waited.increment();
+				waitTime.add(System.currentTimeMillis() - next.since);
+				next.start.run();
+			}
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				handing = false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Take the oldest request waiting which has not been abandoned, using a slot for it.
+	 * Handing over ends when no request can be started.
+	 * @return the request, {@code null} if no slot is available or no request is waiting
+	 */
+	private synchronized Waiting nextWaiting() {
+		while (used < capacity && !waiting.isEmpty()) {
+			Waiting next = waiting.poll();
+			if (!next.abandoned.getAsBoolean()) {
+				acquire();
+				return next;
+			}
+		}
+		handing = false;
+		return null;
+	}
+
+	/**
+	 * Use a slot.
+	 */
+	private void acquire() {
+		used++;
+		peak = Math.max(peak, used);
+	}
+
+	/**
+	 * Close the client and its connections.
+	 */
+	void close() {
+		client.close();
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	public CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	/**
+	 * Get the histogram of the time from issuing a request until its response or failure,
+	 * excluding the time waiting for a connection.
+	 * @return histogram of latency
+	 */
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Get number of requests in flight.
+	 * @return number of active connections
+	 */
+	public synchronized int getActive() {
+		return used;
+	}
+
+	/**
+	 * Get the highest number of requests in flight at once.
+	 * @return number of requests, up to the maximum number of requests in flight
+	 */
+	public synchronized int getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Get number of requests waiting for a connection.
+	 * @return number of requests in the queue
+	 */
+	public synchronized int getWaiting() {
+		return waiting.size();
+	}
+
+	/**
+	 * Get number of requests issued.
+	 * @return number of requests
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Get number of requests which have waited for a connection.
+	 * @return number of requests queued
+	 */
+	public long getWaited() {
+		return waited.sum();
+	}
+
+	/**
+	 * Get total time for which requests have waited for a connection.
+	 * @return time in milliseconds
+	 */
+	public long getWaitTime() {
+		return waitTime.sum();
+	}
+
+	/**
+	 * Get number of requests retried after failures.
+	 * @return number of retries
+	 */
+	public long getRetried() {
+		return retried.sum();
+	}
+
+	/**
+	 * Get number of requests issued for hedging slow ones.
+	 * @return number of hedged requests
+	 */
+	public long getHedged() {
+		return hedged.sum();
+	}
+
+	/**
+	 * Get number of TLS sessions to the location cached for resumption.
+	 * @return number of TLS sessions, 0 if the location is not accessed with TLS
+	 */
+	public int getSessions() {
+		if (sslContext == null) {
+			return 0;
+		}
+		URI uri = URI.create(location);
+		SSLSessionContext sessions = sslContext.getClientSessionContext();
+		int count = 0;
+		for (byte[] id : Collections.list(sessions.getIds())) {
+			SSLSession session = sessions.getSession(id);
+			if (session != null && uri.getHost() != null
+					&& uri.getHost().equalsIgnoreCase(session.getPeerHost())
+					&& (uri.getPort() < 0 || uri.getPort() == session.getPeerPort())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Request waiting for a slot.
+	 */
+	private static class Waiting {
+
+		final Runnable start;
+
+		final BooleanSupplier abandoned;
+
+		/** Time in milliseconds when the request is queued. */
+		final long since = System.currentTimeMillis();
+
+		Waiting(Runnable start, BooleanSupplier abandoned) {
+			this.start = start;
+			this.abandoned = abandoned;
+		}
+
+	}
+
+}
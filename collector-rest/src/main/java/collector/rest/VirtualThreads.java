@@ -0,0 +1,37 @@
+package collector.rest;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of JDK 21 or later, looked up by reflection so that the collector still runs on Java 8.
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Create an executor starting a new virtual thread for each task.
+	 * <p>Cancelling a task with interruption interrupts its virtual thread,
+	 * which aborts the socket I/O it is blocked on.</p>
+	 * @param prefix prefix of the names of threads, followed by a sequence number
+	 * @return the executor, or empty if virtual threads are not available
+	 */
+	static Optional<ExecutorService> newExecutor(String prefix) {
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			return Optional.of((ExecutorService) Executors.class
+					.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory));
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			// Java 20 or earlier, or virtual threads of a preview which is not enabled
+			return Optional.empty();
+		}
+	}
+
+}
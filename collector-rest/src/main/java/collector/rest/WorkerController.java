@@ -1,6 +1,8 @@
 package collector.rest;
 
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -30,6 +32,15 @@ public class WorkerController {
 		tasks.put(id, task);
 	}
 
+	/**
+	 * Get a task specified by ID.
+	 * @param id ID of the task
+	 * @return the task, or empty if it is not registered
+	 */
+	public Optional<Future<?>> get(String id) {
+		return Optional.ofNullable(tasks.get(id));
+	}
+
 	/**
 	 * Cancels a task specified by ID.
 	 * @param id ID of the task to be cancelled
@@ -56,6 +67,8 @@ public class WorkerController {
 				entry.getValue().get();
 			} catch (InterruptedException e) {
 				Thread.currentThread().interrupt();
+			} catch (CancellationException e) {
+				logger.fine(() -> "Task " + entry.getKey() + " is cancelled.");
 			} catch (ExecutionException e) {
 				logger.log(Level.WARNING, e,
 						() -> "Task " + entry.getKey() + " ended with some problem.");
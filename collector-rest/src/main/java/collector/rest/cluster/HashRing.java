@@ -0,0 +1,80 @@
+package collector.rest.cluster;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring assigning keys to members.
+ * <p>Each member is placed on the ring at a number of virtual points,
+ * and a key is owned by the member at the first point following the hash of the key.
+ * When a member joins or leaves, only the keys between its points and the preceding ones move.
+ * Hashes are derived from MD5, so that every collector assigns a key to the same member.</p>
+ */
+public final class HashRing {
+
+	/** Ring without any member. */
+	public static final HashRing EMPTY = new HashRing(Collections.emptySet(), 1);
+
+	private final Set<String> members;
+
+	private final NavigableMap<Long, String> points = new TreeMap<>();
+
+	/**
+	 * Constructor.
+	 * @param members members of the ring, such as base URLs of collectors
+	 * @param replicas number of virtual points per member
+	 */
+	public HashRing(Collection<String> members, int replicas) {
+		this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+		for (String member : this.members) {
+			for (int i = 0; i < Math.max(replicas, 1); i++) {
+				points.put(hash(member + '#' + i), member);
+			}
+		}
+	}
+
+	/**
+	 * Get the member owning a key.
+	 * @param key key such as the ID of a statistics
+	 * @return the owner, {@code null} if there is no member
+	 */
+	public String ownerOf(String key) {
+		if (points.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+		return (point == null ? points.firstEntry() : point).getValue();
+	}
+
+	/**
+	 * Get the members of the ring.
+	 * @return members in the order of their names
+	 */
+	public Set<String> getMembers() {
+		return members;
+	}
+
+	private static long hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(UTF_8));
+			long hash = 0;
+			for (int i = 0; i < Long.BYTES; i++) {
+				hash = (hash << 8) | (digest[i] & 0xff);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			// MD5 is supported by every implementation of Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package collector.rest.derive;
+
+import collector.rest.stat.Row;
+
+/**
+ * Incremental computation of a derived value from the samples of a statistics.
+ * <p>An instance is bound to a layout of attributes and keeps constant state
+ * carried from a sample to the next one.</p>
+ */
+@FunctionalInterface
+public interface Derivation {
+
+	/**
+	 * Compute the value for the next sample.
+	 * @param timestamp time of the sample in milliseconds
+	 * @param row values of the sample
+	 * @return derived value, {@code NaN} if it is not available
+	 */
+	double next(long timestamp, Row row);
+
+}
@@ -0,0 +1,194 @@
+package collector.rest.derive;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Registry of functions available in {@link Expression}s.
+ * <dl>
+ * <dt>{@code rate(x)}</dt>
+ * <dd>increase of counter {@code x} per second</dd>
+ * <dt>{@code delta(x)}</dt>
+ * <dd>increase of counter {@code x} since the previous sample</dd>
+ * <dt>{@code avg(x, n)}</dt>
+ * <dd>moving average of {@code x} over the latest {@code n} samples, up to 4096</dd>
+ * <dt>{@code ratio(x, y)}</dt>
+ * <dd>{@code x} divided by {@code y}</dd>
+ * </dl>
+ * <p>A counter is regarded as reset when it decreases, and its increase is the value itself.
+ * Samples whose value is not a number are skipped.</p>
+ */
+public final class Derivations {
+
+	/**
+	 * Factory of a function.
+	 */
+	@FunctionalInterface
+	public interface Factory {
+
+		/**
+		 * Create a derivation applying the function.
+		 * @param arguments arguments of the function
+		 * @param layout layout of attributes to which the arguments are bound
+		 * @return created derivation
+		 * @throws IllegalArgumentException if the arguments are invalid
+		 */
+		Derivation create(List<Expression> arguments, Layout layout);
+
+	}
+
+	/** Maximum number of samples in the window of a moving average. */
+	private static final int MAX_WINDOW = 4096;
+
+	private static final Map<String, Factory> FACTORIES = new ConcurrentHashMap<>();
+
+	static {
+		register("rate", (arguments, layout) ->
+				new Increase(only(arguments, "rate").bind(layout), true));
+		register("delta", (arguments, layout) ->
+				new Increase(only(arguments, "delta").bind(layout), false));
+		register("avg", (arguments, layout) -> {
+			if (arguments.size() != 2 || !arguments.get(1).isNumber()
+					|| arguments.get(1).getNumber() < 1 || arguments.get(1).getNumber() > MAX_WINDOW) {
+				throw new IllegalArgumentException(
+						"avg requires an expression and a window up to " + MAX_WINDOW);
+			}
+			return new MovingAverage(arguments.get(0).bind(layout),
+					(int) arguments.get(1).getNumber());
+		});
+		register("ratio", (arguments, layout) -> {
+			if (arguments.size() != 2) {
+				throw new IllegalArgumentException("ratio requires 2 expressions");
+			}
+			Derivation numerator = arguments.get(0).bind(layout);
+			Derivation denominator = arguments.get(1).bind(layout);
+			return (timestamp, row) -> {
+				double divisor = denominator.next(timestamp, row);
+				double dividend = numerator.next(timestamp, row);
+				return divisor == 0.0d ? Double.NaN : dividend / divisor;
+			};
+		});
+	}
+
+	private Derivations() {
+	}
+
+	/**
+	 * Register a function, replacing the existing one with the same name.
+	 * @param name name of the function
+	 * @param factory factory of the function
+	 */
+	public static void register(String name, Factory factory) {
+		FACTORIES.put(name, factory);
+	}
+
+	/**
+	 * Get the factory of a function.
+	 * @param name name of the function
+	 * @return the factory
+	 * @throws IllegalArgumentException if the function is not registered
+	 */
+	static Factory get(String name) {
+		Factory factory = FACTORIES.get(name);
+		if (factory == null) {
+			throw new IllegalArgumentException("unknown function: " + name);
+		}
+		return factory;
+	}
+
+	private static Expression only(List<Expression> arguments, String name) {
+		if (arguments.size() != 1) {
+			throw new IllegalArgumentException(name + " requires an expression");
+		}
+		return arguments.get(0);
+	}
+
+	/**
+	 * Increase of a counter, optionally per second.
+	 */
+	private static class Increase implements Derivation {
+
+		private final Derivation counter;
+
+		private final boolean perSecond;
+
+		private double previous = Double.NaN;
+
+		private long since;
+
+		Increase(Derivation counter, boolean perSecond) {
+			this.counter = counter;
+			this.perSecond = perSecond;
+		}
+
+		@Override
+		public double next(long timestamp, Row row) {
+			double value = counter.next(timestamp, row);
+			if (Double.isNaN(value)) {
+				return Double.NaN;
+			}
+
+			double increase = value < previous ? value : value - previous;
+			long elapsed = timestamp - since;
+			previous = value;
+			since = timestamp;
+			if (Double.isNaN(increase) || !perSecond) {
+				return increase;
+			}
+			return elapsed > 0 ? increase * 1000.0d / elapsed : Double.NaN;
+		}
+
+	}
+
+	/**
+	 * Simple moving average over a window of samples.
+	 */
+	private static class MovingAverage implements Derivation {
+
+		private final Derivation source;
+
+		private final double[] window;
+
+		private int count;
+
+		private int next;
+
+		private double sum;
+
+		MovingAverage(Derivation source, int size) {
+			this.source = source;
+			this.window = new double[size];
+		}
+
+		@Override
+		public double next(long timestamp, Row row) {
+			double value = source.next(timestamp, row);
+			if (Double.isNaN(value)) {
+				return count == 0 ? Double.NaN : sum / count;
+			}
+
+			if (count == window.length) {
+				sum -= window[next];
+			} else {
+				count++;
+			}
+			window[next] = value;
+			sum += value;
+			next = (next + 1) % window.length;
+			if (next == 0) {
+				// cancel rounding errors accumulated by the running sum
+				sum = 0.0d;
+				for (double element : window) {
+					sum += element;
+				}
+			}
+			return sum / count;
+		}
+
+	}
+
+}
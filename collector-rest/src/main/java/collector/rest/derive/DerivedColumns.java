@@ -0,0 +1,91 @@
+package collector.rest.derive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import collector.rest.series.SampleSink;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Stage appending derived columns to the samples passed to the sink.
+ * <p>When the layout of attributes changes, the expressions are expanded and bound again,
+ * and the derived layout is created once. Derived columns are {@code double} following
+ * all attributes, named by their expressions.</p>
+ */
+public class DerivedColumns implements SampleSink {
+
+	private static final String DERIVED_TYPE = "double";
+
+	private final List<Expression> expressions;
+
+	private final SampleSink sink;
+
+	private final Row derived = new Row();
+
+	private Layout source;
+
+	private Layout layout;
+
+	private Derivation[] derivations;
+
+	/**
+	 * Constructor.
+	 * @param expressions expressions of derived columns
+	 * @param sink destination of the samples with derived columns
+	 */
+	public DerivedColumns(List<Expression> expressions, SampleSink sink) {
+		this.expressions = expressions;
+		this.sink = sink;
+	}
+
+	/**
+	 * Create a stage if any expression is specified.
+	 * @param expressions expressions of derived columns
+	 * @param sink destination of the samples
+	 * @return the stage, or {@code sink} itself if no expression is specified
+	 */
+	public static SampleSink of(List<Expression> expressions, SampleSink sink) {
+		return expressions.isEmpty() ? sink : new DerivedColumns(expressions, sink);
+	}
+
+	@Override
+	public void accept(long timestamp, Layout layout, Row row) {
+		if (layout != source) {
+			bind(layout);
+		}
+
+		int size = row.size();
+		derived.resize(size + derivations.length);
+		for (int column = 0; column < size; column++) {
+			derived.set(column, row, column);
+		}
+		for (int i = 0; i < derivations.length; i++) {
+			derived.setDecimal(size + i, derivations[i].next(timestamp, row));
+		}
+		sink.accept(timestamp, this.layout, derived);
+	}
+
+	private void bind(Layout layout) {
+		List<String> names = new ArrayList<>();
+		List<String> types = new ArrayList<>();
+		for (int i = 0; i < layout.size(); i++) {
+			names.add(layout.getName(i));
+			types.add(layout.getType(i));
+		}
+
+		List<Derivation> bound = new ArrayList<>();
+		for (Expression expression : expressions) {
+			for (Expression expanded : expression.expand(layout)) {
+				names.add(expanded.toString());
+				types.add(DERIVED_TYPE);
+				bound.add(expanded.bind(layout));
+			}
+		}
+
+		this.source = layout;
+		this.layout = Layout.of(names, types);
+		this.derivations = bound.toArray(new Derivation[bound.size()]);
+	}
+
+}
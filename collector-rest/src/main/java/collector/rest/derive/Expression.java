@@ -0,0 +1,230 @@
+package collector.rest.derive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.NameFilter;
+
+/**
+ * Parsed expression of a derived column, such as {@code rate(RequestCount)}.
+ * <p>An expression is a name of an attribute, a number, or a function applied to expressions.
+ * A name of an attribute may contain {@code *} matching any characters,
+ * which expands the expression for each numeric attribute matching it.</p>
+ * @see Derivations
+ */
+public final class Expression {
+
+	private final String name;
+
+	/** Arguments of the function, {@code null} for an attribute or a number. */
+	private final List<Expression> arguments;
+
+	private Expression(String name, List<Expression> arguments) {
+		this.name = name;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * Parse comma-separated expressions.
+	 * @param spec expressions, may be empty
+	 * @return parsed expressions
+	 * @throws IllegalArgumentException if the expressions are malformed
+	 */
+	public static List<Expression> parse(String spec) {
+		List<Expression> expressions = new ArrayList<>();
+		if (spec == null || spec.trim().isEmpty()) {
+			return expressions;
+		}
+
+		Parser parser = new Parser(spec);
+		do {
+			Expression expression = parser.expression();
+			expression.bind(Layout.EMPTY);
+			expressions.add(expression);
+		} while (parser.accept(','));
+		parser.end();
+		return expressions;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isFunction() {
+		return arguments != null;
+	}
+
+	public boolean isNumber() {
+		return !isFunction() && Parser.NUMBER.matcher(name).matches();
+	}
+
+	public double getNumber() {
+		return Double.parseDouble(name);
+	}
+
+	public List<Expression> getArguments() {
+		return arguments == null ? Collections.emptyList() : Collections.unmodifiableList(arguments);
+	}
+
+	/**
+	 * Bind the expression to a layout of attributes.
+	 * @param layout layout of attributes of the samples
+	 * @return derivation computing the value with fresh state
+	 * @throws IllegalArgumentException if the arguments of a function are invalid
+	 */
+	public Derivation bind(Layout layout) {
+		if (isFunction()) {
+			return Derivations.get(name).create(arguments, layout);
+		} else if (isNumber()) {
+			double value = getNumber();
+			return (timestamp, row) -> value;
+		}
+
+		for (int i = 0; i < layout.size(); i++) {
+			if (name.equals(layout.getName(i))) {
+				int column = i;
+				return (timestamp, row) -> row.getNumber(column);
+			}
+		}
+		return (timestamp, row) -> Double.NaN;
+	}
+
+	/**
+	 * Expand the names with {@code *} for each numeric attribute matching them.
+	 * @param layout layout of attributes of the samples
+	 * @return expressions without {@code *}, only this expression if it has no such name
+	 */
+	public List<Expression> expand(Layout layout) {
+		String pattern = findPattern();
+		if (pattern == null) {
+			return Collections.singletonList(this);
+		}
+
+		NameFilter filter = NameFilter.of(Collections.singletonList(pattern), Collections.emptyList());
+		List<Expression> expanded = new ArrayList<>();
+		for (int i = 0; i < layout.size(); i++) {
+			if (layout.getKind(i) != Layout.TEXT && filter.test(layout.getName(i))) {
+				expanded.addAll(replace(pattern, layout.getName(i)).expand(layout));
+			}
+		}
+		return expanded;
+	}
+
+	private String findPattern() {
+		if (!isFunction()) {
+			return name.indexOf('*') >= 0 ? name : null;
+		}
+		for (Expression argument : arguments) {
+			String pattern = argument.findPattern();
+			if (pattern != null) {
+				return pattern;
+			}
+		}
+		return null;
+	}
+
+	private Expression replace(String pattern, String attribute) {
+		if (!isFunction()) {
+			return name.equals(pattern) ? new Expression(attribute, null) : this;
+		}
+		List<Expression> replaced = new ArrayList<>(arguments.size());
+		for (Expression argument : arguments) {
+			replaced.add(argument.replace(pattern, attribute));
+		}
+		return new Expression(name, replaced);
+	}
+
+	@Override
+	public String toString() {
+		if (!isFunction()) {
+			return name;
+		}
+		StringBuilder text = new StringBuilder(name).append('(');
+		for (int i = 0; i < arguments.size(); i++) {
+			text.append(i == 0 ? "" : ",").append(arguments.get(i));
+		}
+		return text.append(')').toString();
+	}
+
+	/**
+	 * Recursive descent parser of expressions.
+	 */
+	private static class Parser {
+
+		static final Pattern NUMBER = Pattern.compile("[-+]?[0-9]+(\\.[0-9]+)?");
+
+		private final String spec;
+
+		private int position;
+
+		Parser(String spec) {
+			this.spec = spec;
+		}
+
+		Expression expression() {
+			String token = token();
+			if (!accept('(')) {
+				return new Expression(token, null);
+			}
+
+			List<Expression> arguments = new ArrayList<>();
+			if (!accept(')')) {
+				do {
+					arguments.add(expression());
+				} while (accept(','));
+				expect(')');
+			}
+			return new Expression(token, arguments);
+		}
+
+		boolean accept(char c) {
+			skipWhitespace();
+			if (position < spec.length() && spec.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		void end() {
+			skipWhitespace();
+			if (position < spec.length()) {
+				throw error("unexpected '" + spec.charAt(position) + "'");
+			}
+		}
+
+		private void expect(char c) {
+			if (!accept(c)) {
+				throw error("'" + c + "' is expected");
+			}
+		}
+
+		private String token() {
+			skipWhitespace();
+			int start = position;
+			while (position < spec.length() && "(),".indexOf(spec.charAt(position)) < 0) {
+				position++;
+			}
+			String token = spec.substring(start, position).trim();
+			if (token.isEmpty()) {
+				throw error("name is expected");
+			}
+			return token;
+		}
+
+		private void skipWhitespace() {
+			while (position < spec.length() && Character.isWhitespace(spec.charAt(position))) {
+				position++;
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at " + position + " of " + spec);
+		}
+
+	}
+
+}
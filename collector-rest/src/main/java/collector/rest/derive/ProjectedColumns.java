@@ -0,0 +1,84 @@
+package collector.rest.derive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import collector.rest.series.SampleSink;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Stage passing only the selected columns of samples to the sink.
+ * <p>The projected layout is created once when the layout of attributes changes.</p>
+ */
+public class ProjectedColumns implements SampleSink {
+
+	private final Predicate<String> selected;
+
+	private final SampleSink sink;
+
+	private final Row projected = new Row();
+
+	private Layout source;
+
+	private Layout layout;
+
+	/** Index of source column of each projected column. */
+	private int[] columns;
+
+	/**
+	 * Constructor.
+	 * @param selected predicate selecting columns by their names
+	 * @param sink destination of the projected samples
+	 */
+	public ProjectedColumns(Predicate<String> selected, SampleSink sink) {
+		this.selected = selected;
+		this.sink = sink;
+	}
+
+	/**
+	 * Get the names of the columns projected from the last layout.
+	 * @return names of the projected columns, empty before the first sample
+	 */
+	public List<String> getNames() {
+		List<String> names = new ArrayList<>();
+		if (layout != null) {
+			for (int i = 0; i < layout.size(); i++) {
+				names.add(layout.getName(i));
+			}
+		}
+		return names;
+	}
+
+	@Override
+	public void accept(long timestamp, Layout layout, Row row) {
+		if (layout != source) {
+			bind(layout);
+		}
+
+		projected.resize(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			projected.set(i, row, columns[i]);
+		}
+		sink.accept(timestamp, this.layout, projected);
+	}
+
+	private void bind(Layout layout) {
+		List<String> names = new ArrayList<>();
+		List<String> types = new ArrayList<>();
+		List<Integer> indexes = new ArrayList<>();
+		for (int i = 0; i < layout.size(); i++) {
+			if (selected.test(layout.getName(i))) {
+				names.add(layout.getName(i));
+				types.add(layout.getType(i));
+				indexes.add(i);
+			}
+		}
+
+		this.source = layout;
+		this.layout = Layout.of(names, types);
+		this.columns = indexes.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+}
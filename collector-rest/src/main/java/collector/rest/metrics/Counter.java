@@ -0,0 +1,28 @@
+package collector.rest.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter updated on the hot path without contention.
+ */
+public final class Counter {
+
+	private final LongAdder value = new LongAdder();
+
+	/**
+	 * Add an amount to the counter.
+	 * @param amount non-negative amount such as a number of bytes
+	 */
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	public void increment() {
+		value.increment();
+	}
+
+	public long get() {
+		return value.sum();
+	}
+
+}
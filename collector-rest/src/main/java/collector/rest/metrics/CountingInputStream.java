@@ -0,0 +1,49 @@
+package collector.rest.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream adding the number of bytes read to a {@link Counter}.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private final Counter counter;
+
+	/**
+	 * Constructor.
+	 * @param in input stream to be read
+	 * @param counter counter of bytes read
+	 */
+	public CountingInputStream(InputStream in, Counter counter) {
+		super(in);
+		this.counter = counter;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			counter.increment();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			counter.add(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		counter.add(skipped);
+		return skipped;
+	}
+
+}
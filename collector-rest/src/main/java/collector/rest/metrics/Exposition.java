@@ -0,0 +1,171 @@
+package collector.rest.metrics;
+
+/**
+ * Helpers rendering metrics in Prometheus text format.
+ */
+public final class Exposition {
+
+	/** Media type of Prometheus text format. */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/** Media type of OpenMetrics text format. */
+	public static final String OPENMETRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private Exposition() {
+	}
+
+	/**
+	 * Append the comments describing a metric family.
+	 * @param out buffer to which the comments are appended
+	 * @param name name of the metric family
+	 * @param type {@code counter}, {@code gauge} or {@code histogram}
+	 * @param help description of the metric family
+	 */
+	public static void appendFamily(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Append a sample of an integer value.
+	 * @param out buffer to which the sample is appended
+	 * @param name name of the sample
+	 * @param labels labels rendered by {@link #labels(String...)}, may be empty
+	 * @param value value of the sample
+	 */
+	public static void appendSample(StringBuilder out, String name, String labels, long value) {
+		appendName(out, name, labels).append(value).append('\n');
+	}
+
+	/**
+	 * Append a sample of a decimal value.
+	 * @param out buffer to which the sample is appended
+	 * @param name name of the sample
+	 * @param labels labels rendered by {@link #labels(String...)}, may be empty
+	 * @param value value of the sample
+	 */
+	public static void appendSample(StringBuilder out, String name, String labels, double value) {
+		appendValue(appendName(out, name, labels), value);
+		out.append('\n');
+	}
+
+	private static StringBuilder appendName(StringBuilder out, String name, String labels) {
+		out.append(name);
+		if (!labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		return out.append(' ');
+	}
+
+	/**
+	 * Append a decimal value, representing non-finite values as the text formats do.
+	 * @param out buffer to which the value is appended
+	 * @param value value to be appended
+	 */
+	public static void appendValue(StringBuilder out, double value) {
+		if (Double.isNaN(value)) {
+			out.append("NaN");
+		} else if (Double.isInfinite(value)) {
+			out.append(value > 0 ? "+Inf" : "-Inf");
+		} else {
+			out.append(value);
+		}
+	}
+
+	/**
+	 * Append a timestamp in seconds with milliseconds, without formatting a decimal.
+	 * @param out buffer to which the timestamp is appended
+	 * @param millis time in milliseconds
+	 */
+	public static void appendTimestamp(StringBuilder out, long millis) {
+		long fraction = Math.floorMod(millis, 1000L);
+		out.append(Math.floorDiv(millis, 1000L)).append('.');
+		if (fraction < 100) {
+			out.append('0');
+		}
+		if (fraction < 10) {
+			out.append('0');
+		}
+		out.append(fraction);
+	}
+
+	/**
+	 * Convert a name such as {@code ThreadPoolStats} into a valid name in snake case,
+	 * such as {@code thread_pool_stats}.
+	 * @param name name in camel case, which may include invalid characters
+	 * @return name consisting of lower case letters, digits and underscores
+	 */
+	public static String snakeCase(String name) {
+		StringBuilder out = new StringBuilder(name.length() + 8);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				char previous = i > 0 ? name.charAt(i - 1) : '_';
+				boolean next = i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1));
+				if (out.length() > 0 && out.charAt(out.length() - 1) != '_'
+						&& (Character.isLowerCase(previous) || Character.isDigit(previous) || next)) {
+					out.append('_');
+				}
+				out.append(Character.toLowerCase(c));
+			} else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+				out.append(c);
+			} else if (out.length() > 0 && out.charAt(out.length() - 1) != '_') {
+				out.append('_');
+			}
+		}
+		while (out.length() > 0 && out.charAt(out.length() - 1) == '_') {
+			out.setLength(out.length() - 1);
+		}
+		if (out.length() == 0 || Character.isDigit(out.charAt(0))) {
+			out.insert(0, '_');
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Render labels, escaping their values.
+	 * @param pairs names and values of labels alternately
+	 * @return labels without braces, such as {@code location="https://host:9443"}
+	 */
+	public static String labels(String... pairs) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i + 1 < pairs.length; i += 2) {
+			if (out.length() > 0) {
+				out.append(',');
+			}
+			out.append(pairs[i]).append("=\"");
+			appendEscaped(out, pairs[i + 1]);
+			out.append('"');
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Append a value of a label, escaping backslashes, double quotes and line feeds.
+	 * @param out buffer to which the value is appended
+	 * @param value value of the label, {@code null} is rendered as empty
+	 */
+	public static void appendEscaped(StringBuilder out, String value) {
+		if (value == null) {
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			default:
+				out.append(c);
+				break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package collector.rest.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with fixed buckets from 100 microseconds to 10 seconds.
+ * <p>Observations only increment a bucket, the count and the sum, which are cumulated
+ * into the buckets of Prometheus text format when the histogram is exposed.</p>
+ */
+public final class Histogram {
+
+	/** Upper bounds of the buckets in seconds, excluding {@code +Inf}. */
+	private static final String[] BOUNDS = {
+			"0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025",
+			"0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10" };
+
+	/** Upper bounds of the buckets in nanoseconds. */
+	private static final long[] LIMITS = new long[BOUNDS.length];
+
+	/** Values of {@code le} labels. */
+	private static final String[] LABELS = new String[BOUNDS.length + 1];
+
+	static {
+		for (int i = 0; i < BOUNDS.length; i++) {
+			LIMITS[i] = (long) (Double.parseDouble(BOUNDS[i]) * TimeUnit.SECONDS.toNanos(1));
+			LABELS[i] = BOUNDS[i];
+		}
+		LABELS[BOUNDS.length] = "+Inf";
+	}
+
+	private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Constructor.
+	 */
+	public Histogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Observe a duration.
+	 * @param nanos duration in nanoseconds
+	 */
+	public void observe(long nanos) {
+		int i = 0;
+		while (i < LIMITS.length && nanos > LIMITS[i]) {
+			i++;
+		}
+		buckets[i].increment();
+		sum.add(Math.max(nanos, 0));
+	}
+
+	/**
+	 * Observe the duration since a start time.
+	 * @param start start time given by {@link System#nanoTime()}
+	 */
+	public void since(long start) {
+		observe(System.nanoTime() - start);
+	}
+
+	/**
+	 * Get the number of observations.
+	 * @return number of observations
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the sum of observations.
+	 * @return sum in seconds
+	 */
+	public double getSum() {
+		return sum.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**
+	 * Append the samples of the histogram in Prometheus text format.
+	 * @param out buffer to which the samples are appended
+	 * @param name name of the metric family
+	 * @param labels labels of the histogram rendered by {@link Exposition#labels(String...)},
+	 * may be empty
+	 */
+	public void appendTo(StringBuilder out, String name, String labels) {
+		long count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			count += buckets[i].sum();
+			out.append(name).append("_bucket{").append(labels);
+			if (!labels.isEmpty()) {
+				out.append(',');
+			}
+			out.append("le=\"").append(LABELS[i]).append("\"} ").append(count).append('\n');
+		}
+		Exposition.appendSample(out, name + "_sum", labels, getSum());
+		Exposition.appendSample(out, name + "_count", labels, count);
+	}
+
+}
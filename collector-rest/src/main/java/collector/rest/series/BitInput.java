@@ -0,0 +1,61 @@
+package collector.rest.series;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stream of bits read from a region of {@code ByteBuffer}, most significant first.
+ */
+final class BitInput {
+
+	private final ByteBuffer buffer;
+
+	private final int base;
+
+	/** Number of bits read. */
+	private long position;
+
+	/**
+	 * Constructor.
+	 * @param buffer buffer from which bits are read
+	 * @param base offset in bytes of the region
+	 */
+	BitInput(ByteBuffer buffer, int base) {
+		this.buffer = buffer;
+		this.base = base;
+	}
+
+	boolean readBit() {
+		return read(1) != 0;
+	}
+
+	/**
+	 * Read bits as the lowest bits of a value.
+	 * @param bits number of bits, from 1 to 64
+	 * @return value read
+	 */
+	long read(int bits) {
+		long value = 0;
+		int remaining = bits;
+		while (remaining > 0) {
+			int index = base + (int) (position >>> 3);
+			int available = 8 - (int) (position & 7);
+			int n = Math.min(available, remaining);
+			int chunk = ((buffer.get(index) & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+			value = (value << n) | chunk;
+			position += n;
+			remaining -= n;
+		}
+		return value;
+	}
+
+	/**
+	 * Read bits as a signed value in two's complement.
+	 * @param bits number of bits, from 1 to 64
+	 * @return value read
+	 */
+	long readSigned(int bits) {
+		long value = read(bits);
+		return bits == 64 ? value : (value << (64 - bits)) >> (64 - bits);
+	}
+
+}
@@ -0,0 +1,61 @@
+package collector.rest.series;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stream of bits written into a zero-filled region of {@code ByteBuffer}, most significant first.
+ */
+final class BitOutput {
+
+	private final ByteBuffer buffer;
+
+	private final int base;
+
+	/** Number of bits written. */
+	private long position;
+
+	/**
+	 * Constructor.
+	 * @param buffer buffer to which bits are written, whose region must be filled with zero
+	 * @param base offset in bytes of the region
+	 */
+	BitOutput(ByteBuffer buffer, int base) {
+		this.buffer = buffer;
+		this.base = base;
+	}
+
+	long position() {
+		return position;
+	}
+
+	/**
+	 * Get number of bytes occupied by the bits written.
+	 * @return number of bytes
+	 */
+	int bytes() {
+		return (int) ((position + 7) >>> 3);
+	}
+
+	void writeBit(boolean bit) {
+		write(bit ? 1L : 0L, 1);
+	}
+
+	/**
+	 * Write the lowest bits of a value.
+	 * @param value value to be written
+	 * @param bits number of bits, from 1 to 64
+	 */
+	void write(long value, int bits) {
+		int remaining = bits;
+		while (remaining > 0) {
+			int index = base + (int) (position >>> 3);
+			int available = 8 - (int) (position & 7);
+			int n = Math.min(available, remaining);
+			int chunk = (int) ((value >>> (remaining - n)) & ((1L << n) - 1));
+			buffer.put(index, (byte) (buffer.get(index) | (chunk << (available - n))));
+			position += n;
+			remaining -= n;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package collector.rest.series;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Encoding of numeric values into 64-bit cells.
+ * <p>A cell of {@link Layout#INTEGER} holds the value itself, or {@link #MISSING} for a value
+ * not being a number. A cell of {@link Layout#DECIMAL} holds the bits of {@code double},
+ * or {@code NaN} for a value not being a number.</p>
+ */
+final class Cells {
+
+	/** Cell of {@link Layout#INTEGER} for a value not being a number. */
+	static final long MISSING = Long.MIN_VALUE;
+
+	/** Cell of {@link Layout#DECIMAL} for a value not being a number. */
+	static final long MISSING_DECIMAL = Double.doubleToRawLongBits(Double.NaN);
+
+	private Cells() {
+	}
+
+	/**
+	 * Encode the value of a numeric column.
+	 * @param kind kind of the column in the layout
+	 * @param row values of a sample
+	 * @param column index of the column
+	 * @return encoded cell
+	 */
+	static long encode(int kind, Row row, int column) {
+		boolean available = column < row.size() && row.getKind(column) == kind;
+		if (kind == Layout.INTEGER) {
+			return available ? row.getInteger(column) : MISSING;
+		} else {
+			return available ? Double.doubleToRawLongBits(row.getDecimal(column)) : MISSING_DECIMAL;
+		}
+	}
+
+	/**
+	 * Get the text of a text column.
+	 * @param row values of a sample
+	 * @param column index of the column
+	 * @return the text, empty if the column does not hold a text
+	 */
+	static String text(Row row, int column) {
+		boolean available = column < row.size() && row.getKind(column) == Layout.TEXT;
+		return available ? row.getText(column) : "";
+	}
+
+	/**
+	 * Decode a cell of a numeric column into the row.
+	 * @param kind kind of the column
+	 * @param cell encoded cell
+	 * @param row row to which the value is stored
+	 * @param column index of the column
+	 */
+	static void decode(int kind, long cell, Row row, int column) {
+		if (kind == Layout.INTEGER) {
+			if (cell == MISSING) {
+				row.setText(column, "");
+			} else {
+				row.setInteger(column, cell);
+			}
+		} else {
+			double decimal = Double.longBitsToDouble(cell);
+			if (Double.isNaN(decimal)) {
+				row.setText(column, "");
+			} else {
+				row.setDecimal(column, decimal);
+			}
+		}
+	}
+
+	/**
+	 * Get the value of a cell of a numeric column as {@code double}.
+	 * @param kind kind of the column
+	 * @param cell encoded cell
+	 * @return the value, or {@code NaN} for a value not being a number
+	 */
+	static double number(int kind, long cell) {
+		if (kind == Layout.INTEGER) {
+			return cell == MISSING ? Double.NaN : cell;
+		} else {
+			return Double.longBitsToDouble(cell);
+		}
+	}
+
+}
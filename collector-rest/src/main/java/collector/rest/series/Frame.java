@@ -0,0 +1,65 @@
+package collector.rest.series;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Samples copied out of a {@link RingSeries} as the result of a query.
+ */
+public class Frame {
+
+	private final Layout layout;
+
+	private final int size;
+
+	private final long[] timestamps;
+
+	/** Kind of each column, which is {@link Layout#DECIMAL} for downsampled numbers. */
+	private final int[] kinds;
+
+	/** Cells of each column encoded as described in {@link Cells}. */
+	private final long[][] cells;
+
+	/** Texts of each column, {@code null} for numeric columns. */
+	private final String[][] texts;
+
+	Frame(Layout layout, int size, long[] timestamps, int[] kinds, long[][] cells, String[][] texts) {
+		this.layout = layout;
+		this.size = size;
+		this.timestamps = timestamps;
+		this.kinds = kinds;
+		this.cells = cells;
+		this.texts = texts;
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	/**
+	 * Load a sample into {@code row}.
+	 * @param index index of the sample, 0 for the oldest
+	 * @param row row to which the values are loaded
+	 * @return {@code row}
+	 */
+	public Row load(int index, Row row) {
+		row.resize(kinds.length);
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				row.setText(column, texts[column][index]);
+			} else {
+				Cells.decode(kinds[column], cells[column][index], row, column);
+			}
+		}
+		return row;
+	}
+
+}
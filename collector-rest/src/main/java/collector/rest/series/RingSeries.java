@@ -0,0 +1,314 @@
+package collector.rest.series;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Columnar ring buffer of samples of a statistics.
+ * <p>Timestamps and numbers are stored in primitive cells laid out column by column,
+ * optionally off-heap in direct {@code ByteBuffer}; only texts are held as references.
+ * The buffer is allocated for a few samples and doubled as samples are appended up to the capacity,
+ * and once the buffer is filled, the oldest sample is overwritten.
+ * Samples are cleared when the layout of attributes has been changed.
+ * Numbers are encoded into cells as described in {@link Cells}.</p>
+ */
+public class RingSeries implements SampleSink {
+
+	/** Number of slots allocated per column at first. */
+	static final int INITIAL_SLOTS = 64;
+
+	private final int capacity;
+
+	private final boolean direct;
+
+	private Layout layout = Layout.EMPTY;
+
+	/** Number of slots allocated per column, growing up to the capacity. */
+	private int stride;
+
+	private LongBuffer timestamps;
+
+	/** Cells of all numeric columns, the cell of (column, slot) is at column * stride + slot. */
+	private LongBuffer cells;
+
+	/** Texts of each column, {@code null} for numeric columns. */
+	private String[][] texts = new String[0][];
+
+	/** Number of samples appended since the layout was determined. */
+	private long count;
+
+	/**
+	 * Constructor.
+	 * @param capacity maximum number of samples kept
+	 * @param direct specify {@code true} for storing cells off-heap
+	 */
+	public RingSeries(int capacity, boolean direct) {
+		this.capacity = Math.max(capacity, 1);
+		this.direct = direct;
+		this.stride = Math.min(INITIAL_SLOTS, this.capacity);
+		this.timestamps = allocate(stride);
+		this.cells = allocate(0);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Get number of samples kept.
+	 * @return number of samples, up to the capacity
+	 */
+	public synchronized int size() {
+		return (int) Math.min(count, capacity);
+	}
+
+	@Override
+	public void accept(long timestamp, Layout layout, Row row) {
+		append(timestamp, layout, row);
+	}
+
+	/**
+	 * Append a sample, clearing the samples if the layout has been changed.
+	 * @param timestamp time of the sample in milliseconds, not earlier than the last sample
+	 * @param layout layout of attributes of the sample
+	 * @param row values of the sample
+	 */
+	public synchronized void append(long timestamp, Layout layout, Row row) {
+		if (layout != this.layout) {
+			reset(layout);
+		}
+
+		int slot = (int) (count % capacity);
+		if (slot >= stride) {
+			grow();
+		}
+		timestamps.put(slot, timestamp);
+		for (int column = 0; column < layout.size(); column++) {
+			int kind = layout.getKind(column);
+			if (kind == Layout.TEXT) {
+				texts[column][slot] = Cells.text(row, column);
+			} else {
+				cells.put(column * stride + slot, Cells.encode(kind, row, column));
+			}
+		}
+		count++;
+	}
+
+	/**
+	 * Get the latest samples.
+	 * @param n maximum number of samples
+	 * @return the latest {@code n} samples in chronological order
+	 */
+	public synchronized Frame last(int n) {
+		int size = size();
+		return copy(Math.max(size - Math.max(n, 0), 0), size);
+	}
+
+	/**
+	 * Get the samples within the range of time.
+	 * @param from the time in milliseconds, inclusive
+	 * @param to the time in milliseconds, exclusive
+	 * @return samples in chronological order
+	 */
+	public synchronized Frame range(long from, long to) {
+		return copy(lowerBound(from), lowerBound(to));
+	}
+
+	/**
+	 * Get the samples within the range of time, downsampled by averaging numbers in each step.
+	 * Steps are aligned to {@code from}, and the timestamp of a downsampled sample is
+	 * the beginning of its step. A text is the latest one in the step.
+	 * Steps without samples are omitted.
+	 * @param from the time in milliseconds, inclusive
+	 * @param to the time in milliseconds, exclusive
+	 * @param step width of a step in milliseconds
+	 * @return downsampled samples in chronological order
+	 */
+	public synchronized Frame downsample(long from, long to, long step) {
+		int begin = lowerBound(from);
+		int end = lowerBound(to);
+		if (step <= 0 || begin >= end) {
+			return copy(begin, end);
+		}
+
+		int columns = layout.size();
+		int[] kinds = new int[columns];
+		for (int column = 0; column < columns; column++) {
+			kinds[column] = layout.getKind(column) == Layout.TEXT ? Layout.TEXT : Layout.DECIMAL;
+		}
+		int buckets = end - begin;
+		long[] resultTimes = new long[buckets];
+		long[][] resultCells = new long[columns][buckets];
+		String[][] resultTexts = new String[columns][];
+		for (int column = 0; column < columns; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				resultTexts[column] = new String[buckets];
+			}
+		}
+
+		double[] sums = new double[columns];
+		int[] counts = new int[columns];
+		int size = 0;
+		long current = Long.MIN_VALUE;
+		for (int index = begin; index < end; index++) {
+			int slot = slotOf(index);
+			long bucket = from + (timestamps.get(slot) - from) / step * step;
+			if (bucket != current) {
+				if (current != Long.MIN_VALUE) {
+					flush(size++, current, sums, counts, kinds, resultTimes, resultCells);
+				}
+				current = bucket;
+				Arrays.fill(sums, 0.0d);
+				Arrays.fill(counts, 0);
+			}
+			for (int column = 0; column < columns; column++) {
+				double value = numberAt(column, slot);
+				if (kinds[column] == Layout.TEXT) {
+					resultTexts[column][size] = texts[column][slot];
+				} else if (!Double.isNaN(value)) {
+					sums[column] += value;
+					counts[column]++;
+				}
+			}
+		}
+		flush(size++, current, sums, counts, kinds, resultTimes, resultCells);
+
+		return new Frame(layout, size, resultTimes, kinds, resultCells, resultTexts);
+	}
+
+	private static void flush(int index, long timestamp, double[] sums, int[] counts,
+			int[] kinds, long[] resultTimes, long[][] resultCells) {
+		resultTimes[index] = timestamp;
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] != Layout.TEXT) {
+				resultCells[column][index] = counts[column] == 0 ? Cells.MISSING_DECIMAL
+						: Double.doubleToRawLongBits(sums[column] / counts[column]);
+			}
+		}
+	}
+
+	private double numberAt(int column, int slot) {
+		int kind = layout.getKind(column);
+		return kind == Layout.TEXT ? Double.NaN
+				: Cells.number(kind, cells.get(column * stride + slot));
+	}
+
+	/**
+	 * Copy the samples into {@code Frame}.
+	 * @param begin logical index of the first sample, 0 for the oldest
+	 * @param end logical index after the last sample
+	 * @return samples copied
+	 */
+	private Frame copy(int begin, int end) {
+		int size = Math.max(end - begin, 0);
+		int columns = layout.size();
+		int[] kinds = new int[columns];
+		long[] resultTimes = new long[size];
+		long[][] resultCells = new long[columns][];
+		String[][] resultTexts = new String[columns][];
+		for (int column = 0; column < columns; column++) {
+			kinds[column] = layout.getKind(column);
+			if (kinds[column] == Layout.TEXT) {
+				resultTexts[column] = new String[size];
+			} else {
+				resultCells[column] = new long[size];
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			int slot = slotOf(begin + i);
+			resultTimes[i] = timestamps.get(slot);
+			for (int column = 0; column < columns; column++) {
+				if (kinds[column] == Layout.TEXT) {
+					resultTexts[column][i] = texts[column][slot];
+				} else {
+					resultCells[column][i] = cells.get(column * stride + slot);
+				}
+			}
+		}
+		return new Frame(layout, size, resultTimes, kinds, resultCells, resultTexts);
+	}
+
+	/**
+	 * Find the first sample whose timestamp is not earlier than the specified time.
+	 * @param time the time in milliseconds
+	 * @return logical index of the sample, or the size if there is no such sample
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestampAt(middle) < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long timestampAt(int index) {
+		return timestamps.get(slotOf(index));
+	}
+
+	private int slotOf(int index) {
+		long oldest = count - size();
+		return (int) ((oldest + index) % capacity);
+	}
+
+	private void reset(Layout layout) {
+		this.layout = layout;
+		this.count = 0;
+		this.stride = Math.min(INITIAL_SLOTS, capacity);
+		this.timestamps = allocate(stride);
+		this.cells = allocate(layout.size() * stride);
+		this.texts = new String[layout.size()][];
+		for (int column = 0; column < layout.size(); column++) {
+			if (layout.getKind(column) == Layout.TEXT) {
+				texts[column] = new String[stride];
+			}
+		}
+	}
+
+	/**
+	 * Double the slots allocated per column up to the capacity, before the buffer wraps around.
+	 */
+	private void grow() {
+		int grown = (int) Math.min(stride * 2L, capacity);
+		LongBuffer grownTimestamps = allocate(grown);
+		LongBuffer grownCells = allocate(layout.size() * grown);
+		for (int slot = 0; slot < stride; slot++) {
+			grownTimestamps.put(slot, timestamps.get(slot));
+		}
+		for (int column = 0; column < layout.size(); column++) {
+			if (texts[column] != null) {
+				texts[column] = Arrays.copyOf(texts[column], grown);
+			} else {
+				for (int slot = 0; slot < stride; slot++) {
+					grownCells.put(column * grown + slot, cells.get(column * stride + slot));
+				}
+			}
+		}
+		timestamps = grownTimestamps;
+		cells = grownCells;
+		stride = grown;
+	}
+
+	private LongBuffer allocate(int size) {
+		if (direct) {
+			return ByteBuffer.allocateDirect(size * Long.BYTES).asLongBuffer();
+		} else {
+			return LongBuffer.wrap(new long[size]);
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package collector.rest.series;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Destination of samples of a statistics.
+ */
+@FunctionalInterface
+public interface SampleSink {
+
+	/**
+	 * Accept a sample. {@code row} is reused by the caller after this method returns.
+	 * @param timestamp time of the sample in milliseconds
+	 * @param layout layout of attributes of the sample
+	 * @param row values of the sample
+	 */
+	void accept(long timestamp, Layout layout, Row row);
+
+	/**
+	 * Compose a sink passing a sample to this sink and then to {@code next}.
+	 * @param next sink receiving the sample after this sink
+	 * @return composed sink
+	 */
+	default SampleSink andThen(SampleSink next) {
+		return (timestamp, layout, row) -> {
+			accept(timestamp, layout, row);
+			next.accept(timestamp, layout, row);
+		};
+	}
+
+}
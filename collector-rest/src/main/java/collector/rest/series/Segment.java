@@ -0,0 +1,169 @@
+package collector.rest.series;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import collector.rest.stat.Layout;
+
+/**
+ * Format of a segment file holding samples of a statistics.
+ * <pre>
+ * header: int magic, short version, utf id, long first timestamp,
+ *         int number of columns, (utf name, utf type) for each column
+ * blocks: (int number of samples, int number of bits, bits) repeated,
+ *         terminated by a block of 0 sample or the end of file
+ * </pre>
+ * <p>A {@code utf} is an unsigned short length followed by the bytes in UTF-8.
+ * Each block is compressed independently:</p>
+ * <ul>
+ * <li>The timestamp of the first sample is written in 64 bits,
+ * the following ones are written as delta-of-delta in variable length.</li>
+ * <li>The cells of numeric columns are written in 64 bits for the first sample,
+ * the following ones are written as XOR with the previous cell in Gorilla style.</li>
+ * <li>A text is written only if it is changed from the previous sample.</li>
+ * </ul>
+ */
+public final class Segment {
+
+	/** Magic number of a segment file, "PMIS". */
+	static final int MAGIC = 0x504D4953;
+
+	static final short VERSION = 1;
+
+	/** Suffix of the name of a segment file. */
+	static final String SUFFIX = ".seg";
+
+	/** Maximum number of samples in a block. */
+	static final int BLOCK_SAMPLES = 256;
+
+	/** Number of bytes of the header of a block. */
+	static final int BLOCK_HEADER = 8;
+
+	/** Maximum number of bytes of a text. */
+	static final int MAX_TEXT = 0xFFFF;
+
+	private Segment() {
+	}
+
+	/**
+	 * Get the name of a segment file.
+	 * @param id ID of statistics
+	 * @param sequence sequence number of the segment
+	 * @return file name
+	 */
+	public static String fileName(String id, int sequence) {
+		return String.format("%s.%06d%s", id, sequence, SUFFIX);
+	}
+
+	/**
+	 * Determine whether a file is a segment of any statistics.
+	 * @param path path of the file
+	 * @return {@code true} if the name of the file has the suffix of segments
+	 */
+	public static boolean isSegment(Path path) {
+		return path.getFileName().toString().endsWith(SUFFIX);
+	}
+
+	/**
+	 * Get the sequence number of a segment file.
+	 * @param id ID of statistics
+	 * @param path path of the file
+	 * @return sequence number, or -1 if the file is not a segment of the statistics
+	 */
+	public static int sequenceOf(String id, Path path) {
+		return sequenceOf(id, path.getFileName().toString());
+	}
+
+	/**
+	 * Get the sequence number from the name of a segment file.
+	 * @param id ID of statistics
+	 * @param fileName file name
+	 * @return sequence number, or -1 if the file is not a segment of the statistics
+	 */
+	static int sequenceOf(String id, String fileName) {
+		String prefix = id + ".";
+		if (!fileName.startsWith(prefix) || !fileName.endsWith(SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(
+					fileName.substring(prefix.length(), fileName.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Write the header of a segment.
+	 * @param buffer buffer positioned at the beginning of the segment
+	 * @param id ID of statistics
+	 * @param first the timestamp of the first sample
+	 * @param layout layout of attributes
+	 */
+	static void writeHeader(ByteBuffer buffer, String id, long first, Layout layout) {
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		putUtf(buffer, id);
+		buffer.putLong(first);
+		buffer.putInt(layout.size());
+		for (int column = 0; column < layout.size(); column++) {
+			putUtf(buffer, layout.getName(column));
+			putUtf(buffer, layout.getType(column));
+		}
+	}
+
+	/**
+	 * Estimate number of bytes of the header of a segment.
+	 * @param id ID of statistics
+	 * @param layout layout of attributes
+	 * @return upper bound of number of bytes
+	 */
+	static int headerSize(String id, Layout layout) {
+		int size = 4 + 2 + 2 + id.length() * 3 + 8 + 4;
+		for (int column = 0; column < layout.size(); column++) {
+			size += 4 + (layout.getName(column).length() + layout.getType(column).length()) * 3;
+		}
+		return size;
+	}
+
+	/**
+	 * Read the header of a segment.
+	 * @param buffer buffer positioned at the beginning of the segment, positioned after the header
+	 * @return layout of attributes
+	 * @throws IOException the segment is not valid
+	 */
+	static Layout readHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 6 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+			throw new IOException("not a segment file");
+		}
+		getUtf(buffer);
+		buffer.getLong();
+		int columns = buffer.getInt();
+		List<String> names = new ArrayList<>(columns);
+		List<String> types = new ArrayList<>(columns);
+		for (int column = 0; column < columns; column++) {
+			names.add(getUtf(buffer));
+			types.add(getUtf(buffer));
+		}
+		return Layout.of(names, types);
+	}
+
+	private static void putUtf(ByteBuffer buffer, String value) {
+		byte[] bytes = value.getBytes(UTF_8);
+		int length = Math.min(bytes.length, MAX_TEXT);
+		buffer.putShort((short) length);
+		buffer.put(bytes, 0, length);
+	}
+
+	private static String getUtf(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+}
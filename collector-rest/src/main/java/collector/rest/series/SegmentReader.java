@@ -0,0 +1,197 @@
+package collector.rest.series;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Reader of a memory-mapped segment file in the format of {@link Segment}.
+ */
+public final class SegmentReader {
+
+	private final MappedByteBuffer buffer;
+
+	private final Layout layout;
+
+	private final int[] kinds;
+
+	private final long[] cells;
+
+	private final int[] leading;
+
+	private final int[] trailing;
+
+	private final String[] texts;
+
+	private final Row row = new Row();
+
+	private BitInput in;
+
+	private long previousTimestamp;
+
+	private long previousDelta;
+
+	private SegmentReader(MappedByteBuffer buffer, Layout layout) {
+		this.buffer = buffer;
+		this.layout = layout;
+		this.kinds = new int[layout.size()];
+		for (int column = 0; column < kinds.length; column++) {
+			kinds[column] = layout.getKind(column);
+		}
+		this.cells = new long[kinds.length];
+		this.leading = new int[kinds.length];
+		this.trailing = new int[kinds.length];
+		this.texts = new String[kinds.length];
+		row.resize(kinds.length);
+	}
+
+	/**
+	 * Read the timestamp of the first sample of a segment file.
+	 * @param file path of the segment file
+	 * @return the timestamp in milliseconds
+	 * @throws IOException fail to read the segment file
+	 */
+	public static long first(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			Segment.readHeader(buffer);
+			int offset = buffer.position();
+			if (offset + Segment.BLOCK_HEADER + 8 > buffer.limit() || buffer.getInt(offset) <= 0) {
+				return Long.MAX_VALUE;
+			}
+			return buffer.getLong(offset + Segment.BLOCK_HEADER);
+		}
+	}
+
+	/**
+	 * Replay the samples of a segment file within the range of time.
+	 * @param file path of the segment file
+	 * @param from the time in milliseconds, inclusive
+	 * @param to the time in milliseconds, exclusive
+	 * @param sink destination of the samples
+	 * @throws IOException fail to read the segment file
+	 */
+	public static void replay(Path file, long from, long to, SampleSink sink) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return;
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			SegmentReader reader = new SegmentReader(buffer, Segment.readHeader(buffer));
+			reader.replay(buffer.position(), from, to, sink);
+		}
+	}
+
+	private void replay(int start, long from, long to, SampleSink sink) {
+		int offset = start;
+		int limit = buffer.limit();
+		while (offset + Segment.BLOCK_HEADER <= limit) {
+			int count = buffer.getInt(offset);
+			long bits = buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+			if (count <= 0) {
+				return;
+			}
+			int next = offset + Segment.BLOCK_HEADER + (int) ((bits + 7) >>> 3);
+
+			// every sample of this block is earlier than the first sample of the next block
+			boolean skip = next + Segment.BLOCK_HEADER + 8 <= limit && buffer.getInt(next) > 0
+					&& buffer.getLong(next + Segment.BLOCK_HEADER) <= from;
+			if (!skip) {
+				in = new BitInput(buffer, offset + Segment.BLOCK_HEADER);
+				for (int i = 0; i < count; i++) {
+					long timestamp = (i == 0) ? readFirst() : readNext();
+					if (timestamp >= to) {
+						return;
+					} else if (timestamp >= from) {
+						sink.accept(timestamp, layout, row);
+					}
+				}
+			}
+			offset = next;
+		}
+	}
+
+	private long readFirst() {
+		previousTimestamp = in.read(64);
+		previousDelta = 0;
+
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				readText(column);
+			} else {
+				cells[column] = in.read(64);
+				leading[column] = -1;
+				Cells.decode(kinds[column], cells[column], row, column);
+			}
+		}
+		return previousTimestamp;
+	}
+
+	private long readNext() {
+		previousDelta += readDeltaOfDelta();
+		previousTimestamp += previousDelta;
+
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				readText(column);
+			} else {
+				cells[column] ^= readXor(column);
+				Cells.decode(kinds[column], cells[column], row, column);
+			}
+		}
+		return previousTimestamp;
+	}
+
+	private long readDeltaOfDelta() {
+		if (!in.readBit()) {
+			return 0;
+		} else if (!in.readBit()) {
+			return in.readSigned(7);
+		} else if (!in.readBit()) {
+			return in.readSigned(9);
+		} else if (!in.readBit()) {
+			return in.readSigned(12);
+		} else if (!in.readBit()) {
+			return in.readSigned(32);
+		} else {
+			return in.read(64);
+		}
+	}
+
+	private long readXor(int column) {
+		if (!in.readBit()) {
+			return 0;
+		}
+		if (!in.readBit()) {
+			return in.read(64 - leading[column] - trailing[column]) << trailing[column];
+		}
+		int lead = (int) in.read(5);
+		int meaningful = (int) in.read(6) + 1;
+		leading[column] = lead;
+		trailing[column] = 64 - lead - meaningful;
+		return in.read(meaningful) << trailing[column];
+	}
+
+	private void readText(int column) {
+		if (!in.readBit()) {
+			row.setText(column, texts[column]);
+			return;
+		}
+		byte[] bytes = new byte[(int) in.read(16)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) in.read(8);
+		}
+		texts[column] = new String(bytes, UTF_8);
+		row.setText(column, texts[column]);
+	}
+
+}
@@ -0,0 +1,283 @@
+package collector.rest.series;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Writer appending samples to a memory-mapped segment file in the format of {@link Segment}.
+ * <p>The file is mapped with its full size at creation and truncated on {@link #close()}.
+ * Every sample is written through to the mapping, so samples appended survive the crash of
+ * the process; a reader stops at the first block without samples.</p>
+ */
+public class SegmentWriter implements Closeable {
+
+	private final Path file;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final Layout layout;
+
+	private final long first;
+
+	private final int[] kinds;
+
+	private final long[] previousCells;
+
+	private final int[] leading;
+
+	private final int[] trailing;
+
+	private final String[] previousTexts;
+
+	/** Number of bytes used in the file. */
+	private int end;
+
+	/** Offset of the block being written. */
+	private int block = -1;
+
+	private int blockCount;
+
+	private BitOutput out;
+
+	private long previousTimestamp;
+
+	private long previousDelta;
+
+	private boolean closed;
+
+	private SegmentWriter(Path file, FileChannel channel, MappedByteBuffer buffer,
+			Layout layout, long first) {
+		this.file = file;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.layout = layout;
+		this.first = first;
+		this.kinds = new int[layout.size()];
+		for (int column = 0; column < kinds.length; column++) {
+			kinds[column] = layout.getKind(column);
+		}
+		this.previousCells = new long[kinds.length];
+		this.leading = new int[kinds.length];
+		this.trailing = new int[kinds.length];
+		this.previousTexts = new String[kinds.length];
+	}
+
+	/**
+	 * Create a segment file.
+	 * @param file path of the segment file, which must not exist
+	 * @param id ID of statistics
+	 * @param layout layout of attributes
+	 * @param first the timestamp of the first sample in milliseconds
+	 * @param size size of the segment file in bytes, enlarged to hold at least the header
+	 * @return writer of the created segment file
+	 * @throws IOException fail to create the segment file
+	 */
+	public static SegmentWriter create(Path file, String id, Layout layout, long first, int size)
+			throws IOException {
+		int capacity = Math.max(size, Segment.headerSize(id, layout) * 2 + 4096);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+			Segment.writeHeader(buffer, id, first, layout);
+			SegmentWriter writer = new SegmentWriter(file, channel, buffer, layout, first);
+			writer.end = buffer.position();
+			return writer;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Append a sample.
+	 * @param timestamp time of the sample in milliseconds, not earlier than the last sample
+	 * @param row values of the sample in the layout of this segment
+	 * @return {@code false} if the segment does not have enough room for the sample
+	 */
+	public synchronized boolean append(long timestamp, Row row) {
+		if (closed) {
+			return false;
+		}
+
+		int needed = estimate(row);
+		if (block < 0 || blockCount >= Segment.BLOCK_SAMPLES) {
+			if (end + Segment.BLOCK_HEADER + needed > buffer.capacity()) {
+				return false;
+			}
+			block = end;
+			blockCount = 0;
+			out = new BitOutput(buffer, block + Segment.BLOCK_HEADER);
+		} else if (block + Segment.BLOCK_HEADER + out.bytes() + needed > buffer.capacity()) {
+			return false;
+		}
+
+		if (blockCount == 0) {
+			writeFirst(timestamp, row);
+		} else {
+			writeNext(timestamp, row);
+		}
+
+		blockCount++;
+		buffer.putInt(block + 4, (int) out.position());
+		buffer.putInt(block, blockCount);
+		end = block + Segment.BLOCK_HEADER + out.bytes();
+		return true;
+	}
+
+	/**
+	 * Flush the mapping and truncate the file to the size used.
+	 * @throws IOException fail to truncate the file
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			buffer.force();
+			channel.truncate(end);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Estimate number of bytes for a sample.
+	 * @param row values of the sample
+	 * @return upper bound of number of bytes
+	 */
+	private int estimate(Row row) {
+		long bits = 5 + 64;
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				bits += 1 + 16 + Math.min(Cells.text(row, column).length() * 3L, Segment.MAX_TEXT) * 8;
+			} else {
+				bits += 2 + 5 + 6 + 64;
+			}
+		}
+		return (int) ((bits + 7) >>> 3);
+	}
+
+	private void writeFirst(long timestamp, Row row) {
+		out.write(timestamp, 64);
+		previousTimestamp = timestamp;
+		previousDelta = 0;
+
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				writeText(column, Cells.text(row, column));
+			} else {
+				long cell = Cells.encode(kinds[column], row, column);
+				out.write(cell, 64);
+				previousCells[column] = cell;
+				leading[column] = -1;
+			}
+		}
+	}
+
+	private void writeNext(long timestamp, Row row) {
+		long delta = timestamp - previousTimestamp;
+		writeDeltaOfDelta(delta - previousDelta);
+		previousTimestamp = timestamp;
+		previousDelta = delta;
+
+		for (int column = 0; column < kinds.length; column++) {
+			if (kinds[column] == Layout.TEXT) {
+				String text = Cells.text(row, column);
+				if (text.equals(previousTexts[column])) {
+					out.writeBit(false);
+				} else {
+					writeText(column, text);
+				}
+			} else {
+				long cell = Cells.encode(kinds[column], row, column);
+				writeXor(column, cell ^ previousCells[column]);
+				previousCells[column] = cell;
+			}
+		}
+	}
+
+	private void writeDeltaOfDelta(long value) {
+		if (value == 0) {
+			out.writeBit(false);
+		} else if (value >= -64 && value <= 63) {
+			out.write(0b10, 2);
+			out.write(value, 7);
+		} else if (value >= -256 && value <= 255) {
+			out.write(0b110, 3);
+			out.write(value, 9);
+		} else if (value >= -2048 && value <= 2047) {
+			out.write(0b1110, 4);
+			out.write(value, 12);
+		} else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+			out.write(0b11110, 5);
+			out.write(value, 32);
+		} else {
+			out.write(0b11111, 5);
+			out.write(value, 64);
+		}
+	}
+
+	private void writeXor(int column, long xor) {
+		if (xor == 0) {
+			out.writeBit(false);
+			return;
+		}
+		out.writeBit(true);
+
+		int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trail = Long.numberOfTrailingZeros(xor);
+		if (leading[column] >= 0 && lead >= leading[column] && trail >= trailing[column]) {
+			out.writeBit(false);
+			out.write(xor >>> trailing[column], 64 - leading[column] - trailing[column]);
+		} else {
+			int meaningful = 64 - lead - trail;
+			out.writeBit(true);
+			out.write(lead, 5);
+			out.write(meaningful - 1, 6);
+			out.write(xor >>> trail, meaningful);
+			leading[column] = lead;
+			trailing[column] = trail;
+		}
+	}
+
+	private void writeText(int column, String text) {
+		byte[] bytes = text.getBytes(UTF_8);
+		int length = Math.min(bytes.length, Segment.MAX_TEXT);
+		out.writeBit(true);
+		out.write(length, 16);
+		for (int i = 0; i < length; i++) {
+			out.write(bytes[i], 8);
+		}
+		previousTexts[column] = length == bytes.length ? text
+				: new String(Arrays.copyOf(bytes, length), UTF_8);
+	}
+
+}
@@ -0,0 +1,89 @@
+package collector.rest.sketch;
+
+import java.util.Map;
+
+import collector.rest.stream.Json;
+
+/**
+ * Sketches of an attribute over the sliding and tumbling windows,
+ * merged from one or more statistics.
+ */
+public class Aggregate {
+
+	private static final double[] QUANTILES = { 0.5d, 0.95d, 0.99d };
+
+	private static final String[] LABELS = { "p50", "p95", "p99" };
+
+	private final Sketch sliding = new Sketch();
+
+	private final Sketch tumbling = new Sketch();
+
+	/** Beginning of the tumbling window, the latest one of the merged windows. */
+	private long from = Long.MIN_VALUE;
+
+	public Sketch getSliding() {
+		return sliding;
+	}
+
+	public Sketch getTumbling() {
+		return tumbling;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	void merge(SlidingWindow slidingWindow, TumblingWindow tumblingWindow) {
+		slidingWindow.mergeInto(sliding);
+		tumblingWindow.mergeInto(tumbling);
+		from = Math.max(from, tumblingWindow.getStart());
+	}
+
+	/**
+	 * Append aggregates of attributes as a JSON object.
+	 * <p><code>{"span":300000,"attributes":{"name":{"sliding":{"count":0,"min":0,"p50":0,"p95":0,"p99":0,"max":0},
+	 * "tumbling":{"from":0,...}}}}</code></p>
+	 * @param out buffer to which the object is appended
+	 * @param span span of the windows in milliseconds
+	 * @param aggregates aggregates keyed by the name of attribute
+	 */
+	public static void appendJson(StringBuilder out, long span, Map<String, Aggregate> aggregates) {
+		out.append("{\"span\":").append(span).append(",\"attributes\":{");
+		String separator = "";
+		for (Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+			Json.appendString(out.append(separator), entry.getKey());
+			Aggregate aggregate = entry.getValue();
+			out.append(":{\"sliding\":{");
+			appendSketch(out, aggregate.sliding);
+			out.append("},\"tumbling\":{\"from\":");
+			if (aggregate.from == Long.MIN_VALUE) {
+				out.append("null");
+			} else {
+				out.append(aggregate.from);
+			}
+			out.append(',');
+			appendSketch(out, aggregate.tumbling);
+			out.append("}}");
+			separator = ",";
+		}
+		out.append("}}");
+	}
+
+	private static void appendSketch(StringBuilder out, Sketch sketch) {
+		out.append("\"count\":").append(sketch.getCount());
+		appendNumber(out.append(",\"min\":"), sketch.getMin());
+		for (int i = 0; i < QUANTILES.length; i++) {
+			appendNumber(out.append(",\"").append(LABELS[i]).append("\":"), sketch.quantile(QUANTILES[i]));
+		}
+		appendNumber(out.append(",\"max\":"), sketch.getMax());
+	}
+
+	private static void appendNumber(StringBuilder out, double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			out.append("null");
+		} else {
+			out.append(value);
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package collector.rest.sketch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import collector.rest.series.SampleSink;
+import collector.rest.stat.Layout;
+import collector.rest.stat.NameFilter;
+import collector.rest.stat.Row;
+
+/**
+ * Sink keeping sketches of selected attributes of a statistics
+ * over a sliding window and a tumbling window.
+ * <p>Attributes are selected by names, which may contain {@code *} matching any characters,
+ * among numeric attributes. The sketches of an attribute are kept across changes of the layout,
+ * so that memory per attribute is constant.</p>
+ */
+public class Percentiles implements SampleSink {
+
+	private final NameFilter selected;
+
+	private final long span;
+
+	private final int slices;
+
+	/** Windows keyed by the name of attribute. */
+	private final Map<String, Windows> windows = new HashMap<>();
+
+	private Layout layout;
+
+	/** Windows of each column, {@code null} for a column not selected. */
+	private Windows[] bound = new Windows[0];
+
+	/**
+	 * Constructor.
+	 * @param names comma-separated names of attributes
+	 * @param span span of the windows in milliseconds
+	 * @param slices number of slices dividing the sliding window
+	 */
+	public Percentiles(String names, long span, int slices) {
+		this.selected = NameFilter.parse(names, null);
+		this.span = span;
+		this.slices = slices;
+	}
+
+	/**
+	 * Create a sink if any attribute is selected.
+	 * @param names comma-separated names of attributes, may be empty
+	 * @param span span of the windows in milliseconds
+	 * @param slices number of slices dividing the sliding window
+	 * @return the sink, or {@code null} if no attribute is selected
+	 */
+	public static Percentiles of(String names, long span, int slices) {
+		return names == null || names.trim().isEmpty() ? null : new Percentiles(names, span, slices);
+	}
+
+	public long getSpan() {
+		return span;
+	}
+
+	@Override
+	public synchronized void accept(long timestamp, Layout layout, Row row) {
+		if (layout != this.layout) {
+			bind(layout);
+		}
+		for (int column = 0; column < bound.length; column++) {
+			if (bound[column] != null) {
+				double value = row.getNumber(column);
+				if (!Double.isNaN(value)) {
+					bound[column].sliding.add(timestamp, value);
+					bound[column].tumbling.add(timestamp, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merge the windows of all attributes into aggregates keyed by the name of attribute.
+	 * @param aggregates aggregates to which the windows are merged, created if absent
+	 */
+	public synchronized void mergeInto(Map<String, Aggregate> aggregates) {
+		windows.forEach((name, window) ->
+				aggregates.computeIfAbsent(name, key -> new Aggregate())
+						.merge(window.sliding, window.tumbling));
+	}
+
+	private void bind(Layout layout) {
+		this.layout = layout;
+		this.bound = new Windows[layout.size()];
+		for (int column = 0; column < layout.size(); column++) {
+			String name = layout.getName(column);
+			if (layout.getKind(column) != Layout.TEXT && selected.test(name)) {
+				bound[column] = windows.computeIfAbsent(name, key -> new Windows());
+			}
+		}
+	}
+
+	/**
+	 * Windows of an attribute.
+	 */
+	private class Windows {
+
+		private final SlidingWindow sliding = new SlidingWindow(span, slices);
+
+		private final TumblingWindow tumbling = new TumblingWindow(span);
+
+	}
+
+}
@@ -0,0 +1,170 @@
+package collector.rest.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch of non-negative values with relative accuracy.
+ * <p>Values are counted in buckets whose bounds grow geometrically, so that any quantile
+ * is estimated within 1% of the actual value. Buckets are allocated only for the range
+ * of values seen, and the range is bounded from {@value #MIN_VALUE} to {@value #MAX_VALUE};
+ * smaller values are counted as zero and larger values in the last bucket.
+ * Minimum and maximum are kept exactly.</p>
+ * <p>Sketches are merged by adding the counts of buckets, so that the sketch of
+ * a wider window or of several statistics is derived without the original values.</p>
+ */
+public class Sketch {
+
+	/** Smallest positive value distinguished from zero. */
+	public static final double MIN_VALUE = 1e-6;
+
+	/** Largest value distinguished from the others. */
+	public static final double MAX_VALUE = 1e12;
+
+	private static final double ACCURACY = 0.01d;
+
+	private static final double GAMMA = (1.0d + ACCURACY) / (1.0d - ACCURACY);
+
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+
+	private static final int MIN_INDEX = indexOf(MIN_VALUE);
+
+	private static final int MAX_INDEX = indexOf(MAX_VALUE);
+
+	/** Counts of buckets from {@link #offset}. */
+	private long[] counts = new long[0];
+
+	/** Index of the bucket counted in {@code counts[0]}. */
+	private int offset;
+
+	private long zeros;
+
+	private long count;
+
+	private double min = Double.NaN;
+
+	private double max = Double.NaN;
+
+	/**
+	 * Add a value, ignoring {@code NaN}.
+	 * @param value value to be added
+	 */
+	public void add(double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+
+		if (value < MIN_VALUE) {
+			zeros++;
+		} else {
+			int index = Math.min(indexOf(value), MAX_INDEX);
+			ensure(index, index);
+			counts[index - offset]++;
+		}
+		min = count == 0 ? value : Math.min(min, value);
+		max = count == 0 ? value : Math.max(max, value);
+		count++;
+	}
+
+	/**
+	 * Add all values counted in another sketch.
+	 * @param other sketch to be merged
+	 */
+	public void merge(Sketch other) {
+		if (other.count == 0) {
+			return;
+		}
+
+		if (other.counts.length > 0) {
+			ensure(other.offset, other.offset + other.counts.length - 1);
+			for (int i = 0; i < other.counts.length; i++) {
+				counts[other.offset + i - offset] += other.counts[i];
+			}
+		}
+		zeros += other.zeros;
+		min = count == 0 ? other.min : Math.min(min, other.min);
+		max = count == 0 ? other.max : Math.max(max, other.max);
+		count += other.count;
+	}
+
+	/**
+	 * Remove all values, keeping the buckets allocated.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0L);
+		zeros = 0;
+		count = 0;
+		min = Double.NaN;
+		max = Double.NaN;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Estimate the quantile.
+	 * @param q quantile between 0 and 1, such as 0.99
+	 * @return estimated value, {@code NaN} if no value has been added
+	 */
+	public double quantile(double q) {
+		if (count == 0) {
+			return Double.NaN;
+		} else if (q <= 0.0d) {
+			return min;
+		} else if (q >= 1.0d) {
+			return max;
+		}
+
+		long rank = (long) (q * (count - 1));
+		long seen = zeros;
+		if (rank < seen) {
+			return min;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (rank < seen) {
+				double estimated = 2.0d * Math.pow(GAMMA, offset + i) / (GAMMA + 1.0d);
+				return Math.max(min, Math.min(max, estimated));
+			}
+		}
+		return max;
+	}
+
+	private static int indexOf(double value) {
+		return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+	}
+
+	/**
+	 * Ensure the buckets covering the range of indexes are allocated.
+	 * @param low the lowest index
+	 * @param high the highest index
+	 */
+	private void ensure(int low, int high) {
+		low = Math.max(low, MIN_INDEX);
+		if (counts.length == 0) {
+			counts = new long[high - low + 1];
+			offset = low;
+			return;
+		}
+
+		int last = offset + counts.length - 1;
+		if (low >= offset && high <= last) {
+			return;
+		}
+		int from = Math.min(low, offset);
+		int to = Math.max(high, last);
+		long[] grown = new long[to - from + 1];
+		System.arraycopy(counts, 0, grown, offset - from, counts.length);
+		counts = grown;
+		offset = from;
+	}
+
+}
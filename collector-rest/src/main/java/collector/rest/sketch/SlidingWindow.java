@@ -0,0 +1,64 @@
+package collector.rest.sketch;
+
+/**
+ * Sketch of the values within a span of time ending at the latest value.
+ * <p>The span is divided into slices, each of which has its own sketch,
+ * and the oldest slice is cleared and reused as the time goes on.
+ * The window slides by the width of a slice.</p>
+ */
+public class SlidingWindow {
+
+	private final long width;
+
+	private final Sketch[] slices;
+
+	/** Number of each slice since the epoch, {@code Long.MIN_VALUE} for unused one. */
+	private final long[] numbers;
+
+	private long latest = Long.MIN_VALUE;
+
+	/**
+	 * Constructor.
+	 * @param span span of time in milliseconds
+	 * @param slices number of slices dividing the span
+	 */
+	public SlidingWindow(long span, int slices) {
+		int size = Math.max(slices, 1);
+		this.width = Math.max(span / size, 1L);
+		this.slices = new Sketch[size];
+		this.numbers = new long[size];
+		for (int i = 0; i < size; i++) {
+			this.slices[i] = new Sketch();
+			this.numbers[i] = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Add a value.
+	 * @param timestamp time of the value in milliseconds
+	 * @param value value to be added
+	 */
+	public void add(long timestamp, double value) {
+		long number = Math.floorDiv(timestamp, width);
+		int position = (int) Math.floorMod(number, (long) slices.length);
+		if (numbers[position] != number) {
+			slices[position].clear();
+			numbers[position] = number;
+		}
+		slices[position].add(value);
+		latest = Math.max(latest, number);
+	}
+
+	/**
+	 * Merge the slices within the span ending at the latest value into the sketch.
+	 * @param sketch sketch to which the slices are merged
+	 */
+	public void mergeInto(Sketch sketch) {
+		for (int i = 0; i < slices.length; i++) {
+			if (numbers[i] != Long.MIN_VALUE && numbers[i] > latest - slices.length) {
+				sketch.merge(slices[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package collector.rest.sketch;
+
+/**
+ * Sketch of the values within the last completed one of consecutive, aligned spans of time.
+ */
+public class TumblingWindow {
+
+	private final long span;
+
+	private Sketch current = new Sketch();
+
+	private Sketch completed = new Sketch();
+
+	/** Beginning of the current span, {@code Long.MIN_VALUE} before the first value. */
+	private long start = Long.MIN_VALUE;
+
+	/** Beginning of the completed span, {@code Long.MIN_VALUE} if no span has been completed. */
+	private long completedStart = Long.MIN_VALUE;
+
+	/**
+	 * Constructor.
+	 * @param span span of time in milliseconds
+	 */
+	public TumblingWindow(long span) {
+		this.span = Math.max(span, 1L);
+	}
+
+	/**
+	 * Add a value, completing the current span if the value is after it.
+	 * @param timestamp time of the value in milliseconds
+	 * @param value value to be added
+	 */
+	public void add(long timestamp, double value) {
+		long aligned = timestamp - Math.floorMod(timestamp, span);
+		if (aligned != start) {
+			if (start != Long.MIN_VALUE) {
+				Sketch swapped = completed;
+				completed = current;
+				current = swapped;
+				if (aligned != start + span) {
+					// no value in the span just before
+					completed.clear();
+				}
+				completedStart = aligned - span;
+			}
+			current.clear();
+			start = aligned;
+		}
+		current.add(value);
+	}
+
+	/**
+	 * Get the beginning of the last completed span.
+	 * @return the time in milliseconds, {@code Long.MIN_VALUE} if no span has been completed
+	 */
+	public long getStart() {
+		return completedStart;
+	}
+
+	public long getSpan() {
+		return span;
+	}
+
+	/**
+	 * Merge the last completed span into the sketch.
+	 * @param sketch sketch to which the span is merged
+	 */
+	public void mergeInto(Sketch sketch) {
+		sketch.merge(completed);
+	}
+
+}
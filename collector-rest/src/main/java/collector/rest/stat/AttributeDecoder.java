@@ -0,0 +1,574 @@
+package collector.rest.stat;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder of a payload of attributes returned by RESTConnector.
+ * {@code
+   [{"name":"Heap","value":{"value":"103350272","type":"java.lang.Long"}}, ...]
+ * }
+ * <p>The names and types of attributes are learned from the first payload as {@link Layout},
+ * and they are verified byte by byte for the following payloads.
+ * While the layout is unchanged, numbers are decoded straight into the reusable {@link Row}
+ * without allocating any object.</p>
+ * <p>An instance is not thread-safe, it is expected to be used by a statistics at a time.</p>
+ */
+public class AttributeDecoder {
+
+	private static final byte[] NAME = "name".getBytes(US_ASCII);
+
+	private static final byte[] VALUE = "value".getBytes(US_ASCII);
+
+	private static final byte[] TYPE = "type".getBytes(US_ASCII);
+
+	/** Powers of ten represented exactly in {@code double}. */
+	private static final double[] POWERS = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Value of an attribute is a JSON string. */
+	private static final int STRING = 0;
+
+	/** Value of an attribute is a literal of JSON number, true or false. */
+	private static final int LITERAL = 1;
+
+	/** Value of an attribute is JSON null. */
+	private static final int NULL = 2;
+
+	/** Value of an attribute is a JSON object or array. */
+	private static final int COMPOSITE = 3;
+
+	private final byte[] buffer = new byte[8192];
+
+	private final Token key = new Token();
+
+	private final Token name = new Token();
+
+	private final Token type = new Token();
+
+	private final Token value = new Token();
+
+	private InputStream in;
+
+	private int position;
+
+	private int limit;
+
+	private int valueKind;
+
+	private long decodedInteger;
+
+	private double decodedDecimal;
+
+	private Layout layout = Layout.EMPTY;
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Decode a payload into {@code row}.
+	 * @param in stream of the payload
+	 * @param row row to which the values are stored
+	 * @return {@code true} if the layout has been changed by this payload
+	 * @throws IOException fail to read the stream, or the payload is not a list of attributes
+	 */
+	public boolean decode(InputStream in, Row row) throws IOException {
+		this.in = in;
+		this.position = 0;
+		this.limit = 0;
+
+		Layout current = layout;
+		List<byte[]> learnedNames = null;
+		List<byte[]> learnedTypes = null;
+
+		expect('[');
+		int index = 0;
+		int c = skipWhitespace();
+		if (c != ']') {
+			while (true) {
+				if (c < 0) {
+					throw unexpected(c);
+				}
+				back();
+				decodeEntry();
+
+				int kind;
+				if (learnedNames == null && index < current.size()
+						&& equals(current.getRawName(index), name.data, name.length)
+						&& equals(current.getRawType(index), type.data, type.length)) {
+					kind = current.getKind(index);
+				} else {
+					if (learnedNames == null) {
+						learnedNames = new ArrayList<>();
+						learnedTypes = new ArrayList<>();
+						for (int i = 0; i < index; i++) {
+							learnedNames.add(current.getRawName(i));
+							learnedTypes.add(current.getRawType(i));
+						}
+					}
+					learnedNames.add(name.copy());
+					learnedTypes.add(type.copy());
+					kind = Layout.kindOf(decodeString(type.data, type.length));
+				}
+
+				row.resize(index + 1);
+				store(row, index, kind);
+				index++;
+
+				c = skipWhitespace();
+				if (c == ']') {
+					break;
+				} else if (c != ',') {
+					throw unexpected(c);
+				}
+				c = skipWhitespace();
+			}
+		}
+		row.resize(index);
+		this.in = null;
+
+		if (learnedNames == null && index < current.size()) {
+			learnedNames = new ArrayList<>();
+			learnedTypes = new ArrayList<>();
+			for (int i = 0; i < index; i++) {
+				learnedNames.add(current.getRawName(i));
+				learnedTypes.add(current.getRawType(i));
+			}
+		}
+		if (learnedNames != null) {
+			layout = new Layout(learnedNames, learnedTypes);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Decode a JSON string content into {@code String}, resolving escape sequences.
+	 * @param raw raw bytes of the content without quotations
+	 * @param length number of bytes
+	 * @return decoded string
+	 */
+	static String decodeString(byte[] raw, int length) {
+		int escape = indexOf(raw, length, (byte) '\\');
+		if (escape < 0) {
+			return new String(raw, 0, length, UTF_8);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+		out.write(raw, 0, escape);
+		for (int i = escape; i < length; i++) {
+			byte b = raw[i];
+			if (b != '\\' || i + 1 >= length) {
+				out.write(b);
+				continue;
+			}
+			byte escaped = raw[++i];
+			switch (escaped) {
+			case 'b':
+				out.write('\b');
+				break;
+			case 'f':
+				out.write('\f');
+				break;
+			case 'n':
+				out.write('\n');
+				break;
+			case 'r':
+				out.write('\r');
+				break;
+			case 't':
+				out.write('\t');
+				break;
+			case 'u':
+				if (i + 4 < length) {
+					char code = (char) Integer.parseInt(new String(raw, i + 1, 4, US_ASCII), 16);
+					byte[] encoded = String.valueOf(code).getBytes(UTF_8);
+					out.write(encoded, 0, encoded.length);
+					i += 4;
+				}
+				break;
+			default:
+				out.write(escaped);
+				break;
+			}
+		}
+		return new String(out.toByteArray(), UTF_8);
+	}
+
+	static boolean equals(byte[] expected, byte[] data, int length) {
+		if (expected.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (expected[i] != data[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] data, int length, byte target) {
+		for (int i = 0; i < length; i++) {
+			if (data[i] == target) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Store the value of current entry into the row.
+	 * @param row row to which the value is stored
+	 * @param column index of the column
+	 * @param kind kind of the column determined by the type
+	 */
+	private void store(Row row, int column, int kind) {
+		if (valueKind == STRING || valueKind == LITERAL) {
+			if (kind == Layout.INTEGER && decodeInteger(value.data, value.length)) {
+				row.setInteger(column, decodedInteger);
+				return;
+			} else if (kind == Layout.DECIMAL && decodeDecimal(value.data, value.length)) {
+				row.setDecimal(column, decodedDecimal);
+				return;
+			}
+			row.setText(column, value.data, value.length);
+		} else {
+			row.setText(column, value.data, 0);
+		}
+	}
+
+	private boolean decodeInteger(byte[] data, int length) {
+		if (length == 0) {
+			return false;
+		}
+		int i = 0;
+		boolean negative = data[0] == '-';
+		if (negative || data[0] == '+') {
+			i++;
+		}
+		if (i >= length) {
+			return false;
+		}
+
+		long result = 0;
+		for (; i < length; i++) {
+			int digit = data[i] - '0';
+			if (digit < 0 || digit > 9 || result < -(Long.MAX_VALUE / 10)) {
+				return false;
+			}
+			// accumulate negatively for covering Long.MIN_VALUE
+			result = result * 10 - digit;
+			if (result > 0) {
+				return false;
+			}
+		}
+		if (!negative && result == Long.MIN_VALUE) {
+			return false;
+		}
+		decodedInteger = negative ? result : -result;
+		return true;
+	}
+
+	private boolean decodeDecimal(byte[] data, int length) {
+		int i = 0;
+		boolean negative = length > 0 && data[0] == '-';
+		if (negative || (length > 0 && data[0] == '+')) {
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		boolean any = false;
+		for (; i < length; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9') {
+				any = true;
+				if (mantissa == 0 && b == '0') {
+					if (fraction) {
+						scale--;
+					}
+					continue;
+				}
+				if (++digits > 18) {
+					return fallback(data, length);
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (fraction) {
+					scale--;
+				}
+			} else if (b == '.' && !fraction) {
+				fraction = true;
+			} else if ((b == 'e' || b == 'E') && any) {
+				int exponent = 0;
+				boolean negativeExponent = false;
+				i++;
+				if (i < length && (data[i] == '-' || data[i] == '+')) {
+					negativeExponent = data[i] == '-';
+					i++;
+				}
+				if (i >= length) {
+					return fallback(data, length);
+				}
+				for (; i < length; i++) {
+					int digit = data[i] - '0';
+					if (digit < 0 || digit > 9 || exponent > 1000) {
+						return fallback(data, length);
+					}
+					exponent = exponent * 10 + digit;
+				}
+				scale += negativeExponent ? -exponent : exponent;
+			} else {
+				return fallback(data, length);
+			}
+		}
+		if (!any) {
+			return fallback(data, length);
+		}
+
+		// exact only if both the mantissa and the power of ten are represented exactly
+		double result;
+		if (mantissa == 0) {
+			result = 0.0d;
+		} else if (mantissa < (1L << 53) && scale >= 0 && scale < POWERS.length) {
+			result = mantissa * POWERS[scale];
+		} else if (mantissa < (1L << 53) && scale < 0 && -scale < POWERS.length) {
+			result = mantissa / POWERS[-scale];
+		} else {
+			return fallback(data, length);
+		}
+		decodedDecimal = negative ? -result : result;
+		return true;
+	}
+
+	private boolean fallback(byte[] data, int length) {
+		try {
+			decodedDecimal = Double.parseDouble(new String(data, 0, length, US_ASCII));
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Decode an entry, an object having "name" and "value".
+	 * @throws IOException fail to read the stream, or the entry is malformed
+	 */
+	private void decodeEntry() throws IOException {
+		name.length = 0;
+		type.length = 0;
+		value.length = 0;
+		valueKind = NULL;
+
+		expect('{');
+		int c = skipWhitespace();
+		while (c != '}') {
+			if (c != '"') {
+				throw unexpected(c);
+			}
+			readString(key);
+			expect(':');
+			int first = skipWhitespace();
+			if (key.is(NAME) && first == '"') {
+				readString(name);
+			} else if (key.is(VALUE) && first == '{') {
+				decodeValue();
+			} else {
+				skipValue(first);
+			}
+
+			c = skipWhitespace();
+			if (c == ',') {
+				c = skipWhitespace();
+			} else if (c != '}') {
+				throw unexpected(c);
+			}
+		}
+	}
+
+	/**
+	 * Decode the content of "value", an object having "value" and "type".
+	 * @throws IOException fail to read the stream, or the value is malformed
+	 */
+	private void decodeValue() throws IOException {
+		int c = skipWhitespace();
+		while (c != '}') {
+			if (c != '"') {
+				throw unexpected(c);
+			}
+			readString(key);
+			expect(':');
+			int first = skipWhitespace();
+			if (key.is(VALUE)) {
+				if (first == '"') {
+					readString(value);
+					valueKind = STRING;
+				} else if (first == '{' || first == '[') {
+					skipValue(first);
+					valueKind = COMPOSITE;
+				} else if (first == 'n') {
+					skipValue(first);
+					valueKind = NULL;
+				} else {
+					readLiteral(first, value);
+					valueKind = LITERAL;
+				}
+			} else if (key.is(TYPE) && first == '"') {
+				readString(type);
+			} else {
+				skipValue(first);
+			}
+
+			c = skipWhitespace();
+			if (c == ',') {
+				c = skipWhitespace();
+			} else if (c != '}') {
+				throw unexpected(c);
+			}
+		}
+	}
+
+	/**
+	 * Read raw content of a string after the opening quotation.
+	 * @param token token to which the content is stored
+	 * @throws IOException fail to read the stream, or the string is not terminated
+	 */
+	private void readString(Token token) throws IOException {
+		token.length = 0;
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return;
+			} else if (c < 0) {
+				throw unexpected(c);
+			}
+			token.add((byte) c);
+			if (c == '\\') {
+				int escaped = read();
+				if (escaped < 0) {
+					throw unexpected(escaped);
+				}
+				token.add((byte) escaped);
+			}
+		}
+	}
+
+	private void readLiteral(int first, Token token) throws IOException {
+		token.length = 0;
+		int c = first;
+		while (c >= 0 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+			token.add((byte) c);
+			c = read();
+		}
+		back(c);
+	}
+
+	private void skipValue(int first) throws IOException {
+		if (first == '"') {
+			readString(key);
+		} else if (first == '{' || first == '[') {
+			int depth = 1;
+			while (depth > 0) {
+				int c = read();
+				if (c < 0) {
+					throw unexpected(c);
+				} else if (c == '"') {
+					readString(key);
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+			}
+		} else {
+			readLiteral(first, key);
+		}
+	}
+
+	private void expect(int expected) throws IOException {
+		int c = skipWhitespace();
+		if (c != expected) {
+			throw unexpected(c);
+		}
+	}
+
+	private IOException unexpected(int c) {
+		return new IOException(c < 0 ? "unexpected end of attributes"
+				: "unexpected character in attributes: " + (char) c);
+	}
+
+	private int skipWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (isWhitespace(c));
+		return c;
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	private int read() throws IOException {
+		if (position >= limit) {
+			int read = in.read(buffer, 0, buffer.length);
+			if (read <= 0) {
+				position = limit = 0;
+				return -1;
+			}
+			position = 0;
+			limit = read;
+		}
+		return buffer[position++] & 0xFF;
+	}
+
+	/**
+	 * Push back the character just read.
+	 */
+	private void back() {
+		position--;
+	}
+
+	private void back(int c) {
+		if (c >= 0) {
+			position--;
+		}
+	}
+
+	/**
+	 * Growable buffer holding raw bytes of a token.
+	 */
+	private static class Token {
+
+		byte[] data = new byte[64];
+
+		int length;
+
+		void add(byte b) {
+			if (length == data.length) {
+				data = Arrays.copyOf(data, length * 2);
+			}
+			data[length++] = b;
+		}
+
+		boolean is(byte[] expected) {
+			return AttributeDecoder.equals(expected, data, length);
+		}
+
+		byte[] copy() {
+			return Arrays.copyOf(data, length);
+		}
+
+	}
+
+}
@@ -0,0 +1,139 @@
+package collector.rest.stat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Names and types of attributes in a payload returned by RESTConnector.
+ * <p>The raw bytes of the names and types are kept as they appear in the payload,
+ * so that the following payloads can be verified without decoding them.</p>
+ */
+public class Layout {
+
+	/** Kind of a column holding integral numbers in {@code long}. */
+	public static final int INTEGER = 0;
+
+	/** Kind of a column holding floating-point numbers in {@code double}. */
+	public static final int DECIMAL = 1;
+
+	/** Kind of a column holding texts. */
+	public static final int TEXT = 2;
+
+	/** Layout without any attributes. */
+	public static final Layout EMPTY = new Layout(new ArrayList<>(), new ArrayList<>());
+
+	private static final List<String> INTEGER_TYPES = Arrays.asList(
+			"java.lang.Long", "java.lang.Integer", "java.lang.Short", "java.lang.Byte",
+			"long", "int", "short", "byte");
+
+	private static final List<String> DECIMAL_TYPES = Arrays.asList(
+			"java.lang.Double", "java.lang.Float", "double", "float");
+
+	private final String[] names;
+
+	private final String[] types;
+
+	private final int[] kinds;
+
+	private final byte[][] rawNames;
+
+	private final byte[][] rawTypes;
+
+	/**
+	 * Constructor.
+	 * @param rawNames raw bytes of the names as they appear in the payload
+	 * @param rawTypes raw bytes of the types as they appear in the payload
+	 */
+	Layout(List<byte[]> rawNames, List<byte[]> rawTypes) {
+		int size = rawNames.size();
+		this.rawNames = rawNames.toArray(new byte[size][]);
+		this.rawTypes = rawTypes.toArray(new byte[size][]);
+		this.names = new String[size];
+		this.types = new String[size];
+		this.kinds = new int[size];
+		for (int i = 0; i < size; i++) {
+			names[i] = AttributeDecoder.decodeString(this.rawNames[i], this.rawNames[i].length);
+			types[i] = AttributeDecoder.decodeString(this.rawTypes[i], this.rawTypes[i].length);
+			kinds[i] = kindOf(types[i]);
+		}
+	}
+
+	/**
+	 * Create a layout from names and types of attributes.
+	 * @param names names of attributes
+	 * @param types names of Java types of attributes
+	 * @return created layout
+	 */
+	public static Layout of(List<String> names, List<String> types) {
+		List<byte[]> rawNames = new ArrayList<>(names.size());
+		List<byte[]> rawTypes = new ArrayList<>(types.size());
+		for (int i = 0; i < names.size(); i++) {
+			rawNames.add(escape(names.get(i)));
+			rawTypes.add(escape(types.get(i)));
+		}
+		return new Layout(rawNames, rawTypes);
+	}
+
+	/**
+	 * Determine the kind of column from the type of {@link StatValue}.
+	 * @param type name of Java type of the value
+	 * @return one of {@link #INTEGER}, {@link #DECIMAL} and {@link #TEXT}
+	 */
+	public static int kindOf(String type) {
+		if (INTEGER_TYPES.contains(type)) {
+			return INTEGER;
+		} else if (DECIMAL_TYPES.contains(type)) {
+			return DECIMAL;
+		} else {
+			return TEXT;
+		}
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public String getType(int index) {
+		return types[index];
+	}
+
+	public int getKind(int index) {
+		return kinds[index];
+	}
+
+	/**
+	 * Encode a string into raw bytes of the content of JSON string.
+	 * @param value string to be encoded
+	 * @return raw bytes without quotations
+	 */
+	private static byte[] escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length() + 8);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < 0x20) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString().getBytes(UTF_8);
+	}
+
+	byte[] getRawName(int index) {
+		return rawNames[index];
+	}
+
+	byte[] getRawType(int index) {
+		return rawTypes[index];
+	}
+
+}
@@ -0,0 +1,147 @@
+package collector.rest.stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Filter of names, such as names of MBeans or attributes, by include and exclude patterns.
+ * <p>A pattern is a name which may contain {@code *} matching any characters.
+ * Patterns are compiled once into a single regular expression for each of include and exclude.
+ * A name is accepted if it matches any include pattern, or there is no include pattern,
+ * and matches no exclude pattern.</p>
+ */
+public final class NameFilter implements Predicate<String> {
+
+	/** Filter accepting all names. */
+	public static final NameFilter ALL = new NameFilter(
+			Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+	/** Pattern combining include patterns, {@code null} for accepting all names. */
+	private final Pattern include;
+
+	/** Pattern combining exclude patterns, {@code null} for excluding nothing. */
+	private final Pattern exclude;
+
+	private final List<String> includes;
+
+	private final List<String> excludes;
+
+	/** Include patterns if all of them are literal names without exclude patterns. */
+	private final List<String> literals;
+
+	private NameFilter(List<String> includes, List<String> excludes, List<String> literals) {
+		this.include = compile(includes);
+		this.exclude = compile(excludes);
+		this.includes = includes;
+		this.excludes = excludes;
+		this.literals = literals;
+	}
+
+	/**
+	 * Compile patterns into a filter.
+	 * @param includes include patterns, blank ones are ignored
+	 * @param excludes exclude patterns, blank ones are ignored
+	 * @return compiled filter
+	 */
+	public static NameFilter of(List<String> includes, List<String> excludes) {
+		List<String> included = trim(includes);
+		List<String> excluded = trim(excludes);
+		if (included.isEmpty() && excluded.isEmpty()) {
+			return ALL;
+		}
+
+		boolean literal = !included.isEmpty() && excluded.isEmpty();
+		for (String pattern : included) {
+			literal &= pattern.indexOf('*') < 0;
+		}
+		return new NameFilter(Collections.unmodifiableList(included), Collections.unmodifiableList(excluded),
+				literal ? Collections.unmodifiableList(included) : Collections.emptyList());
+	}
+
+	/**
+	 * Split text into patterns by commas and line breaks, and compile them into a filter.
+	 * @param includes include patterns, may be {@code null}
+	 * @param excludes exclude patterns, may be {@code null}
+	 * @return compiled filter
+	 */
+	public static NameFilter parse(String includes, String excludes) {
+		return of(split(includes, "[,\\r\\n]+"), split(excludes, "[,\\r\\n]+"));
+	}
+
+	/**
+	 * Split text into patterns.
+	 * @param text patterns separated by {@code delimiter}, may be {@code null}
+	 * @param delimiter regular expression of the delimiter
+	 * @return patterns
+	 */
+	public static List<String> split(String text, String delimiter) {
+		List<String> patterns = new ArrayList<>();
+		if (text != null) {
+			Collections.addAll(patterns, text.split(delimiter));
+		}
+		return patterns;
+	}
+
+	@Override
+	public boolean test(String name) {
+		return (include == null || include.matcher(name).matches())
+				&& (exclude == null || !exclude.matcher(name).matches());
+	}
+
+	/**
+	 * Determine whether the filter accepts all names.
+	 * @return {@code true} if there is neither include nor exclude pattern
+	 */
+	public boolean isAll() {
+		return include == null && exclude == null;
+	}
+
+	/**
+	 * Get the names accepted by the filter if they are determined without candidates.
+	 * @return literal names of include patterns, empty if a pattern has {@code *}
+	 * or there is an exclude pattern
+	 */
+	public List<String> getLiterals() {
+		return literals;
+	}
+
+	public List<String> getIncludes() {
+		return includes;
+	}
+
+	public List<String> getExcludes() {
+		return excludes;
+	}
+
+	private static List<String> trim(List<String> patterns) {
+		List<String> trimmed = new ArrayList<>();
+		for (String pattern : patterns) {
+			if (pattern != null && !pattern.trim().isEmpty()) {
+				trimmed.add(pattern.trim());
+			}
+		}
+		return trimmed;
+	}
+
+	private static Pattern compile(List<String> patterns) {
+		if (patterns.isEmpty()) {
+			return null;
+		}
+		StringBuilder regex = new StringBuilder();
+		for (String pattern : patterns) {
+			if (regex.length() > 0) {
+				regex.append('|');
+			}
+			String separator = "";
+			for (String part : pattern.split("\\*", -1)) {
+				regex.append(separator).append(Pattern.quote(part));
+				separator = ".*";
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+}
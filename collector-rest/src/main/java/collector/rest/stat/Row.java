@@ -0,0 +1,140 @@
+package collector.rest.stat;
+
+import java.util.Arrays;
+
+/**
+ * Reusable set of values of a sample, stored in primitive arrays per column.
+ * <p>A column of {@link Layout#INTEGER} or {@link Layout#DECIMAL} holds a text instead
+ * only when the value in the payload is not a number.</p>
+ */
+public class Row {
+
+	private int size;
+
+	private int[] kinds = new int[0];
+
+	private long[] integers = new long[0];
+
+	private double[] decimals = new double[0];
+
+	private String[] texts = new String[0];
+
+	/** Raw bytes of the texts for reusing unchanged texts. */
+	private byte[][] raws = new byte[0][];
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the kind of the value actually held in the column.
+	 * @param column index of the column
+	 * @return one of {@link Layout#INTEGER}, {@link Layout#DECIMAL} and {@link Layout#TEXT}
+	 */
+	public int getKind(int column) {
+		return kinds[column];
+	}
+
+	public long getInteger(int column) {
+		return integers[column];
+	}
+
+	public double getDecimal(int column) {
+		return decimals[column];
+	}
+
+	public String getText(int column) {
+		return texts[column];
+	}
+
+	/**
+	 * Get the value of the column as {@code double}, {@code NaN} for a text.
+	 * @param column index of the column
+	 * @return the value of the column
+	 */
+	public double getNumber(int column) {
+		switch (kinds[column]) {
+		case Layout.INTEGER:
+			return integers[column];
+		case Layout.DECIMAL:
+			return decimals[column];
+		default:
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Append the value of the column as it would appear in the payload.
+	 * @param out buffer to which the value is appended
+	 * @param column index of the column
+	 * @return {@code out}
+	 */
+	public StringBuilder append(StringBuilder out, int column) {
+		switch (kinds[column]) {
+		case Layout.INTEGER:
+			return out.append(integers[column]);
+		case Layout.DECIMAL:
+			return out.append(decimals[column]);
+		default:
+			return out.append(texts[column]);
+		}
+	}
+
+	/**
+	 * Change the number of columns, keeping the values of remaining columns.
+	 * @param size number of columns
+	 */
+	public void resize(int size) {
+		if (size > kinds.length) {
+			int capacity = Math.max(size, kinds.length * 2);
+			kinds = Arrays.copyOf(kinds, capacity);
+			integers = Arrays.copyOf(integers, capacity);
+			decimals = Arrays.copyOf(decimals, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+			raws = Arrays.copyOf(raws, capacity);
+		}
+		this.size = size;
+	}
+
+	public void setInteger(int column, long value) {
+		kinds[column] = Layout.INTEGER;
+		integers[column] = value;
+	}
+
+	public void setDecimal(int column, double value) {
+		kinds[column] = Layout.DECIMAL;
+		decimals[column] = value;
+	}
+
+	public void setText(int column, String text) {
+		kinds[column] = Layout.TEXT;
+		texts[column] = text;
+		raws[column] = null;
+	}
+
+	/**
+	 * Copy the value of a column of another row.
+	 * @param column index of the column to be set
+	 * @param source row holding the value
+	 * @param from index of the column of {@code source}
+	 */
+	public void set(int column, Row source, int from) {
+		kinds[column] = source.kinds[from];
+		integers[column] = source.integers[from];
+		decimals[column] = source.decimals[from];
+		texts[column] = source.texts[from];
+		raws[column] = source.raws[from];
+	}
+
+	void setText(int column, byte[] raw, int length) {
+		kinds[column] = Layout.TEXT;
+		byte[] previous = raws[column];
+		if (previous != null && texts[column] != null
+				&& AttributeDecoder.equals(previous, raw, length)) {
+			return;
+		}
+		raws[column] = Arrays.copyOf(raw, length);
+		texts[column] = AttributeDecoder.decodeString(raw, length);
+	}
+
+}
@@ -0,0 +1,134 @@
+package collector.rest.stream;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import collector.rest.series.Frame;
+import collector.rest.series.RingSeries;
+import collector.rest.series.SampleSink;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Channel publishing samples of a statistics to any number of {@link Subscriber}s.
+ * <p>Every sample is passed to the sink first, and then to the subscribers.
+ * A subscriber joining late receives the current layout and, optionally,
+ * the latest samples kept in the {@link RingSeries} before the following samples,
+ * without missing or duplicating any sample.
+ * A subscriber resuming a subscription receives the samples kept after the last one it received.</p>
+ */
+public class Channel implements SampleSink {
+
+	private final RingSeries series;
+
+	private final SampleSink sink;
+
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	private Layout layout = Layout.EMPTY;
+
+	private boolean closed;
+
+	/** Time in milliseconds when anything was published last. */
+	private long published = System.currentTimeMillis();
+
+	/**
+	 * Constructor.
+	 * @param series series keeping the latest samples, which is a part of {@code sink}
+	 * @param sink destination of all samples
+	 */
+	public Channel(RingSeries series, SampleSink sink) {
+		this.series = series;
+		this.sink = sink;
+	}
+
+	@Override
+	public synchronized void accept(long timestamp, Layout layout, Row row) {
+		sink.accept(timestamp, layout, row);
+		if (layout != this.layout) {
+			this.layout = layout;
+			subscribers.forEach(subscriber -> subscriber.layout(layout));
+		}
+		subscribers.forEach(subscriber -> subscriber.sample(timestamp, row));
+		published = System.currentTimeMillis();
+	}
+
+	/**
+	 * Publish a poll which has not returned any sample.
+	 * @param timestamp time of the poll in milliseconds
+	 * @param reason short description of the reason
+	 */
+	public synchronized void gap(long timestamp, String reason) {
+		subscribers.forEach(subscriber -> subscriber.gap(timestamp, reason));
+		published = System.currentTimeMillis();
+	}
+
+	/**
+	 * Keep the connections of subscribers alive unless anything has been published recently.
+	 * @param idle the time in milliseconds regarded as idle
+	 */
+	public synchronized void keepAlive(long idle) {
+		long now = System.currentTimeMillis();
+		if (now - published >= idle) {
+			subscribers.forEach(Subscriber::keepAlive);
+			published = now;
+		}
+	}
+
+	/**
+	 * Add a subscriber, replaying the latest samples to it.
+	 * @param subscriber subscriber to be added
+	 * @param recent maximum number of the latest samples to be replayed
+	 * @return {@code false} if the channel has already been closed
+	 */
+	public synchronized boolean subscribe(Subscriber subscriber, int recent) {
+		return !closed && join(subscriber, series.last(recent));
+	}
+
+	/**
+	 * Add a subscriber, replaying the samples kept after the specified time to it.
+	 * @param subscriber subscriber to be added
+	 * @param after time in milliseconds of the last sample received by the subscriber
+	 * @return {@code false} if the channel has already been closed
+	 */
+	public synchronized boolean resume(Subscriber subscriber, long after) {
+		return !closed && join(subscriber,
+				series.range(after == Long.MAX_VALUE ? after : after + 1, Long.MAX_VALUE));
+	}
+
+	private boolean join(Subscriber subscriber, Frame frame) {
+		if (layout != Layout.EMPTY) {
+			subscriber.layout(layout);
+			if (frame.getLayout() == layout) {
+				Row row = new Row();
+				for (int i = 0; i < frame.size(); i++) {
+					subscriber.sample(frame.getTimestamp(i), frame.load(i, row));
+				}
+			}
+		}
+		subscribers.add(subscriber);
+		return true;
+	}
+
+	/**
+	 * Remove a subscriber. The polling goes on without subscribers.
+	 * @param subscriber subscriber to be removed
+	 */
+	public void unsubscribe(Subscriber subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	public int getSubscribers() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Close the channel and all subscriptions.
+	 */
+	public synchronized void close() {
+		closed = true;
+		subscribers.forEach(Subscriber::close);
+		subscribers.clear();
+	}
+
+}
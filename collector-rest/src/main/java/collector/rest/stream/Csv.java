@@ -0,0 +1,74 @@
+package collector.rest.stream;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Lines of CSV representing samples.
+ */
+public final class Csv {
+
+	private Csv() {
+	}
+
+	/**
+	 * Append the header line of CSV.
+	 * @param lines buffer to which the line is appended
+	 * @param layout layout of attributes
+	 */
+	public static void appendHeader(StringBuilder lines, Layout layout) {
+		String separator = "Time,";
+		for (int i = 0; i < layout.size(); i++) {
+			appendField(lines.append(separator), layout.getName(i));
+			separator = ",";
+		}
+		lines.append("\r\n");
+	}
+
+	/**
+	 * Append a field, quoting it if it contains a separator, a quotation or a line break.
+	 * @param lines buffer to which the field is appended
+	 * @param field field to be appended
+	 */
+	private static void appendField(StringBuilder lines, String field) {
+		boolean quoted = false;
+		for (int i = 0; i < field.length() && !quoted; i++) {
+			char c = field.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (quoted) {
+			lines.append('"').append(field.replace("\"", "\"\"")).append('"');
+		} else {
+			lines.append(field);
+		}
+	}
+
+	/**
+	 * Append a line of CSV representing a sample, quoting texts as the header does.
+	 * @param lines buffer to which the line is appended
+	 * @param timestamp time of the sample in milliseconds
+	 * @param row values of the sample
+	 */
+	public static void appendLine(StringBuilder lines, long timestamp, Row row) {
+		lines.append(timestamp);
+		for (int i = 0; i < row.size(); i++) {
+			if (row.getKind(i) == Layout.TEXT) {
+				appendField(lines.append(','), String.valueOf(row.getText(i)));
+			} else {
+				row.append(lines.append(','), i);
+			}
+		}
+		lines.append("\r\n");
+	}
+
+	/**
+	 * Append a line of CSV representing a poll without samples.
+	 * @param lines buffer to which the line is appended
+	 * @param timestamp time of the poll in milliseconds
+	 * @param reason short description of the reason
+	 */
+	public static void appendGap(StringBuilder lines, long timestamp, String reason) {
+		lines.append(timestamp).append(',').append(reason).append("\r\n");
+	}
+
+}
@@ -0,0 +1,42 @@
+package collector.rest.stream;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Format rendering the layout as the header line and samples as lines of CSV.
+ * @see Csv
+ */
+class CsvFormat implements Format {
+
+	@Override
+	public String getContentType() {
+		return "text/csv";
+	}
+
+	@Override
+	public String getFileName(String id) {
+		return id + ".csv";
+	}
+
+	@Override
+	public void appendLayout(StringBuilder out, Layout layout) {
+		Csv.appendHeader(out, layout);
+	}
+
+	@Override
+	public void appendSample(StringBuilder out, long timestamp, Row row) {
+		Csv.appendLine(out, timestamp, row);
+	}
+
+	@Override
+	public void appendGap(StringBuilder out, long timestamp, String reason) {
+		Csv.appendGap(out, timestamp, reason);
+	}
+
+	@Override
+	public boolean appendKeepAlive(StringBuilder out) {
+		return false;
+	}
+
+}
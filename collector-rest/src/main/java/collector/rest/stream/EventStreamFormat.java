@@ -0,0 +1,52 @@
+package collector.rest.stream;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Format rendering Server-Sent Events whose data is JSON described in {@link Json}.
+ * <p>A sample is an unnamed event whose ID is its timestamp, so that a client reconnecting
+ * with {@code Last-Event-ID} can resume from the next sample.
+ * The layout and gaps are events named {@code layout} and {@code gap}.
+ * An idle connection is kept alive with comment lines.</p>
+ */
+class EventStreamFormat implements Format {
+
+	@Override
+	public String getContentType() {
+		return "text/event-stream";
+	}
+
+	@Override
+	public String getFileName(String id) {
+		return null;
+	}
+
+	@Override
+	public void appendLayout(StringBuilder out, Layout layout) {
+		out.append("event: layout\ndata: ");
+		Json.appendLayout(out, layout);
+		out.append("\n\n");
+	}
+
+	@Override
+	public void appendSample(StringBuilder out, long timestamp, Row row) {
+		out.append("id: ").append(timestamp).append("\ndata: ");
+		Json.appendSample(out, timestamp, row);
+		out.append("\n\n");
+	}
+
+	@Override
+	public void appendGap(StringBuilder out, long timestamp, String reason) {
+		out.append("event: gap\ndata: ");
+		Json.appendGap(out, timestamp, reason);
+		out.append("\n\n");
+	}
+
+	@Override
+	public boolean appendKeepAlive(StringBuilder out) {
+		out.append(": keep-alive\n\n");
+		return true;
+	}
+
+}
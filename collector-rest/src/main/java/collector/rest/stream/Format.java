@@ -0,0 +1,110 @@
+package collector.rest.stream;
+
+import java.util.Locale;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Representation of a live stream of samples.
+ * <p>Implementations are stateless, so that an instance is shared by all subscribers.</p>
+ */
+public interface Format {
+
+	/** Lines of CSV, which is downloaded as an attachment. */
+	Format CSV = new CsvFormat();
+
+	/** Server-Sent Events whose ID is the timestamp of a sample. */
+	Format EVENT_STREAM = new EventStreamFormat();
+
+	/** Newline delimited JSON. */
+	Format NDJSON = new NdjsonFormat();
+
+	/**
+	 * Choose the format for the {@code Accept} header of a request.
+	 * <p>The supported media type with the highest quality is chosen, CSV if nothing is acceptable.</p>
+	 * @param accept value of {@code Accept} header, may be {@code null}
+	 * @return chosen format
+	 */
+	static Format negotiate(String accept) {
+		if (accept == null) {
+			return CSV;
+		}
+
+		Format chosen = CSV;
+		double best = 0.0d;
+		for (String range : accept.split(",")) {
+			String[] parameters = range.split(";");
+			String type = parameters[0].trim().toLowerCase(Locale.ROOT);
+			double quality = 1.0d;
+			for (int i = 1; i < parameters.length; i++) {
+				String parameter = parameters[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0.0d;
+					}
+				}
+			}
+
+			Format format = null;
+			if (type.equals(EVENT_STREAM.getContentType())) {
+				format = EVENT_STREAM;
+			} else if (type.equals(NDJSON.getContentType())) {
+				format = NDJSON;
+			} else if (type.equals(CSV.getContentType())) {
+				format = CSV;
+			}
+			if (format != null && quality > best) {
+				chosen = format;
+				best = quality;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * Get the media type of the stream.
+	 * @return media type without parameters
+	 */
+	String getContentType();
+
+	/**
+	 * Get the name of the file to which the stream is saved.
+	 * @param id ID of statistics
+	 * @return name of the file, or {@code null} if the stream is not an attachment
+	 */
+	String getFileName(String id);
+
+	/**
+	 * Append the representation of the layout of attributes.
+	 * @param out buffer to which the representation is appended
+	 * @param layout layout of attributes
+	 */
+	void appendLayout(StringBuilder out, Layout layout);
+
+	/**
+	 * Append the representation of a sample.
+	 * @param out buffer to which the representation is appended
+	 * @param timestamp time of the sample in milliseconds
+	 * @param row values of the sample
+	 */
+	void appendSample(StringBuilder out, long timestamp, Row row);
+
+	/**
+	 * Append the representation of a poll which has not returned any sample.
+	 * @param out buffer to which the representation is appended
+	 * @param timestamp time of the poll in milliseconds
+	 * @param reason short description of the reason
+	 */
+	void appendGap(StringBuilder out, long timestamp, String reason);
+
+	/**
+	 * Append the representation keeping an idle connection alive.
+	 * @param out buffer to which the representation is appended
+	 * @return {@code false} if the format cannot represent it
+	 */
+	boolean appendKeepAlive(StringBuilder out);
+
+}
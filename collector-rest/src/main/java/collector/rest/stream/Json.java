@@ -0,0 +1,92 @@
+package collector.rest.stream;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Compact JSON objects representing samples.
+ * <ul>
+ * <li>layout: <code>{"names":["..."],"types":["..."]}</code></li>
+ * <li>sample: <code>{"t":1600000000000,"v":[1,0.5,"text",null]}</code></li>
+ * <li>gap: <code>{"t":1600000000000,"gap":"(no contents)"}</code></li>
+ * </ul>
+ * <p>The values of a sample are in the order of the names of the last layout,
+ * and a number which is not finite is represented as {@code null}.</p>
+ */
+public final class Json {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Json() {
+	}
+
+	static void appendLayout(StringBuilder out, Layout layout) {
+		out.append("{\"names\":[");
+		for (int i = 0; i < layout.size(); i++) {
+			appendString(i == 0 ? out : out.append(','), layout.getName(i));
+		}
+		out.append("],\"types\":[");
+		for (int i = 0; i < layout.size(); i++) {
+			appendString(i == 0 ? out : out.append(','), layout.getType(i));
+		}
+		out.append("]}");
+	}
+
+	static void appendSample(StringBuilder out, long timestamp, Row row) {
+		out.append("{\"t\":").append(timestamp).append(",\"v\":[");
+		for (int i = 0; i < row.size(); i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			switch (row.getKind(i)) {
+			case Layout.INTEGER:
+				out.append(row.getInteger(i));
+				break;
+			case Layout.DECIMAL:
+				double value = row.getDecimal(i);
+				if (Double.isNaN(value) || Double.isInfinite(value)) {
+					out.append("null");
+				} else {
+					out.append(value);
+				}
+				break;
+			default:
+				appendString(out, row.getText(i));
+				break;
+			}
+		}
+		out.append("]}");
+	}
+
+	static void appendGap(StringBuilder out, long timestamp, String reason) {
+		out.append("{\"t\":").append(timestamp).append(",\"gap\":");
+		appendString(out, reason);
+		out.append('}');
+	}
+
+	/**
+	 * Append a string literal of JSON.
+	 * @param out buffer to which the literal is appended
+	 * @param value string to be appended, {@code null} is appended as {@code null}
+	 */
+	public static void appendString(StringBuilder out, String value) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < 0x20) {
+				out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+			} else {
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
+}
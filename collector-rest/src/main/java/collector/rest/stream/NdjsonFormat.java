@@ -0,0 +1,44 @@
+package collector.rest.stream;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Format rendering each layout, sample and gap as a line of JSON described in {@link Json}.
+ */
+class NdjsonFormat implements Format {
+
+	@Override
+	public String getContentType() {
+		return "application/x-ndjson";
+	}
+
+	@Override
+	public String getFileName(String id) {
+		return null;
+	}
+
+	@Override
+	public void appendLayout(StringBuilder out, Layout layout) {
+		Json.appendLayout(out, layout);
+		out.append('\n');
+	}
+
+	@Override
+	public void appendSample(StringBuilder out, long timestamp, Row row) {
+		Json.appendSample(out, timestamp, row);
+		out.append('\n');
+	}
+
+	@Override
+	public void appendGap(StringBuilder out, long timestamp, String reason) {
+		Json.appendGap(out, timestamp, reason);
+		out.append('\n');
+	}
+
+	@Override
+	public boolean appendKeepAlive(StringBuilder out) {
+		return false;
+	}
+
+}
@@ -0,0 +1,38 @@
+package collector.rest.stream;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of samples discarded by {@link OutputQueue}s.
+ */
+public class OutputCounters {
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder disconnected = new LongAdder();
+
+	/**
+	 * Get number of samples, gaps and keep-alives discarded by overflow.
+	 * @return number of discarded items
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Get number of subscribers disconnected by overflow.
+	 * @return number of disconnected subscribers
+	 */
+	public long getDisconnected() {
+		return disconnected.sum();
+	}
+
+	void drop() {
+		dropped.increment();
+	}
+
+	void disconnect() {
+		disconnected.increment();
+	}
+
+}
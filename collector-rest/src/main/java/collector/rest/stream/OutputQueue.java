@@ -0,0 +1,212 @@
+package collector.rest.stream;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import collector.rest.metrics.Counter;
+import collector.rest.metrics.Histogram;
+
+/**
+ * Bounded queue of output written to the response of an asynchronous request without blocking.
+ * <p>Chunks are queued by the publishing thread and drained by {@link WriteListener}
+ * only while the {@code ServletOutputStream} is ready, so that a slow client never stalls the polling.
+ * When the queued bytes exceed the limit, the {@link Overflow} policy is applied.</p>
+ * <p>Bytes written and the time spent writing them are counted for the statistics being streamed.</p>
+ */
+public class OutputQueue implements WriteListener {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final AsyncContext context;
+
+	private final ServletOutputStream out;
+
+	private final int limit;
+
+	private final Overflow overflow;
+
+	private final OutputCounters counters;
+
+	private final Counter sent;
+
+	private final Histogram writeTime;
+
+	private final Deque<Chunk> chunks = new ArrayDeque<>();
+
+	/** Number of bytes queued. */
+	private int size;
+
+	/** Number of items discarded by overflow. */
+	private long dropped;
+
+	/** Whether some chunks have been written without flushing. */
+	private boolean written;
+
+	private boolean closing;
+
+	private boolean completed;
+
+	/**
+	 * Constructor, switching the output of the response into non-blocking mode.
+	 * @param context context of the asynchronous request
+	 * @param limit maximum number of bytes queued
+	 * @param overflow policy applied when the limit is exceeded
+	 * @param counters counters of discarded items
+	 * @param sent counter of bytes written
+	 * @param writeTime histogram of the time for writing a chunk
+	 * @throws IOException fail to get the output of the response
+	 */
+	public OutputQueue(AsyncContext context, int limit, Overflow overflow, OutputCounters counters,
+			Counter sent, Histogram writeTime) throws IOException {
+		this.context = context;
+		this.limit = limit;
+		this.overflow = overflow;
+		this.counters = counters;
+		this.sent = sent;
+		this.writeTime = writeTime;
+		this.out = context.getResponse().getOutputStream();
+		out.setWriteListener(this);
+	}
+
+	/**
+	 * Queue a chunk, writing it immediately if the output is ready.
+	 * @param data bytes of the chunk
+	 * @param droppable {@code false} if the chunk must not be discarded by overflow
+	 */
+	public synchronized void offer(byte[] data, boolean droppable) {
+		if (completed || closing) {
+			return;
+		}
+		if (size + data.length > limit && !overflow(data.length)) {
+			return;
+		}
+		chunks.add(new Chunk(data, droppable));
+		size += data.length;
+		drain();
+	}
+
+	/**
+	 * Complete the request after all queued chunks have been written.
+	 */
+	public synchronized void close() {
+		closing = true;
+		drain();
+	}
+
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	@Override
+	public synchronized void onWritePossible() {
+		drain();
+	}
+
+	@Override
+	public synchronized void onError(Throwable t) {
+		logger.log(Level.FINE, t, () -> "Cannot write output: " + t);
+		complete();
+	}
+
+	/**
+	 * Apply the policy for overflow.
+	 * @param incoming number of bytes to be queued
+	 * @return {@code false} if the chunk should not be queued
+	 */
+	private boolean overflow(int incoming) {
+		switch (overflow) {
+		case DISCONNECT:
+			counters.disconnect();
+			logger.info(() -> "Disconnect a subscriber not catching up with " + size + " bytes");
+			complete();
+			return false;
+		case COALESCE:
+			discard(0);
+			return true;
+		default:
+			discard(limit - incoming);
+			return true;
+		}
+	}
+
+	/**
+	 * Discard droppable chunks from the oldest one until the queued bytes fall within the size.
+	 * @param within number of bytes allowed to be queued
+	 */
+	private void discard(int within) {
+		Iterator<Chunk> iterator = chunks.iterator();
+		while (iterator.hasNext() && size > within) {
+			Chunk chunk = iterator.next();
+			if (chunk.droppable) {
+				iterator.remove();
+				size -= chunk.data.length;
+				dropped++;
+				counters.drop();
+			}
+		}
+	}
+
+	private void drain() {
+		try {
+			while (!completed && out.isReady()) {
+				Chunk chunk = chunks.poll();
+				if (chunk != null) {
+					size -= chunk.data.length;
+					long start = System.nanoTime();
+					out.write(chunk.data);
+					writeTime.since(start);
+					sent.add(chunk.data.length);
+					written = true;
+				} else if (written) {
+					written = false;
+					out.flush();
+				} else {
+					if (closing) {
+						complete();
+					}
+					return;
+				}
+			}
+		} catch (IOException e) {
+			onError(e);
+		}
+	}
+
+	private void complete() {
+		if (completed) {
+			return;
+		}
+		completed = true;
+		chunks.clear();
+		size = 0;
+		if (dropped > 0) {
+			logger.info(() -> dropped + " items are dropped for a slow subscriber");
+		}
+		context.complete();
+	}
+
+	/**
+	 * Bytes written at once.
+	 */
+	private static class Chunk {
+
+		private final byte[] data;
+
+		private final boolean droppable;
+
+		Chunk(byte[] data, boolean droppable) {
+			this.data = data;
+			this.droppable = droppable;
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package collector.rest.stream;
+
+import java.util.Locale;
+
+/**
+ * Policy applied when the output of a subscriber exceeds its buffer.
+ * <p>Only samples, gaps and keep-alives are discarded; layouts are always written.</p>
+ */
+public enum Overflow {
+
+	/** Discard the oldest pending samples until the new one fits in the buffer. */
+	DROP_OLDEST,
+
+	/** Discard all pending samples, so that the client catches up with the latest one. */
+	COALESCE,
+
+	/** End the subscription of the client. */
+	DISCONNECT;
+
+	/**
+	 * Get the policy by its name, such as {@code drop-oldest}.
+	 * @param name name of the policy, case insensitive
+	 * @return the policy
+	 * @throws IllegalArgumentException if no policy has the name
+	 */
+	public static Overflow of(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+	}
+
+}
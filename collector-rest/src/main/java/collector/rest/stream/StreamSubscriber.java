@@ -0,0 +1,73 @@
+package collector.rest.stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import collector.rest.metrics.Histogram;
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Subscriber rendering samples in a {@link Format} into an {@link OutputQueue}.
+ * <p>Rendering is done on the publishing thread, while writing is done
+ * as the client becomes ready to receive. The time for rendering is observed by a histogram.</p>
+ */
+public class StreamSubscriber implements Subscriber {
+
+	private final OutputQueue output;
+
+	private final Format format;
+
+	private final Histogram formatTime;
+
+	private final StringBuilder lines = new StringBuilder(1024);
+
+	/**
+	 * Constructor.
+	 * @param output output of the response
+	 * @param format format of the samples
+	 * @param formatTime histogram of the time for rendering a sample
+	 */
+	public StreamSubscriber(OutputQueue output, Format format, Histogram formatTime) {
+		this.output = output;
+		this.format = format;
+		this.formatTime = formatTime;
+	}
+
+	@Override
+	public void layout(Layout layout) {
+		format.appendLayout(lines, layout);
+		offer(false);
+	}
+
+	@Override
+	public void sample(long timestamp, Row row) {
+		long start = System.nanoTime();
+		format.appendSample(lines, timestamp, row);
+		formatTime.since(start);
+		offer(true);
+	}
+
+	@Override
+	public void gap(long timestamp, String reason) {
+		format.appendGap(lines, timestamp, reason);
+		offer(true);
+	}
+
+	@Override
+	public void keepAlive() {
+		if (format.appendKeepAlive(lines)) {
+			offer(true);
+		}
+	}
+
+	@Override
+	public void close() {
+		output.close();
+	}
+
+	private void offer(boolean droppable) {
+		output.offer(lines.toString().getBytes(UTF_8), droppable);
+		lines.setLength(0);
+	}
+
+}
@@ -0,0 +1,42 @@
+package collector.rest.stream;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Receiver of samples published through a {@link Channel}.
+ * <p>Methods are called by one thread at a time in the order of publication.</p>
+ */
+public interface Subscriber {
+
+	/**
+	 * Receive the layout of attributes, which applies to the following samples.
+	 * @param layout layout of attributes
+	 */
+	void layout(Layout layout);
+
+	/**
+	 * Receive a sample. {@code row} is reused by the caller after this method returns.
+	 * @param timestamp time of the sample in milliseconds
+	 * @param row values of the sample
+	 */
+	void sample(long timestamp, Row row);
+
+	/**
+	 * Receive a poll which has not returned any sample.
+	 * @param timestamp time of the poll in milliseconds
+	 * @param reason short description of the reason
+	 */
+	void gap(long timestamp, String reason);
+
+	/**
+	 * Keep the connection alive while no sample is published.
+	 */
+	void keepAlive();
+
+	/**
+	 * End the subscription because the channel has been closed.
+	 */
+	void close();
+
+}
@@ -0,0 +1,253 @@
+package collector.rest.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import collector.rest.stat.Layout;
+import collector.rest.stat.Row;
+
+/**
+ * Stream joining the samples of several statistics polled on the same ticks into wide rows.
+ * <p>Each statistics publishes to the stream through the {@link Subscriber} returned by {@link #member(int)},
+ * which is subscribed to the {@link Channel} of the statistics. A row has the time of a tick and
+ * the columns of all statistics, whose names are prefixed by the labels of the statistics;
+ * the columns of a statistics without a sample at the tick, such as a failed poll, are NaN.</p>
+ * <p>A tick is published once all statistics have reported it, either a sample or a gap,
+ * or once {@value #MAX_PENDING} later ticks are pending, so that a statistics skipping ticks
+ * does not hold the others. Subscribers receive the layout joined from the layouts of
+ * all statistics, and then the rows. The stream is closed once the channels of all statistics
+ * have been closed.</p>
+ */
+public class WideStream {
+
+	/** Maximum number of ticks waiting for statistics which have not reported them. */
+	static final int MAX_PENDING = 2;
+
+	private final String[] labels;
+
+	private final Runnable completion;
+
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	/** Layouts of the statistics in the joined layout, guarded by {@code this}. */
+	private final Layout[] layouts;
+
+	/** Ticks waiting for statistics in the order of time, guarded by {@code this}. */
+	private final TreeMap<Long, Tick> pending = new TreeMap<>();
+
+	/** Reusable row of the joined layout, guarded by {@code this}. */
+	private final Row row = new Row();
+
+	private Layout joined = Layout.EMPTY;
+
+	/** The time of the last tick published. */
+	private long published = Long.MIN_VALUE;
+
+	/** Number of statistics whose channels are open. */
+	private int open;
+
+	private boolean closed;
+
+	/**
+	 * Constructor.
+	 * @param labels labels of the statistics prefixed to the names of their columns
+	 * @param completion action performed once when the stream has been closed
+	 */
+	public WideStream(List<String> labels, Runnable completion) {
+		this.labels = labels.toArray(new String[labels.size()]);
+		this.completion = completion;
+		this.layouts = new Layout[this.labels.length];
+		this.open = this.labels.length;
+	}
+
+	/**
+	 * Get the subscriber through which a statistics publishes to this stream.
+	 * @param index index of the statistics in the labels
+	 * @return subscriber to be subscribed to the channel of the statistics
+	 */
+	public Subscriber member(int index) {
+		return new Member(index);
+	}
+
+	/**
+	 * Add a subscriber receiving the joined layout and the following rows.
+	 * @param subscriber subscriber to be added
+	 * @return {@code false} if the stream has already been closed
+	 */
+	public synchronized boolean subscribe(Subscriber subscriber) {
+		if (closed) {
+			return false;
+		}
+		if (joined != Layout.EMPTY) {
+			subscriber.layout(joined);
+		}
+		subscribers.add(subscriber);
+		return true;
+	}
+
+	/**
+	 * Remove a subscriber. The polling goes on without subscribers.
+	 * @param subscriber subscriber to be removed
+	 */
+	public void unsubscribe(Subscriber subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	private synchronized void report(int member, long timestamp, Layout layout, Row values) {
+		if (closed || timestamp <= published) {
+			return;
+		}
+		Tick tick = pending.computeIfAbsent(timestamp, time -> new Tick(labels.length));
+		if (tick.reported[member]) {
+			return;
+		}
+		tick.reported[member] = true;
+		tick.count++;
+		if (values != null) {
+			Row copied = new Row();
+			copied.resize(values.size());
+			for (int i = 0; i < values.size(); i++) {
+				copied.set(i, values, i);
+			}
+			tick.layouts[member] = layout;
+			tick.rows[member] = copied;
+		}
+
+		while (!pending.isEmpty()
+				&& (pending.firstEntry().getValue().count == labels.length || pending.size() > MAX_PENDING)) {
+			Map.Entry<Long, Tick> first = pending.pollFirstEntry();
+			publish(first.getKey(), first.getValue());
+		}
+	}
+
+	private void publish(long timestamp, Tick tick) {
+		boolean changed = false;
+		for (int i = 0; i < labels.length; i++) {
+			if (tick.layouts[i] != null && tick.layouts[i] != layouts[i]) {
+				layouts[i] = tick.layouts[i];
+				changed = true;
+			}
+		}
+		if (changed) {
+			List<String> names = new ArrayList<>();
+			List<String> types = new ArrayList<>();
+			for (int i = 0; i < labels.length; i++) {
+				for (int j = 0; layouts[i] != null && j < layouts[i].size(); j++) {
+					names.add(labels[i] + '.' + layouts[i].getName(j));
+					types.add(layouts[i].getType(j));
+				}
+			}
+			joined = Layout.of(names, types);
+			subscribers.forEach(subscriber -> subscriber.layout(joined));
+		}
+
+		row.resize(joined.size());
+		int column = 0;
+		for (int i = 0; i < labels.length; i++) {
+			int size = layouts[i] == null ? 0 : layouts[i].size();
+			Row values = tick.layouts[i] == layouts[i] ? tick.rows[i] : null;
+			for (int j = 0; j < size; j++, column++) {
+				if (values == null) {
+					row.setDecimal(column, Double.NaN);
+				} else {
+					row.set(column, values, j);
+				}
+			}
+		}
+		published = timestamp;
+		subscribers.forEach(subscriber -> subscriber.sample(timestamp, row));
+	}
+
+	private synchronized void keepAlive() {
+		subscribers.forEach(Subscriber::keepAlive);
+	}
+
+	private void close(int member) {
+		synchronized (this) {
+			if (closed || --open > 0) {
+				return;
+			}
+			while (!pending.isEmpty()) {
+				Map.Entry<Long, Tick> first = pending.pollFirstEntry();
+				publish(first.getKey(), first.getValue());
+			}
+			closed = true;
+			subscribers.forEach(Subscriber::close);
+			subscribers.clear();
+		}
+		completion.run();
+	}
+
+	/**
+	 * Samples of the statistics reported for a tick.
+	 */
+	private static class Tick {
+
+		final boolean[] reported;
+
+		final Layout[] layouts;
+
+		final Row[] rows;
+
+		int count;
+
+		Tick(int size) {
+			reported = new boolean[size];
+			layouts = new Layout[size];
+			rows = new Row[size];
+		}
+
+	}
+
+	/**
+	 * Subscriber to the channel of a statistics, reporting its samples and gaps to the stream.
+	 */
+	private class Member implements Subscriber {
+
+		final int index;
+
+		/** Layout of the following samples, accessed by the publishing thread of the channel. */
+		Layout layout = Layout.EMPTY;
+
+		boolean ended;
+
+		Member(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void layout(Layout layout) {
+			this.layout = layout;
+		}
+
+		@Override
+		public void sample(long timestamp, Row row) {
+			report(index, timestamp, layout, row);
+		}
+
+		@Override
+		public void gap(long timestamp, String reason) {
+			report(index, timestamp, null, null);
+		}
+
+		@Override
+		public void keepAlive() {
+			if (index == 0) {
+				WideStream.this.keepAlive();
+			}
+		}
+
+		@Override
+		public void close() {
+			if (!ended) {
+				ended = true;
+				WideStream.this.close(index);
+			}
+		}
+
+	}
+
+}